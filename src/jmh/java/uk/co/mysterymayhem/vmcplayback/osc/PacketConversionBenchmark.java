@@ -0,0 +1,75 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.BufferBytesReceiver;
+import com.illposed.osc.OSCBundle;
+import com.illposed.osc.OSCMessage;
+import com.illposed.osc.OSCParseException;
+import com.illposed.osc.OSCSerializeException;
+import com.illposed.osc.OSCSerializer;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.SyntheticVmcFrames;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting a full VMC frame between javaosc packets, recorded packets and OSC bytes, the work done for every packet
+ * when recording and when playing back without pre-encoding.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class PacketConversionBenchmark {
+
+    private RecordedBundlePacket frame;
+    // As received, parsed from OSC bytes
+    private OSCBundle oscFrame;
+    private OSCMessage oscBoneMessage;
+    private ByteBuffer bytes;
+    private OSCSerializer serializer;
+
+    @Setup
+    public void setUp() throws OSCSerializeException, OSCParseException {
+        this.frame = new SyntheticVmcFrames(1).frame(0);
+        OSCSerializerAndParserBuilder builder = new OSCSerializerAndParserBuilder();
+        this.bytes = ByteBuffer.allocateDirect(65507);
+        this.serializer = builder.buildSerializer(new BufferBytesReceiver(this.bytes));
+        this.serializer.write(this.frame.toOscPacket());
+        this.bytes.flip();
+        this.oscFrame = (OSCBundle) builder.buildParser().convert(this.bytes);
+        // OK, T, Root, then the first bone
+        this.oscBoneMessage = (OSCMessage) this.oscFrame.getPackets().get(3);
+    }
+
+    @Benchmark
+    public RecordedMessage recordedMessageFromOscMessage() {
+        return new RecordedMessage(this.oscBoneMessage);
+    }
+
+    @Benchmark
+    public RecordedBundlePacket recordedBundlePacketFromOscBundle() {
+        return RecordedBundlePacket.fromOscBundle(0, this.oscFrame, m -> true);
+    }
+
+    @Benchmark
+    public int toOscPacketAndSerialize() throws OSCSerializeException {
+        this.bytes.clear();
+        this.serializer.write(this.frame.toOscPacket());
+        return this.bytes.position();
+    }
+}
@@ -0,0 +1,74 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.SyntheticVmcFrames;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading a minute long recording, the same as saving and loading with the convert, play and inout
+ * commands. Scores are per frame.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RecordingFilesBenchmark {
+    // A minute at 60 frames per second
+    private static final int FRAME_COUNT = 3600;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private List<RecordedPacket<?, ?>> frames;
+    private Path writePath;
+    private Path readPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.frames = new SyntheticVmcFrames(1).frames(FRAME_COUNT, 60);
+        this.writePath = Files.createTempFile("benchmark-write", ".bin");
+        this.readPath = Files.createTempFile("benchmark-read", ".bin");
+        RecordingFiles.writePackets(this.readPath, this.frames, this.compress);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.writePath);
+        Files.deleteIfExists(this.readPath);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public void write() throws IOException {
+        RecordingFiles.writePackets(this.writePath, this.frames, this.compress);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public List<RecordedPacket<?, ?>> read() throws IOException {
+        return RecordingFiles.readPackets(this.readPath);
+    }
+}
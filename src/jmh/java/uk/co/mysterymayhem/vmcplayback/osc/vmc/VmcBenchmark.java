@@ -0,0 +1,75 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.mysterymayhem.vmcplayback.osc.AddressFilter;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VMC message filtering, with each combination of filter options.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class VmcBenchmark {
+    /**
+     * vmc: only VMC messages, the default. body: -b. patterns: --include and --exclude.
+     */
+    @Param({"vmc", "body", "patterns"})
+    public String filterOptions;
+
+    private AddressFilter filter;
+    private List<RecordedMessage> frameMessages;
+
+    @Setup
+    public void setUp() {
+        switch (this.filterOptions) {
+            case "vmc":
+                this.filter = VmcUtils.buildMessageFilter(false, false);
+                break;
+            case "body":
+                this.filter = VmcUtils.buildMessageFilter(false, true);
+                break;
+            case "patterns":
+                this.filter = VmcUtils.buildMessageFilter(false, false,
+                        Arrays.asList("/VMC/Ext/Blend/*", "/VMC/Ext/Bone/*"), Collections.singletonList("/VMC/Ext/Blend/Apply"));
+                break;
+            default:
+                throw new IllegalArgumentException(this.filterOptions);
+        }
+        this.frameMessages = new SyntheticVmcFrames(1).messages(0);
+    }
+
+    /**
+     * Every message of one frame.
+     */
+    @Benchmark
+    public int filterFrame() {
+        int kept = 0;
+        for (RecordedMessage message : this.frameMessages) {
+            if (this.filter.test(message)) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+}
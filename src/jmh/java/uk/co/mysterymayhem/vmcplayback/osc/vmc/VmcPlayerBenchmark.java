@@ -0,0 +1,44 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VMC timing message replacement, which doesn't depend on any filter options.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class VmcPlayerBenchmark {
+    // 10 seconds at 60 frames per second
+    private static final int FRAME_COUNT = 600;
+
+    private List<RecordedPacket<?, ?>> frames;
+
+    @Setup
+    public void setUp() {
+        this.frames = new SyntheticVmcFrames(1).frames(FRAME_COUNT, 60);
+    }
+
+    @Benchmark
+    public List<RecordedPacket<?, ?>> replaceTimingMessages() {
+        return VmcPlayer.replaceTimingMessages(this.frames);
+    }
+}
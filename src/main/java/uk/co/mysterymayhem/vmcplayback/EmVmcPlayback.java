@@ -3,21 +3,29 @@ package uk.co.mysterymayhem.vmcplayback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.mysterymayhem.vmcplayback.osc.*;
+import uk.co.mysterymayhem.vmcplayback.osc.io.DatagramRelay;
+import uk.co.mysterymayhem.vmcplayback.osc.io.MappedRecording;
+import uk.co.mysterymayhem.vmcplayback.osc.io.RawDatagramRecorder;
+import uk.co.mysterymayhem.vmcplayback.osc.io.RecordingFiles;
+import uk.co.mysterymayhem.vmcplayback.osc.io.StreamingRecordingReader;
+import uk.co.mysterymayhem.vmcplayback.osc.io.StreamingRecordingWriter;
+import uk.co.mysterymayhem.vmcplayback.osc.io.VmcCodecSettings;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.SyntheticVmcFrames;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcFrames;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcLoadGenerator;
 import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcPlayer;
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcResampler;
 import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcUtils;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Main class. Handles the program arguments and calls the correct methods based on those arguments.
@@ -33,8 +41,43 @@ public class EmVmcPlayback {
     private static final String[] ARGUMENT_PORT_IN = {"portin"};
     private static final String[] ARGUMENT_PORT_OUT = {"portout"};
     private static final String[] ARGUMENT_FILE_NAME = {"file"};
+    private static final String[] ARGUMENT_OUTPUT_FILE_NAME = {"output"};
     private static final String[] ARGUMENT_RECORDING_DURATION = {"duration"};
+    // Comma separated, along with the ports to send to, to play back to multiple targets at once
     private static final String[] ARGUMENT_MARIONETTE_ADDRESS = {"address"};
+    // Start writing to a new file once the current file reaches this size in megabytes
+    private static final String[] ARGUMENT_ROTATE_SIZE = {"rotatesize"};
+    // Start writing to a new file once the current file covers this many seconds
+    private static final String[] ARGUMENT_ROTATE_TIME = {"rotatetime"};
+    // Store VMC positions rounded to this many millimetres and rotations and blendshapes with reduced precision
+    private static final String[] ARGUMENT_QUANTIZE = {"quantize"};
+    // Comma separated OSC address patterns to record or play back only, or to leave out, a trailing '*' matches any
+    // address starting with the rest of the pattern
+    private static final String[] ARGUMENT_INCLUDE = {"include"};
+    private static final String[] ARGUMENT_EXCLUDE = {"exclude"};
+    // Followed by the 1-based number of a playback target, patterns that apply to that target only, on top of
+    // --include and --exclude
+    private static final String ARGUMENT_TARGET_INCLUDE_PREFIX = "include";
+    private static final String ARGUMENT_TARGET_EXCLUDE_PREFIX = "exclude";
+    // Only play back or convert the part of the recording between these many seconds into it
+    private static final String[] ARGUMENT_FROM = {"from"};
+    private static final String[] ARGUMENT_TO = {"to"};
+    // Re-time playback or a conversion onto this many packets per second
+    private static final String[] ARGUMENT_RATE = {"rate"};
+    // Drop messages that repeat the previous value of the same bone, blendshape etc., sending everything once every this
+    // many milliseconds
+    private static final String[] ARGUMENT_CHANGES_ONLY = {"changesonly"};
+    // Merge packets that are due at almost the same time into bundles of at most this many bytes, or the default size
+    // when given as a flag
+    private static final String[] ARGUMENT_COALESCE = {"coalesce"};
+    // Shape of generated VMC traffic, how many performers send frames and how many bones and blendshapes are in each
+    private static final String[] ARGUMENT_PERFORMERS = {"performers"};
+    private static final String[] ARGUMENT_BONES = {"bones"};
+    private static final String[] ARGUMENT_BLENDSHAPES = {"blendshapes"};
+    // When finding the highest rate that can be recorded, how much to raise the rate by each step and for how many
+    // seconds to send at each rate
+    private static final String[] ARGUMENT_STEP = {"step"};
+    private static final String[] ARGUMENT_STEP_TIME = {"steptime"};
     // Flags
     // Replace VMC timing messages when playing back recordings
     private static final String[] FLAG_REPLACE_VMC_TIMING = {"t", "replacevmctiming"};
@@ -43,39 +86,64 @@ public class EmVmcPlayback {
     // Filter out VMC messages to do with moving bones excluding eyes, including the avatar root.
     // With this, the marionette's body and head won't move which is great for isolating face tracking from a recording
     private static final String[] FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT = {"b", "filterbodyandheadmovement"};
+    // Write recordings without compression so that they can be memory mapped when played back
+    private static final String[] FLAG_UNCOMPRESSED = {"u", "uncompressed"};
+    // Serialize every packet to OSC bytes once before playback starts instead of every time a packet is sent
+    private static final String[] FLAG_PRE_ENCODE = {"e", "preencode"};
+    // Record packets on a worker thread so that the receiving thread only has to hand each packet over
+    private static final String[] FLAG_DECOUPLE_RECEIVE = {"d", "decouple"};
+    // Record datagrams exactly as received, without parsing them as OSC, parsing happens when played back or converted
+    private static final String[] FLAG_RAW = {"raw"};
+    // Send generated VMC traffic with one datagram per message instead of one bundle per frame
+    private static final String[] FLAG_UNBUNDLED = {"unbundled"};
+    // Record generated VMC traffic on loopback, raising the rate until datagrams are lost
+    private static final String[] FLAG_FIND_MAX = {"findmax"};
 
     private String fileName;
     private int portIn;
-    private int portOut;
     private int recordingDurationSeconds;
     // 'marionette' is VMC terminology for the receiver of motion data.
-    private String marionetteAddress;
+    private List<PlaybackTarget> marionetteTargets;
     private boolean allowAllOsc;
     private boolean filterBodyAndHeadTracking;
+    private boolean preEncode;
+    private boolean decoupleReceive;
+    private List<String> includePatterns = Collections.emptyList();
+    private List<String> excludePatterns = Collections.emptyList();
+    private long fromNanos = 0;
+    private long toNanos = Long.MAX_VALUE;
+    // Packets per second to resample to, or 0 to not resample
+    private double rateHz = 0;
+    // Null unless unchanged messages are being dropped
+    private DeltaSuppressor deltaSuppressor = null;
+    // Null unless packets are being merged into bundles
+    private PacketCoalescer packetCoalescer = null;
 
-    public EmVmcPlayback(int portIn, int recordingDurationSeconds, String fileName, boolean allowAllOsc, boolean filterBodyAndHeadTracking) {
+    public EmVmcPlayback(int portIn, int recordingDurationSeconds, String fileName, boolean allowAllOsc, boolean filterBodyAndHeadTracking, boolean decoupleReceive) {
         this.portIn = portIn;
         this.recordingDurationSeconds = recordingDurationSeconds;
         this.fileName = fileName;
         this.allowAllOsc = allowAllOsc;
         this.filterBodyAndHeadTracking = filterBodyAndHeadTracking;
+        this.decoupleReceive = decoupleReceive;
     }
 
-    public EmVmcPlayback(String fileName, int portOut, String marionetteAddress, boolean allowAllOsc, boolean filterBodyAndHeadTracking) {
+    public EmVmcPlayback(String fileName, List<PlaybackTarget> marionetteTargets, boolean allowAllOsc, boolean filterBodyAndHeadTracking, boolean preEncode) {
         this.fileName = fileName;
-        this.portOut = portOut;
-        this.marionetteAddress = marionetteAddress;
+        this.marionetteTargets = marionetteTargets;
         this.allowAllOsc = allowAllOsc;
         this.filterBodyAndHeadTracking = filterBodyAndHeadTracking;
+        this.preEncode = preEncode;
     }
 
-    public EmVmcPlayback(int portIn, int portOut, int recordingDurationSeconds, String marionetteAddress, boolean allowAllOsc, boolean filterBodyAndHeadTracking) {
+    public EmVmcPlayback(int portIn, List<PlaybackTarget> marionetteTargets, int recordingDurationSeconds, boolean allowAllOsc, boolean filterBodyAndHeadTracking, boolean preEncode, boolean decoupleReceive) {
         this.portIn = portIn;
-        this.portOut = portOut;
         this.recordingDurationSeconds = recordingDurationSeconds;
-        this.marionetteAddress = marionetteAddress;
+        this.marionetteTargets = marionetteTargets;
         this.allowAllOsc = allowAllOsc;
         this.filterBodyAndHeadTracking = filterBodyAndHeadTracking;
+        this.preEncode = preEncode;
+        this.decoupleReceive = decoupleReceive;
     }
 
     public static void main(String[] args) {
@@ -94,6 +162,15 @@ public class EmVmcPlayback {
                 case "inout":
                     EmVmcPlayback.recordAndPlayback(arguments);
                     break;
+                case "convert":
+                    EmVmcPlayback.convertFile(arguments);
+                    break;
+                case "relay":
+                    EmVmcPlayback.relay(arguments);
+                    break;
+                case "generate":
+                    EmVmcPlayback.generate(arguments);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unrecognised argument '" + args[0] + '"');
             }
@@ -102,37 +179,152 @@ public class EmVmcPlayback {
         }
     }
 
-    // Maybe in the future we could record to file, appending each OSC message as received (or batching a few together
-    // at a time) instead of writing the entire file at the end
     // TODO: Replace all these static functions with instance methods
     private static void recordToFile(Map<String, String> arguments) throws IOException, InterruptedException {
         String fileName = removeArgument(arguments, ARGUMENT_FILE_NAME);
         int portIn = Integer.parseInt(removeArgument(arguments, ARGUMENT_PORT));
         int recordingTimeSeconds = Integer.parseInt(removeArgument(arguments, ARGUMENT_RECORDING_DURATION));
+        long rotateSizeBytes = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_ROTATE_SIZE));
+        long rotateTimeMillis = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_ROTATE_TIME));
+        VmcCodecSettings codecSettings = parseCodecSettings(arguments);
         boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
         boolean filterVmcBoneMessage = removeFlagArgument(arguments, FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        List<String> includePatterns = parsePatterns(arguments, ARGUMENT_INCLUDE);
+        List<String> excludePatterns = parsePatterns(arguments, ARGUMENT_EXCLUDE);
+        boolean uncompressed = removeFlagArgument(arguments, FLAG_UNCOMPRESSED);
+        boolean decoupleReceive = removeFlagArgument(arguments, FLAG_DECOUPLE_RECEIVE);
+        boolean raw = removeFlagArgument(arguments, FLAG_RAW);
+        long keyframeIntervalMillis = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_CHANGES_ONLY));
         logUnknownArguments(arguments);
 
-        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, recordingTimeSeconds, fileName, allowAllOsc, filterVmcBoneMessage);
+        if (raw) {
+            if (rotateSizeBytes != StreamingRecordingWriter.NO_ROTATION || rotateTimeMillis != StreamingRecordingWriter.NO_ROTATION) {
+                LOG.warn("Raw recordings can't be rotated, everything will be recorded to {}", fileName);
+            }
+            List<String> ignoredOptions = new ArrayList<>();
+            if (allowAllOsc) {
+                ignoredOptions.add("-o");
+            }
+            if (filterVmcBoneMessage) {
+                ignoredOptions.add("-b");
+            }
+            if (!includePatterns.isEmpty() || !excludePatterns.isEmpty()) {
+                ignoredOptions.add("--include/--exclude");
+            }
+            if (keyframeIntervalMillis != -1) {
+                ignoredOptions.add("--changesOnly");
+            }
+            if (uncompressed) {
+                ignoredOptions.add("-u");
+            }
+            if (codecSettings != VmcCodecSettings.LOSSLESS) {
+                ignoredOptions.add("--quantize");
+            }
+            if (decoupleReceive) {
+                ignoredOptions.add("-d");
+            }
+            if (!ignoredOptions.isEmpty()) {
+                LOG.warn("Ignoring {} for a raw recording. Raw recordings are written unfiltered and uncompressed by a single " +
+                                "thread that doesn't parse anything, filter when playing back or converting instead",
+                        String.join(", ", ignoredOptions));
+            }
+            EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, recordingTimeSeconds, fileName, allowAllOsc, filterVmcBoneMessage, decoupleReceive);
+            LOG.info("Raw recording of all datagrams on port {} to {} for {}s will start in:", portIn, fileName, recordingTimeSeconds);
+            EmVmcPlayback.recordingCountdown();
+            emVmcPlayback.recordRaw();
+            return;
+        }
+
+        if (rotateSizeBytes != StreamingRecordingWriter.NO_ROTATION) {
+            // Megabytes to bytes
+            rotateSizeBytes *= 1024 * 1024;
+        }
+        if (rotateTimeMillis != StreamingRecordingWriter.NO_ROTATION) {
+            // Seconds to milliseconds
+            rotateTimeMillis *= 1000;
+        }
+
+        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, recordingTimeSeconds, fileName, allowAllOsc, filterVmcBoneMessage, decoupleReceive);
+        emVmcPlayback.setAddressPatterns(includePatterns, excludePatterns);
+        emVmcPlayback.setChangesOnly(keyframeIntervalMillis);
 
         LOG.info("Recording {} on port {} to {} for {}s will start in:", allowAllOsc ? "all OSC messages" : "VMC messages", portIn, fileName, recordingTimeSeconds);
         EmVmcPlayback.recordingCountdown();
-        List<RecordedPacket<?, ?>> recordedMessages = emVmcPlayback.record();
 
-        emVmcPlayback.saveToFile(recordedMessages);
+        // Packets get written to file as they're recorded instead of all at the end
+        StreamingRecordingWriter writer = new StreamingRecordingWriter(Paths.get(fileName), rotateSizeBytes, rotateTimeMillis, !uncompressed, codecSettings);
+        writer.start();
+        try {
+            emVmcPlayback.record(writer);
+        } finally {
+            writer.close();
+        }
+        LOG.info("Wrote {} packets to {}", writer.getPacketCount(), writer.getWrittenFiles());
     }
 
     private static void playFromFile(Map<String, String> arguments) throws IOException {
         String fileName = removeArgument(arguments, ARGUMENT_FILE_NAME);
-        int portOut = Integer.parseInt(removeArgument(arguments, ARGUMENT_PORT));
-        String marionetteAddress = removeArgument(arguments, "localhost", ARGUMENT_MARIONETTE_ADDRESS);
+        List<PlaybackTarget> marionetteTargets = parseTargets(arguments, ARGUMENT_PORT);
         boolean replaceVmcTime = removeFlagArgument(arguments, FLAG_REPLACE_VMC_TIMING);
         boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
         boolean filterVmcNonFace = removeFlagArgument(arguments, FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        List<String> includePatterns = parsePatterns(arguments, ARGUMENT_INCLUDE);
+        List<String> excludePatterns = parsePatterns(arguments, ARGUMENT_EXCLUDE);
+        boolean preEncode = removeFlagArgument(arguments, FLAG_PRE_ENCODE);
+        long fromNanos = parseSecondsToNanos(arguments, 0, ARGUMENT_FROM);
+        long toNanos = parseSecondsToNanos(arguments, Long.MAX_VALUE, ARGUMENT_TO);
+        double rateHz = Double.parseDouble(removeArgument(arguments, "0", ARGUMENT_RATE));
+        long keyframeIntervalMillis = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_CHANGES_ONLY));
+        int maxDatagramBytes = parseCoalesce(arguments);
         logUnknownArguments(arguments);
 
-        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(fileName, portOut, marionetteAddress, allowAllOsc, filterVmcNonFace);
+        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(fileName, marionetteTargets, allowAllOsc, filterVmcNonFace, preEncode);
+        emVmcPlayback.setAddressPatterns(includePatterns, excludePatterns);
+        emVmcPlayback.setTimeRange(fromNanos, toNanos);
+        emVmcPlayback.setRate(rateHz);
+        emVmcPlayback.setChangesOnly(keyframeIntervalMillis);
+        emVmcPlayback.setCoalesce(maxDatagramBytes);
+
+        Path path = Paths.get(fileName);
+        // Pre-encoding needs every packet up front, so it loads uncompressed recordings into memory too
+        if (!emVmcPlayback.preEncode && MappedRecording.isMappable(path)) {
+            // Uncompressed recordings are played directly from the file instead of being loaded into memory
+            try (MappedRecording mappedRecording = new MappedRecording(path)) {
+                OscPlayer oscPlayer = emVmcPlayback.startPlayback(mappedRecording, replaceVmcTime);
+
+                LOG.info("Started looping memory mapped playback of {} from '{}'{} ({} packets total) to {}. " +
+                                "VMC timing message replacement is: {}",
+                        allowAllOsc ? "all OSC messages" : "only VMC messages",
+                        fileName, emVmcPlayback.describeTimeRange(), mappedRecording.getPacketCount(), emVmcPlayback.describeTargets(),
+                        replaceVmcTime ? "enabled" : "disabled");
+
+                EmVmcPlayback.stopPlaybackOnUserInput(oscPlayer);
+                emVmcPlayback.logDeltaSuppression();
+                emVmcPlayback.logCoalescing();
+            }
+            return;
+        }
+
+        // Legacy recordings might not be in offset time order, so they have to be loaded and sorted before playing
+        if (!emVmcPlayback.preEncode && !RecordingFiles.isLegacy(path)) {
+            // Playback starts as soon as the first packets have been decoded, the rest are decoded while playing
+            try (StreamingRecordingReader reader = emVmcPlayback.openStreaming()) {
+                OscPlayer oscPlayer = emVmcPlayback.startPlayback(reader, replaceVmcTime);
 
+                LOG.info("Started looping playback of {} from '{}'{} to {} while loading. " +
+                                "VMC timing message replacement is: {}",
+                        allowAllOsc ? "all OSC messages" : "only VMC messages",
+                        fileName, emVmcPlayback.describeTimeRange(), emVmcPlayback.describeTargets(),
+                        replaceVmcTime ? "enabled" : "disabled");
+
+                EmVmcPlayback.stopPlaybackOnUserInput(oscPlayer);
+                emVmcPlayback.logDeltaSuppression();
+                emVmcPlayback.logCoalescing();
+            }
+            return;
+        }
+
+        // Pre-encoding and sorting need every packet up front
         List<RecordedPacket<?, ?>> recordedPackets = emVmcPlayback.loadFromFile();
 
         // The packets didn't just get recorded so the messages need to be counted manually
@@ -147,37 +339,134 @@ public class EmVmcPlayback {
 
         OscPlayer oscPlayer = emVmcPlayback.startPlayback(recordedPackets, replaceVmcTime);
 
-        LOG.info("Started looping playback of {} from '{}' ({} packets and {} messages total) to {}:{}. " +
+        LOG.info("Started looping {}playback of {} from '{}'{} ({} packets and {} messages total) to {}. " +
                         "VMC timing message replacement is: {}",
-                allowAllOsc ? "all OSC messages" : "only VMC messages",
-                fileName, recordedPackets.size(), messageCount, marionetteAddress, portOut,
+                emVmcPlayback.preEncode ? "pre-encoded " : "", allowAllOsc ? "all OSC messages" : "only VMC messages",
+                fileName, emVmcPlayback.describeTimeRange(), recordedPackets.size(), messageCount, emVmcPlayback.describeTargets(),
                 replaceVmcTime ? "enabled" : "disabled");
 
         EmVmcPlayback.stopPlaybackOnUserInput(oscPlayer);
+        emVmcPlayback.logDeltaSuppression();
+        emVmcPlayback.logCoalescing();
     }
 
     private static void recordAndPlayback(Map<String, String> arguments) throws IOException, InterruptedException {
         int portIn = Integer.parseInt(removeArgument(arguments, ARGUMENT_PORT_IN));
-        int portOut = Integer.parseInt(removeArgument(arguments, ARGUMENT_PORT_OUT));
+        List<PlaybackTarget> marionetteTargets = parseTargets(arguments, ARGUMENT_PORT_OUT);
         int recordingTimeSeconds = Integer.parseInt(removeArgument(arguments, ARGUMENT_RECORDING_DURATION));
-        String marionetteAddress = removeArgument(arguments, "localhost", ARGUMENT_MARIONETTE_ADDRESS);
         boolean replaceVmcTime = removeFlagArgument(arguments, FLAG_REPLACE_VMC_TIMING);
         boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
         boolean filterVmcBoneMessage = removeFlagArgument(arguments, FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        List<String> includePatterns = parsePatterns(arguments, ARGUMENT_INCLUDE);
+        List<String> excludePatterns = parsePatterns(arguments, ARGUMENT_EXCLUDE);
+        boolean preEncode = removeFlagArgument(arguments, FLAG_PRE_ENCODE);
+        boolean decoupleReceive = removeFlagArgument(arguments, FLAG_DECOUPLE_RECEIVE);
+        double rateHz = Double.parseDouble(removeArgument(arguments, "0", ARGUMENT_RATE));
+        long keyframeIntervalMillis = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_CHANGES_ONLY));
+        int maxDatagramBytes = parseCoalesce(arguments);
         logUnknownArguments(arguments);
 
-        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, portOut, recordingTimeSeconds, marionetteAddress, allowAllOsc, filterVmcBoneMessage);
+        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, marionetteTargets, recordingTimeSeconds, allowAllOsc, filterVmcBoneMessage, preEncode, decoupleReceive);
+        emVmcPlayback.setAddressPatterns(includePatterns, excludePatterns);
+        emVmcPlayback.setRate(rateHz);
+        emVmcPlayback.setChangesOnly(keyframeIntervalMillis);
+        emVmcPlayback.setCoalesce(maxDatagramBytes);
 
         LOG.info("Temporary recording of {} on port {} for {}s will start in:", allowAllOsc ? "all OSC messages" : "VMC messages", portIn, recordingTimeSeconds);
         EmVmcPlayback.recordingCountdown();
 
-        List<RecordedPacket<?, ?>> recordedPackets = emVmcPlayback.record();
+        // Kept in memory for as long as it's being played back, so store it compactly
+        VmcFrames recordedFrames = new VmcFrames();
+        emVmcPlayback.record(recordedFrames);
+        recordedFrames.trimToSize();
+        // Unchanged messages were already dropped while recording, dropping them again from the recording would only
+        // count them twice
+        emVmcPlayback.logDeltaSuppression();
+        emVmcPlayback.setChangesOnly(-1);
 
-        OscPlayer oscPlayer = emVmcPlayback.startPlayback(recordedPackets, replaceVmcTime);
+        OscPlayer oscPlayer = emVmcPlayback.startPlayback(recordedFrames, replaceVmcTime);
 
-        LOG.info("Started looping playback of recorded {}s to {}:{}. VMC timing message replacement is: {}.", recordingTimeSeconds, marionetteAddress, portOut, replaceVmcTime ? "enabled" : "disabled");
+        LOG.info("Started looping playback of recorded {}s to {}. VMC timing message replacement is: {}.", recordingTimeSeconds, emVmcPlayback.describeTargets(), replaceVmcTime ? "enabled" : "disabled");
 
         EmVmcPlayback.stopPlaybackOnUserInput(oscPlayer);
+        emVmcPlayback.logCoalescing();
+    }
+
+    private static void convertFile(Map<String, String> arguments) throws IOException {
+        String fileName = removeArgument(arguments, ARGUMENT_FILE_NAME);
+        String outputFileName = removeArgument(arguments, ARGUMENT_OUTPUT_FILE_NAME);
+        VmcCodecSettings codecSettings = parseCodecSettings(arguments);
+        boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
+        boolean filterVmcNonFace = removeFlagArgument(arguments, FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        List<String> includePatterns = parsePatterns(arguments, ARGUMENT_INCLUDE);
+        List<String> excludePatterns = parsePatterns(arguments, ARGUMENT_EXCLUDE);
+        boolean uncompressed = removeFlagArgument(arguments, FLAG_UNCOMPRESSED);
+        long fromNanos = parseSecondsToNanos(arguments, 0, ARGUMENT_FROM);
+        long toNanos = parseSecondsToNanos(arguments, Long.MAX_VALUE, ARGUMENT_TO);
+        double rateHz = Double.parseDouble(removeArgument(arguments, "0", ARGUMENT_RATE));
+        long keyframeIntervalMillis = Long.parseLong(removeArgument(arguments, "-1", ARGUMENT_CHANGES_ONLY));
+        logUnknownArguments(arguments);
+
+        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(fileName, Collections.emptyList(), allowAllOsc, filterVmcNonFace, false);
+        emVmcPlayback.setAddressPatterns(includePatterns, excludePatterns);
+        emVmcPlayback.setTimeRange(fromNanos, toNanos);
+        emVmcPlayback.setRate(rateHz);
+        emVmcPlayback.setChangesOnly(keyframeIntervalMillis);
+
+        List<RecordedPacket<?, ?>> recordedPackets = emVmcPlayback.suppressUnchanged(emVmcPlayback.resample(emVmcPlayback.loadFromFile()));
+        emVmcPlayback.saveToFile(recordedPackets, outputFileName, !uncompressed, codecSettings);
+
+        LOG.info("Converted {} packets of {} from '{}'{} to '{}'", recordedPackets.size(),
+                allowAllOsc ? "all OSC messages" : "only VMC messages", fileName, emVmcPlayback.describeTimeRange(), outputFileName);
+        emVmcPlayback.logDeltaSuppression();
+    }
+
+    private static void relay(Map<String, String> arguments) throws IOException {
+        int portIn = Integer.parseInt(removeArgument(arguments, ARGUMENT_PORT_IN));
+        List<PlaybackTarget> marionetteTargets = parseTargets(arguments, ARGUMENT_PORT_OUT);
+        String fileName = removeArgument(arguments, "", ARGUMENT_FILE_NAME);
+        boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
+        boolean filterVmcBoneMessage = removeFlagArgument(arguments, FLAG_FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        List<String> includePatterns = parsePatterns(arguments, ARGUMENT_INCLUDE);
+        List<String> excludePatterns = parsePatterns(arguments, ARGUMENT_EXCLUDE);
+        logUnknownArguments(arguments);
+
+        EmVmcPlayback emVmcPlayback = new EmVmcPlayback(portIn, marionetteTargets, 0, allowAllOsc, filterVmcBoneMessage, false, false);
+        emVmcPlayback.setAddressPatterns(includePatterns, excludePatterns);
+        emVmcPlayback.relay(fileName.isEmpty() ? null : Paths.get(fileName));
+    }
+
+    private static void generate(Map<String, String> arguments) throws IOException, InterruptedException {
+        List<PlaybackTarget> marionetteTargets = parseTargets(arguments, ARGUMENT_PORT);
+        double rateHz = Double.parseDouble(removeArgument(arguments, "60", ARGUMENT_RATE));
+        int durationSeconds = Integer.parseInt(removeArgument(arguments, "0", ARGUMENT_RECORDING_DURATION));
+        int performerCount = Integer.parseInt(removeArgument(arguments, "1", ARGUMENT_PERFORMERS));
+        int boneCount = Integer.parseInt(removeArgument(arguments, Integer.toString(SyntheticVmcFrames.HUMANOID_BONE_NAMES.size()), ARGUMENT_BONES));
+        int blendshapeCount = Integer.parseInt(removeArgument(arguments, Integer.toString(SyntheticVmcFrames.BLENDSHAPE_NAMES.size()), ARGUMENT_BLENDSHAPES));
+        boolean unbundled = removeFlagArgument(arguments, FLAG_UNBUNDLED);
+        boolean findMax = removeFlagArgument(arguments, FLAG_FIND_MAX);
+        double stepHz = Double.parseDouble(removeArgument(arguments, "0", ARGUMENT_STEP));
+        int stepTimeSeconds = Integer.parseInt(removeArgument(arguments, "5", ARGUMENT_STEP_TIME));
+        boolean allowAllOsc = removeFlagArgument(arguments, FLAG_ALLOW_ALL_OSC);
+        boolean decoupleReceive = removeFlagArgument(arguments, FLAG_DECOUPLE_RECEIVE);
+        logUnknownArguments(arguments);
+
+        if (!(rateHz > 0) || Double.isInfinite(rateHz)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        VmcLoadGenerator generator = new VmcLoadGenerator(marionetteTargets, performerCount, boneCount, blendshapeCount, !unbundled);
+        if (findMax) {
+            if (marionetteTargets.size() != 1) {
+                throw new IllegalArgumentException("Finding the highest rate needs a single localhost port to record on");
+            }
+            int port = ((InetSocketAddress) marionetteTargets.get(0).getAddress()).getPort();
+            EmVmcPlayback emVmcPlayback = new EmVmcPlayback(port, marionetteTargets, 0, allowAllOsc, false, true, decoupleReceive);
+            // Raise by the starting rate each step unless told otherwise
+            emVmcPlayback.findMaxRate(generator, rateHz, stepHz > 0 ? stepHz : rateHz, stepTimeSeconds);
+        } else {
+            EmVmcPlayback emVmcPlayback = new EmVmcPlayback(0, marionetteTargets, durationSeconds, allowAllOsc, false, true, false);
+            emVmcPlayback.generate(generator, rateHz);
+        }
     }
 
     private static void stopPlaybackOnUserInput(OscPlayer player) {
@@ -186,6 +475,10 @@ public class EmVmcPlayback {
         System.out.println("Enter to quit");
         if (scanner.hasNextLine()) {
             player.stop();
+            for (PlaybackTarget target : player.getTargets()) {
+                LOG.info("Sent {} packets ({} bytes) to {}, {} failed to send", target.getPacketCount(), target.getByteCount(),
+                        target, target.getFailedCount());
+            }
         }
     }
 
@@ -218,8 +511,9 @@ public class EmVmcPlayback {
                         arg = arg.substring(0, firstEqualsIndex).toLowerCase();
                         argumentsMap.put(arg, value);
                     } else {
-                        // There's no equals sign so it must be a flag
-                        argumentsMap.put(arg, "true");
+                        // There's no equals sign so it must be a flag, names are case-insensitive the same as
+                        // valued arguments
+                        argumentsMap.put(arg.toLowerCase(), "true");
                     }
                 }
                 // Argument can't have a value, it is a single character flag or could be multiple single character
@@ -265,39 +559,416 @@ public class EmVmcPlayback {
         return false;
     }
 
+    private static List<String> parsePatterns(Map<String, String> arguments, String... argumentNames) {
+        return splitList(removeArgument(arguments, "", argumentNames));
+    }
+
+    /**
+     * @return the non-empty elements of a comma separated list
+     */
+    private static List<String> splitList(String commaSeparated) {
+        List<String> list = new ArrayList<>();
+        for (String element : commaSeparated.split(",")) {
+            element = element.trim();
+            if (!element.isEmpty()) {
+                list.add(element);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Parse the targets to send to from comma separated addresses and ports. A single address is paired with every port
+     * and a single port is paired with every address, otherwise there must be the same number of each and they're paired
+     * in order. Each target can have its own include and exclude patterns, e.g. --include2=/VMC/Ext/Blend/* for the second
+     * target. Targets with the same patterns share one filter, so that they're sent the same bytes.
+     */
+    private static List<PlaybackTarget> parseTargets(Map<String, String> arguments, String... portArgumentNames) {
+        List<String> addresses = splitList(removeArgument(arguments, "localhost", ARGUMENT_MARIONETTE_ADDRESS));
+        List<String> ports = splitList(removeArgument(arguments, portArgumentNames));
+        int targetCount = Math.max(addresses.size(), ports.size());
+        if (addresses.isEmpty() || ports.isEmpty()
+                || (addresses.size() != ports.size() && addresses.size() != 1 && ports.size() != 1)) {
+            throw new IllegalArgumentException("Addresses " + addresses + " can't be paired with ports " + ports);
+        }
+        List<PlaybackTarget> targets = new ArrayList<>(targetCount);
+        // Keyed by the sorted include and exclude patterns, since the order and repetition of patterns don't matter
+        Map<List<Set<String>>, AddressFilter> filtersByPatterns = new HashMap<>();
+        for (int i = 0; i < targetCount; i++) {
+            String address = addresses.get(addresses.size() == 1 ? 0 : i);
+            int port = Integer.parseInt(ports.get(ports.size() == 1 ? 0 : i));
+            // Per-target arguments are numbered from 1
+            int targetNumber = i + 1;
+            Set<String> includes = new TreeSet<>(parsePatterns(arguments, ARGUMENT_TARGET_INCLUDE_PREFIX + targetNumber));
+            Set<String> excludes = new TreeSet<>(parsePatterns(arguments, ARGUMENT_TARGET_EXCLUDE_PREFIX + targetNumber));
+            AddressFilter filter = filtersByPatterns.computeIfAbsent(Arrays.asList(includes, excludes), k -> {
+                AddressFilter.Builder builder = AddressFilter.builder();
+                includes.forEach(builder::include);
+                excludes.forEach(builder::exclude);
+                return builder.build();
+            });
+            targets.add(new PlaybackTarget(new InetSocketAddress(address, port), filter));
+        }
+        return targets;
+    }
+
+    private static VmcCodecSettings parseCodecSettings(Map<String, String> arguments) {
+        String quantizeMillimetres = removeArgument(arguments, "", ARGUMENT_QUANTIZE);
+        if (quantizeMillimetres.isEmpty()) {
+            return VmcCodecSettings.LOSSLESS;
+        }
+        // Millimetres to metres
+        return VmcCodecSettings.quantized(Float.parseFloat(quantizeMillimetres) / 1000);
+    }
+
+    /**
+     * @return the maximum datagram size to coalesce packets into, the default size if given as a flag, or -1 if packets
+     * shouldn't be coalesced
+     */
+    private static int parseCoalesce(Map<String, String> arguments) {
+        String maxDatagramBytes = removeArgument(arguments, "", ARGUMENT_COALESCE);
+        if (maxDatagramBytes.isEmpty()) {
+            return -1;
+        }
+        if (maxDatagramBytes.equals("true")) {
+            return PacketCoalescer.DEFAULT_MAX_DATAGRAM_BYTES;
+        }
+        return Integer.parseInt(maxDatagramBytes);
+    }
+
+    /**
+     * @return the argument's value in seconds, which may have a fractional part, converted to nanoseconds
+     */
+    private static long parseSecondsToNanos(Map<String, String> arguments, long defaultNanos, String... argumentNames) {
+        String seconds = removeArgument(arguments, "", argumentNames);
+        if (seconds.isEmpty()) {
+            return defaultNanos;
+        }
+        return Math.round(Double.parseDouble(seconds) * TimeUnit.SECONDS.toNanos(1));
+    }
+
     private static void logUnknownArguments(Map<String, String> map) {
         map.forEach((k, v) -> LOG.warn("Unrecognised argument name '{}' with value '{}'", k, v));
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @return the packets of the recording in offset time order, which resampling, dropping unchanged messages and
+     * coalescing all need
+     */
     private List<RecordedPacket<?, ?>> loadFromFile() throws IOException {
-        GZIPInputStream gzipInputStream = new GZIPInputStream(Files.newInputStream(Paths.get(this.fileName)));
-        ObjectInputStream objectInputStream = new ObjectInputStream(gzipInputStream);
+        List<RecordedPacket<?, ?>> recordedPackets =
+                RecordingFiles.readPackets(Paths.get(this.fileName), this.buildMessageFilter(), this.fromNanos, this.toNanos);
+        // Legacy recordings might not be sorted. Stable, so packets with the same offset time stay in the order they
+        // were recorded in
+        recordedPackets.sort(Comparator.comparingLong(RecordedPacket::getOffsetTime));
+        return recordedPackets;
+    }
+
+    /**
+     * Start decoding the file in the background, see {@link StreamingRecordingReader}.
+     */
+    private StreamingRecordingReader openStreaming() {
+        StreamingRecordingReader reader = new StreamingRecordingReader(Paths.get(this.fileName), this.buildMessageFilter(), this.fromNanos, this.toNanos);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * Only play back or convert the packets within a range of offset times.
+     *
+     * @param fromNanos offset time in nanoseconds of the start of the range
+     * @param toNanos   offset time in nanoseconds of the end of the range (inclusive)
+     */
+    private void setTimeRange(long fromNanos, long toNanos) {
+        if (fromNanos < 0) {
+            throw new IllegalArgumentException("Start of the time range can't be negative");
+        }
+        if (toNanos <= fromNanos) {
+            throw new IllegalArgumentException("End of the time range must be after the start");
+        }
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+    }
+
+    /**
+     * @return description of the time range for logging, empty if the whole recording is used
+     */
+    private String describeTimeRange() {
+        if (this.fromNanos == 0 && this.toNanos == Long.MAX_VALUE) {
+            return "";
+        }
+        double fromSeconds = this.fromNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        if (this.toNanos == Long.MAX_VALUE) {
+            return " from " + fromSeconds + "s to the end";
+        }
+        return " from " + fromSeconds + "s to " + this.toNanos / (double) TimeUnit.SECONDS.toNanos(1) + "s";
+    }
+
+    /**
+     * @return description of the playback targets for logging
+     */
+    private String describeTargets() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (PlaybackTarget target : this.marionetteTargets) {
+            InetSocketAddress address = (InetSocketAddress) target.getAddress();
+            joiner.add(address.getHostString() + ':' + address.getPort() + (target.getMessageFilter() != null ? " (filtered)" : ""));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Resample playback or a conversion to a fixed rate.
+     *
+     * @param rateHz packets per second, or 0 to not resample
+     */
+    private void setRate(double rateHz) {
+        if (rateHz < 0 || Double.isNaN(rateHz) || Double.isInfinite(rateHz)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.rateHz = rateHz;
+    }
+
+    private List<RecordedPacket<?, ?>> resample(List<RecordedPacket<?, ?>> recordedPackets) {
+        if (this.rateHz == 0) {
+            return recordedPackets;
+        }
+        List<RecordedPacket<?, ?>> resampled = VmcResampler.resample(recordedPackets, this.rateHz);
+        LOG.info("Resampled {} packets to {} packets at {}Hz", recordedPackets.size(), resampled.size(), this.rateHz);
+        return resampled;
+    }
+
+    private PacketCursor resample(PacketCursor packetCursor) {
+        if (this.rateHz == 0) {
+            return packetCursor;
+        }
+        LOG.info("Resampling to {}Hz", this.rateHz);
+        return new VmcResampler(packetCursor, this.rateHz);
+    }
+
+    /**
+     * Drop messages that are unchanged since they were last sent or recorded, see {@link DeltaSuppressor}.
+     *
+     * @param keyframeIntervalMillis milliseconds after which an unchanged message is sent or recorded again, or -1 to
+     *                               not drop unchanged messages
+     */
+    private void setChangesOnly(long keyframeIntervalMillis) {
+        if (keyframeIntervalMillis == -1) {
+            this.deltaSuppressor = null;
+        } else {
+            this.deltaSuppressor = new DeltaSuppressor(TimeUnit.MILLISECONDS.toNanos(keyframeIntervalMillis));
+        }
+    }
+
+    private List<RecordedPacket<?, ?>> suppressUnchanged(List<RecordedPacket<?, ?>> recordedPackets) {
+        return this.deltaSuppressor == null ? recordedPackets : this.deltaSuppressor.apply(recordedPackets);
+    }
+
+    private PacketCursor suppressUnchanged(PacketCursor packetCursor) {
+        return this.deltaSuppressor == null ? packetCursor : this.deltaSuppressor.wrap(packetCursor);
+    }
+
+    private void logDeltaSuppression() {
+        DeltaSuppressor suppressor = this.deltaSuppressor;
+        if (suppressor != null) {
+            LOG.info("Dropped {} unchanged messages and {} packets with no changes, kept {} messages including {} keyframe messages",
+                    suppressor.getSuppressedMessageCount(), suppressor.getDroppedPacketCount(),
+                    suppressor.getSentMessageCount(), suppressor.getKeyframeCount());
+        }
+    }
+
+    /**
+     * Merge packets that are due at almost the same time into bundles when playing back, see {@link PacketCoalescer}.
+     *
+     * @param maxDatagramBytes largest bundle to create in bytes, or -1 to not coalesce packets
+     */
+    private void setCoalesce(int maxDatagramBytes) {
+        if (maxDatagramBytes == -1) {
+            this.packetCoalescer = null;
+        } else {
+            this.packetCoalescer = new PacketCoalescer(PacketCoalescer.DEFAULT_TICK_NANOS, maxDatagramBytes);
+        }
+    }
+
+    private List<RecordedPacket<?, ?>> coalesce(List<RecordedPacket<?, ?>> recordedPackets) {
+        return this.packetCoalescer == null ? recordedPackets : this.packetCoalescer.apply(recordedPackets);
+    }
+
+    private PacketCursor coalesce(PacketCursor packetCursor) {
+        return this.packetCoalescer == null ? packetCursor : this.packetCoalescer.wrap(packetCursor);
+    }
+
+    private void logCoalescing() {
+        PacketCoalescer coalescer = this.packetCoalescer;
+        if (coalescer != null) {
+            LOG.info("Coalesced {} packets into {} datagrams of at most {} bytes", coalescer.getInputPacketCount(),
+                    coalescer.getOutputPacketCount(), coalescer.getMaxDatagramBytes());
+        }
+    }
+
+    private void setAddressPatterns(List<String> includePatterns, List<String> excludePatterns) {
+        this.includePatterns = includePatterns;
+        this.excludePatterns = excludePatterns;
+    }
+
+    /**
+     * @return the filter for the chosen options, or null if no filtering is required
+     */
+    private AddressFilter buildMessageFilter() {
+        return VmcUtils.buildMessageFilter(this.allowAllOsc, this.filterBodyAndHeadTracking, this.includePatterns, this.excludePatterns);
+    }
+
+    /**
+     * Relay datagrams to the targets until the user presses enter, recording them to a raw capture file if a path is
+     * given.
+     */
+    private void relay(Path recordPath) throws IOException {
+        DatagramRelay relay = new DatagramRelay(new InetSocketAddress("localhost", this.portIn), this.buildMessageFilter(), this.marionetteTargets, recordPath);
+        relay.start();
+        LOG.info("Relaying {} from port {} to {}{}", this.allowAllOsc ? "all OSC messages" : "VMC messages", this.portIn,
+                this.describeTargets(), recordPath == null ? "" : " and recording them to " + recordPath);
+        try {
+            Scanner scanner = new Scanner(System.in);
+            System.out.println("Enter to quit");
+            scanner.hasNextLine();
+        } finally {
+            relay.close();
+        }
+        LOG.info("Relayed {} datagrams, {} had every message filtered out, added latency mean {}us, max {}us",
+                relay.getDatagramCount(), relay.getDroppedDatagramCount(),
+                String.format("%.1f", relay.getMeanLatencyMicros()), String.format("%.1f", relay.getMaxLatencyMicros()));
+        for (PlaybackTarget target : this.marionetteTargets) {
+            LOG.info("Sent {} packets ({} bytes) to {}, {} failed to send", target.getPacketCount(), target.getByteCount(),
+                    target, target.getFailedCount());
+        }
+        if (recordPath != null) {
+            LOG.info("Recorded {} datagrams to {}, {} weren't recorded because writing fell behind",
+                    relay.getRecordedDatagramCount(), recordPath, relay.getUnrecordedDatagramCount());
+        }
+    }
+
+    /**
+     * Send generated VMC traffic to the targets for the chosen duration, or until the user presses enter if there's no
+     * duration.
+     */
+    private void generate(VmcLoadGenerator generator, double rateHz) throws IOException, InterruptedException {
+        generator.start(rateHz);
+        LOG.info("Generating {} messages/s, {} messages per frame at {}Hz, to {}",
+                String.format("%.0f", generator.getMessageRate(rateHz)), generator.getMessagesPerFrame(), rateHz,
+                this.describeTargets());
         try {
-            List<RecordedPacket<?, ?>> recordedMessages = (List<RecordedPacket<?, ?>>) objectInputStream.readObject();
-            objectInputStream.close();
-            gzipInputStream.close();
-            Predicate<RecordedMessage> filter = VmcUtils.buildMessageFilter(this.allowAllOsc, this.filterBodyAndHeadTracking);
-            if (filter != null) {
-                // Since the filter variable can't be final, we need a copy
-                recordedMessages = recordedMessages.stream()
-                        .map(recordedPacket -> recordedPacket.filter(filter))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
+            if (this.recordingDurationSeconds > 0) {
+                Thread.sleep(this.recordingDurationSeconds * 1000L);
+            } else {
+                Scanner scanner = new Scanner(System.in);
+                System.out.println("Enter to quit");
+                scanner.hasNextLine();
             }
-            return recordedMessages;
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
+        } finally {
+            generator.stop();
+        }
+        LOG.info("Sent {} messages/s of the target {} messages/s", String.format("%.0f", generator.getAchievedMessageRate()),
+                String.format("%.0f", generator.getMessageRate(rateHz)));
+        for (PlaybackTarget target : this.marionetteTargets) {
+            LOG.info("Sent {} packets ({} bytes) to {}, {} failed to send", target.getPacketCount(), target.getByteCount(),
+                    target, target.getFailedCount());
         }
     }
 
-    private List<RecordedPacket<?, ?>> record() throws IOException {
-        OscRecorder oscRecorder;
-        Predicate<RecordedMessage> filter = VmcUtils.buildMessageFilter(this.allowAllOsc, this.filterBodyAndHeadTracking);
+    /**
+     * Record generated VMC traffic on loopback while raising the rate it's sent at, until the recorder loses datagrams
+     * or the generator can't send any faster, then log the highest rate that was recorded without loss.
+     */
+    private void findMaxRate(VmcLoadGenerator generator, double startHz, double stepHz, int stepTimeSeconds) throws IOException, InterruptedException {
+        Predicate<RecordedMessage> filter = this.buildMessageFilter();
         if (filter == null) {
-            oscRecorder = new OscRecorder(m -> true, this.portIn);
+            filter = m -> true;
+        }
+        // Only receiving is being measured, so recorded packets are thrown away
+        OscRecorder oscRecorder = new OscRecorder(filter, packet -> {}, this.portIn, this.decoupleReceive);
+        RecorderMetrics metrics = oscRecorder.getMetrics();
+        oscRecorder.init();
+        oscRecorder.startRecording();
+        double maxLosslessMessageRate = 0;
+        try {
+            for (double rateHz = startHz; ; rateHz += stepHz) {
+                long sentBefore = generator.getSentPacketCount();
+                long receivedBefore = metrics.getReceivedPacketCount();
+                generator.start(rateHz);
+                try {
+                    Thread.sleep(stepTimeSeconds * 1000L);
+                } finally {
+                    generator.stop();
+                }
+                // Wait for the recorder to finish with everything that's already been received
+                long received = metrics.getReceivedPacketCount();
+                long previousReceived;
+                do {
+                    previousReceived = received;
+                    Thread.sleep(100);
+                    received = metrics.getReceivedPacketCount();
+                } while (received != previousReceived);
+
+                long sent = generator.getSentPacketCount() - sentBefore;
+                long lost = sent - (received - receivedBefore);
+                double achievedMessageRate = generator.getAchievedMessageRate();
+                double targetMessageRate = generator.getMessageRate(rateHz);
+                LOG.info("At {}Hz sent {} messages/s of the target {} messages/s, {} of {} datagrams were lost", rateHz,
+                        String.format("%.0f", achievedMessageRate), String.format("%.0f", targetMessageRate), lost, sent);
+                if (lost > 0) {
+                    break;
+                }
+                if (achievedMessageRate < targetMessageRate * 0.95) {
+                    LOG.info("Sending can't keep up with the target rate, so the recorder can't be pushed any further");
+                    maxLosslessMessageRate = achievedMessageRate;
+                    break;
+                }
+                maxLosslessMessageRate = achievedMessageRate;
+            }
+        } finally {
+            oscRecorder.stopRecording();
+        }
+        if (maxLosslessMessageRate == 0) {
+            LOG.info("Datagrams were lost at the starting rate, try a lower --rate");
         } else {
-            oscRecorder = new OscRecorder(filter, this.portIn);
+            LOG.info("Highest rate recorded without loss: {} messages/s", String.format("%.0f", maxLosslessMessageRate));
+        }
+    }
+
+    /**
+     * Record raw datagrams for the chosen duration, without parsing or filtering them.
+     */
+    private void recordRaw() throws IOException {
+        RawDatagramRecorder recorder = new RawDatagramRecorder(new InetSocketAddress("localhost", this.portIn), Paths.get(this.fileName));
+        LOG.info("Recording");
+        recorder.start();
+        try {
+            Thread.sleep(this.recordingDurationSeconds * 1000L);
+        } catch (InterruptedException e) {
+            // Should never happen
+            throw new RuntimeException(e);
+        } finally {
+            recorder.close();
+        }
+        LOG.info("Recording stopped");
+        LOG.info("Recorded {} datagrams ({} bytes total) to {}", recorder.getDatagramCount(), recorder.getDatagramBytes(), this.fileName);
+    }
+
+    /**
+     * Record for the chosen duration.
+     *
+     * @param packetSink consumer to pass recorded packets to as they're recorded, or null to keep them in memory
+     * @return the recorded packets, empty if a packetSink was given
+     */
+    private List<RecordedPacket<?, ?>> record(Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        Predicate<RecordedMessage> filter = this.buildMessageFilter();
+        if (filter == null) {
+            filter = m -> true;
+        }
+        OscRecorder oscRecorder = new OscRecorder(filter, packetSink, this.portIn, this.decoupleReceive);
+        oscRecorder.setDeltaSuppressor(this.deltaSuppressor);
+        if (packetSink instanceof StreamingRecordingWriter) {
+            StreamingRecordingWriter writer = (StreamingRecordingWriter) packetSink;
+            oscRecorder.getMetrics().addQueue("write", writer::getQueueSize, writer.getQueueCapacity());
         }
         oscRecorder.init();
 
@@ -305,7 +976,7 @@ public class EmVmcPlayback {
         oscRecorder.startRecording();
         // wait for messages for the input number of seconds
         try {
-            Thread.sleep(this.recordingDurationSeconds * 1000);
+            Thread.sleep(this.recordingDurationSeconds * 1000L);
         } catch (InterruptedException e) {
             // Should never happen
             throw new RuntimeException(e);
@@ -313,27 +984,88 @@ public class EmVmcPlayback {
         List<RecordedPacket<?, ?>> recordedMessages = oscRecorder.stopRecording();
         LOG.info("Recording stopped");
         LOG.info("Recorded {} packets ({} messages total) in {} milliseconds", oscRecorder.getPacketCount(), oscRecorder.countMessages(), oscRecorder.getRecordingDurationMillis());
+        if (oscRecorder.getPrefilteredMessageCount() > 0) {
+            LOG.info("Filtered out {} messages before they were parsed", oscRecorder.getPrefilteredMessageCount());
+        }
+        long badDataCount = oscRecorder.getMetrics().getBadDataCount();
+        if (badDataCount > 0) {
+            LOG.warn("{} received packets couldn't be parsed as OSC", badDataCount);
+        }
+        this.logDeltaSuppression();
         return recordedMessages;
     }
 
-    private void saveToFile(List<RecordedPacket<?, ?>> recordedPackets) throws IOException {
-        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(Files.newOutputStream(Paths.get(this.fileName)));
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(gzipOutputStream);
-        objectOutputStream.writeObject(recordedPackets);
-        objectOutputStream.flush();
-        objectOutputStream.close();
-        gzipOutputStream.flush();
-        gzipOutputStream.close();
+    private void saveToFile(List<RecordedPacket<?, ?>> recordedPackets, String outputFileName, boolean compress, VmcCodecSettings codecSettings) throws IOException {
+        RecordingFiles.writePackets(Paths.get(outputFileName), recordedPackets, compress, codecSettings);
     }
 
     private OscPlayer startPlayback(List<RecordedPacket<?, ?>> recordedMessages, boolean replaceVmcTimingMessages) throws IOException {
+        recordedMessages = this.coalesce(this.suppressUnchanged(this.resample(recordedMessages)));
+
+        OscPlayer oscPlayer;
+        if (replaceVmcTimingMessages) {
+            oscPlayer = new VmcPlayer(this.marionetteTargets, recordedMessages, this.preEncode);
+        } else {
+            oscPlayer = new OscPlayer(this.marionetteTargets, recordedMessages, this.preEncode);
+        }
+
+        oscPlayer.start();
+        return oscPlayer;
+    }
+
+    private OscPlayer startPlayback(VmcFrames vmcFrames, boolean replaceVmcTimingMessages) throws IOException {
+        if (this.preEncode) {
+            // Only the encoded bytes are kept once encoded, so the frames don't need to stay in memory
+            return this.startPlayback(vmcFrames.toRecordedPackets(), replaceVmcTimingMessages);
+        }
+        // Loop the full length of the recording, the same as when playing a list of packets
+        long repeatPeriodNanos = Math.max(1, vmcFrames.getLastOffsetTime());
+        PacketCursor packetCursor = this.coalesce(this.suppressUnchanged(this.resample(vmcFrames.cursor())));
+
+        OscPlayer oscPlayer;
+        if (replaceVmcTimingMessages) {
+            oscPlayer = new VmcPlayer(this.marionetteTargets, packetCursor, repeatPeriodNanos);
+        } else {
+            oscPlayer = new OscPlayer(this.marionetteTargets, packetCursor, repeatPeriodNanos);
+        }
+
+        oscPlayer.start();
+        return oscPlayer;
+    }
+
+    private OscPlayer startPlayback(StreamingRecordingReader reader, boolean replaceVmcTimingMessages) throws IOException {
+        PacketCursor packetCursor = this.coalesce(this.suppressUnchanged(this.resample(reader)));
+
+        // The length of the recording isn't known until it's been decoded, so loop at the last packet, the same as when
+        // playing a recording that's been loaded into memory
+        OscPlayer oscPlayer;
+        if (replaceVmcTimingMessages) {
+            oscPlayer = new VmcPlayer(this.marionetteTargets, packetCursor);
+        } else {
+            oscPlayer = new OscPlayer(this.marionetteTargets, packetCursor);
+        }
+
+        oscPlayer.start();
+        return oscPlayer;
+    }
+
+    private OscPlayer startPlayback(MappedRecording mappedRecording, boolean replaceVmcTimingMessages) throws IOException {
+        // Seeks to the start of the time range and makes offset times relative to it
+        PacketCursor packetCursor = mappedRecording.cursor(this.fromNanos, this.toNanos);
+        Predicate<RecordedMessage> filter = this.buildMessageFilter();
+        if (filter != null) {
+            packetCursor = packetCursor.filter(filter);
+        }
+        packetCursor = this.coalesce(this.suppressUnchanged(this.resample(packetCursor)));
+        // Loop up to the last packet in the time range, the same as when playing a recording that's been loaded into
+        // memory
+        long repeatPeriodNanos = Math.max(1, mappedRecording.getLastOffsetTimeAtOrBefore(this.toNanos) - this.fromNanos);
 
         OscPlayer oscPlayer;
-        InetSocketAddress inetSocketAddress = new InetSocketAddress(this.marionetteAddress, this.portOut);
         if (replaceVmcTimingMessages) {
-            oscPlayer = new VmcPlayer(inetSocketAddress, recordedMessages);
+            oscPlayer = new VmcPlayer(this.marionetteTargets, packetCursor, repeatPeriodNanos);
         } else {
-            oscPlayer = new OscPlayer(inetSocketAddress, recordedMessages);
+            oscPlayer = new OscPlayer(this.marionetteTargets, packetCursor, repeatPeriodNanos);
         }
 
         oscPlayer.start();
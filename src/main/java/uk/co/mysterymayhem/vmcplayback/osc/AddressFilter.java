@@ -0,0 +1,225 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * Message filter compiled from address rules into a trie over the bytes of OSC addresses, so that a message's address
+ * is matched against every rule in a single pass over its characters.
+ * <p>
+ * Each rule has a pattern, which is either an exact address, e.g. {@code /VMC/Ext/Root/Pos}, or an address prefix ending
+ * in '*', e.g. {@code /VMC/Ext/Bone/*}. The most restrictive of the rules matching a message decides what happens to
+ * it: excluding beats checking arguments, which beats including, so an exclude can't be undone by any other rule,
+ * however specific. Messages matching no rule are rejected if there are any include rules, otherwise they're accepted.
+ * <p>
+ * Rules can also leave the decision to a predicate on the parsed message, for filtering on arguments. Because most
+ * messages are decided by address alone, they can be decided from serialized OSC bytes, see {@link DatagramPrefilter},
+ * before any arguments are parsed.
+ * <p>
+ * Immutable and thread safe once built.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class AddressFilter implements Predicate<RecordedMessage> {
+    public static final int REJECT = 0;
+    public static final int ACCEPT = 1;
+    public static final int CHECK_ARGUMENTS = 2;
+
+    // Addresses are ASCII
+    private static final int ALPHABET_SIZE = 128;
+
+    private final Node root;
+    private final Rule defaultRule;
+
+    private AddressFilter(Node root, Rule defaultRule) {
+        this.root = root;
+        this.defaultRule = defaultRule;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean test(RecordedMessage recordedMessage) {
+        Rule rule = this.match(recordedMessage.getAddress());
+        return rule.decision == CHECK_ARGUMENTS ? rule.argumentFilter.test(recordedMessage) : rule.decision == ACCEPT;
+    }
+
+    /**
+     * Decide what happens to messages with the given address.
+     *
+     * @return REJECT, ACCEPT or CHECK_ARGUMENTS if the message needs to be parsed to be decided
+     */
+    public int decide(String address) {
+        return this.match(address).decision;
+    }
+
+    /**
+     * Decide what happens to a serialized OSC message from its address.
+     *
+     * @param buffer       buffer containing the message
+     * @param messageStart index of the start of the message's address
+     * @param messageEnd   index of the end of the message (exclusive)
+     * @return REJECT, ACCEPT or CHECK_ARGUMENTS if the message needs to be parsed to be decided
+     */
+    public int decide(ByteBuffer buffer, int messageStart, int messageEnd) {
+        Rule best = null;
+        Node node = this.root;
+        for (int i = messageStart; i < messageEnd; i++) {
+            byte b = buffer.get(i);
+            if (b == 0) {
+                return this.orDefault(node.bestRuleAtEnd(best)).decision;
+            }
+            best = Rule.mostRestrictive(best, node.prefixRule);
+            node = node.child(b);
+            if (node == null || best == Rule.EXCLUDE) {
+                return this.orDefault(best).decision;
+            }
+        }
+        // Unterminated address, leave it to the parser to reject
+        return ACCEPT;
+    }
+
+    private Rule match(String address) {
+        Rule best = null;
+        Node node = this.root;
+        for (int i = 0; i < address.length(); i++) {
+            best = Rule.mostRestrictive(best, node.prefixRule);
+            node = node.child(address.charAt(i));
+            // Nothing is more restrictive than excluding
+            if (node == null || best == Rule.EXCLUDE) {
+                return this.orDefault(best);
+            }
+        }
+        return this.orDefault(node.bestRuleAtEnd(best));
+    }
+
+    private Rule orDefault(Rule matched) {
+        return matched != null ? matched : this.defaultRule;
+    }
+
+    private static final class Rule {
+        // Every exclude is the same, which lets matching stop as soon as it finds one
+        static final Rule EXCLUDE = new Rule(REJECT, null);
+
+        private final int decision;
+        private final Predicate<RecordedMessage> argumentFilter;
+
+        Rule(int decision, Predicate<RecordedMessage> argumentFilter) {
+            this.decision = decision;
+            this.argumentFilter = argumentFilter;
+        }
+
+        // Excluding beats checking arguments, which beats including. Either rule may be null, when they're equally
+        // restrictive, the existing rule is kept
+        static Rule mostRestrictive(Rule existing, Rule added) {
+            if (existing == null) {
+                return added;
+            }
+            if (added == null) {
+                return existing;
+            }
+            return added.restriction() > existing.restriction() ? added : existing;
+        }
+
+        private int restriction() {
+            return this.decision == REJECT ? 2 : this.decision == CHECK_ARGUMENTS ? 1 : 0;
+        }
+    }
+
+    private static final class Node {
+        private Node[] children = null;
+        // Rule for an address that ends at this node
+        private Rule exactRule = null;
+        // Rule for every address that starts with the characters leading to this node
+        private Rule prefixRule = null;
+
+        Node child(int c) {
+            return this.children == null || c < 0 || c >= ALPHABET_SIZE ? null : this.children[c];
+        }
+
+        Node getOrAddChild(char c) {
+            if (this.children == null) {
+                this.children = new Node[ALPHABET_SIZE];
+            }
+            Node child = this.children[c];
+            if (child == null) {
+                child = new Node();
+                this.children[c] = child;
+            }
+            return child;
+        }
+
+        // A prefix also matches the address that's exactly the prefix
+        Rule bestRuleAtEnd(Rule best) {
+            return Rule.mostRestrictive(Rule.mostRestrictive(best, this.prefixRule), this.exactRule);
+        }
+    }
+
+    public static final class Builder {
+        private final Node root = new Node();
+        private boolean hasIncludes = false;
+        private boolean hasRules = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Accept messages matching the pattern. Once any include rule is added, messages that don't match a rule are
+         * rejected.
+         */
+        public Builder include(String pattern) {
+            this.hasIncludes = true;
+            return this.add(pattern, new Rule(ACCEPT, null));
+        }
+
+        /**
+         * Reject messages matching the pattern.
+         */
+        public Builder exclude(String pattern) {
+            return this.add(pattern, Rule.EXCLUDE);
+        }
+
+        /**
+         * Decide messages matching the pattern by testing the parsed message with a predicate.
+         */
+        public Builder checkArguments(String pattern, Predicate<RecordedMessage> argumentFilter) {
+            return this.add(pattern, new Rule(CHECK_ARGUMENTS, argumentFilter));
+        }
+
+        public boolean hasRules() {
+            return this.hasRules;
+        }
+
+        /**
+         * @return the compiled filter, or null if no rules were added and every message would be accepted
+         */
+        public AddressFilter build() {
+            if (!this.hasRules) {
+                return null;
+            }
+            return new AddressFilter(this.root, new Rule(this.hasIncludes ? REJECT : ACCEPT, null));
+        }
+
+        private Builder add(String pattern, Rule rule) {
+            boolean prefix = pattern.endsWith("*");
+            String address = prefix ? pattern.substring(0, pattern.length() - 1) : pattern;
+            Node node = this.root;
+            for (int i = 0; i < address.length(); i++) {
+                char c = address.charAt(i);
+                if (c >= ALPHABET_SIZE || c == 0 || c == '*') {
+                    throw new IllegalArgumentException("Unsupported character '" + c + "' in address pattern '" + pattern + "'");
+                }
+                node = node.getOrAddChild(c);
+            }
+            if (prefix) {
+                node.prefixRule = Rule.mostRestrictive(node.prefixRule, rule);
+            } else {
+                node.exactRule = Rule.mostRestrictive(node.exactRule, rule);
+            }
+            this.hasRules = true;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.BufferBytesReceiver;
+import com.illposed.osc.OSCSerializeException;
+import com.illposed.osc.OSCSerializer;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+/**
+ * Timeline that converts each packet from a PacketCursor to OSC bytes when it's sent, and sends those bytes to every
+ * playback target.
+ * <p>
+ * Each packet is serialized once for all the targets that receive it unfiltered, and once more for each group of targets
+ * whose filter removes some of its messages.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+class CursorPlaybackTimeline implements PlaybackTimeline {
+    // Largest possible UDP payload
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final PacketCursor packetCursor;
+    private final PlaybackTargetGroup[] groups;
+    private final DatagramChannel channel;
+    private final ByteBuffer unfilteredBytes = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final ByteBuffer filteredBytes = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final OSCSerializer unfilteredSerializer;
+    private final OSCSerializer filteredSerializer;
+    private RecordedPacket<?, ?> current = null;
+
+    CursorPlaybackTimeline(PacketCursor packetCursor, List<PlaybackTarget> targets) throws IOException {
+        this.packetCursor = packetCursor;
+        this.groups = PlaybackTargetGroup.group(targets);
+        OSCSerializerAndParserBuilder builder = new OSCSerializerAndParserBuilder();
+        this.unfilteredSerializer = builder.buildSerializer(new BufferBytesReceiver(this.unfilteredBytes));
+        this.filteredSerializer = builder.buildSerializer(new BufferBytesReceiver(this.filteredBytes));
+        this.channel = DatagramChannel.open();
+    }
+
+    @Override
+    public boolean next() {
+        this.current = this.packetCursor.next();
+        return this.current != null;
+    }
+
+    @Override
+    public long getOffsetTime() {
+        return this.current.getOffsetTime();
+    }
+
+    @Override
+    public void send() throws IOException {
+        RecordedPacket<?, ?> current = this.current;
+        boolean unfilteredEncoded = false;
+        for (PlaybackTargetGroup group : this.groups) {
+            RecordedPacket<?, ?> filtered = group.filter(current);
+            if (filtered == null) {
+                // Nothing left for this group
+                continue;
+            }
+            if (filtered == current) {
+                if (!unfilteredEncoded) {
+                    encode(current, this.unfilteredSerializer, this.unfilteredBytes);
+                    unfilteredEncoded = true;
+                }
+                group.send(this.channel, this.unfilteredBytes);
+            } else {
+                encode(filtered, this.filteredSerializer, this.filteredBytes);
+                group.send(this.channel, this.filteredBytes);
+            }
+        }
+    }
+
+    private static void encode(RecordedPacket<?, ?> recordedPacket, OSCSerializer serializer, ByteBuffer bytes) throws IOException {
+        bytes.clear();
+        try {
+            serializer.write(recordedPacket.toOscPacket());
+        } catch (OSCSerializeException e) {
+            throw new IOException("Failed to serialize " + recordedPacket, e);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Packet is too large to send in a single datagram " + recordedPacket, e);
+        }
+        bytes.flip();
+    }
+
+    @Override
+    public void rewind() {
+        this.packetCursor.rewind();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
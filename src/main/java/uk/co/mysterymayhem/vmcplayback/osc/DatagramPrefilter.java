@@ -0,0 +1,177 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.OSCMessage;
+import com.illposed.osc.OSCPacket;
+import com.illposed.osc.OSCParseException;
+import com.illposed.osc.OSCParser;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removes messages rejected by an {@link AddressFilter} from serialized OSC packets, so that they never get parsed.
+ * <p>
+ * Messages are decided by address only, messages that need their arguments checking are kept, the filter still needs
+ * to be applied to the parsed packet to decide those. Alternatively, when the datagrams won't be parsed afterwards, each
+ * message that needs its arguments checking can be parsed by itself and decided here, see
+ * {@link #DatagramPrefilter(AddressFilter, int, boolean)}. Bundles that end up with no elements are removed too.
+ * <p>
+ * Not thread safe, each receiving thread should have its own.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class DatagramPrefilter {
+    // "#bundle\0" and the 8 byte time tag
+    private static final int BUNDLE_HEADER_LENGTH = 16;
+
+    private final AddressFilter addressFilter;
+    private final ByteBuffer filtered;
+    // Null unless messages that need their arguments checking are decided here
+    private final OSCParser argumentParser;
+    private final OscBytes.MessageVisitor rejectedCounter = this::countIfRejected;
+    private int rejectedInPacket;
+    private long rejectedMessageCount = 0;
+
+    /**
+     * @param addressFilter   filter to decide which messages to keep
+     * @param maxDatagramSize size of the largest datagram that will be prefiltered
+     */
+    public DatagramPrefilter(AddressFilter addressFilter, int maxDatagramSize) {
+        this(addressFilter, maxDatagramSize, false);
+    }
+
+    /**
+     * @param addressFilter   filter to decide which messages to keep
+     * @param maxDatagramSize size of the largest datagram that will be prefiltered
+     * @param checkArguments  true to parse each message that needs its arguments checking and decide it here, for when
+     *                        the datagrams won't be parsed and filtered afterwards
+     */
+    public DatagramPrefilter(AddressFilter addressFilter, int maxDatagramSize, boolean checkArguments) {
+        this.addressFilter = addressFilter;
+        this.filtered = ByteBuffer.allocate(maxDatagramSize);
+        this.argumentParser = checkArguments ? new OSCSerializerAndParserBuilder().buildParser() : null;
+    }
+
+    /**
+     * Remove the rejected messages from a serialized OSC packet.
+     *
+     * @param datagram buffer with the packet between its position and limit
+     * @return the datagram itself if nothing was rejected or if it isn't valid OSC, in which case parsing will fail
+     * anyway. null if every message was rejected. Otherwise, a buffer owned by this prefilter containing only the kept
+     * messages, which is only valid until the next call
+     */
+    public ByteBuffer prefilter(ByteBuffer datagram) {
+        int start = datagram.position();
+        int end = datagram.limit();
+        try {
+            int rejected = this.countRejected(datagram, start, end);
+            if (rejected == 0) {
+                return datagram;
+            }
+            this.rejectedMessageCount += rejected;
+            ByteBuffer filtered = this.filtered;
+            filtered.clear();
+            if (this.copyKept(datagram, start, end, filtered) == 0) {
+                return null;
+            }
+            filtered.flip();
+            return filtered;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Malformed, let the parser report it
+            return datagram;
+        }
+    }
+
+    /**
+     * @return the number of messages removed so far
+     */
+    public long getRejectedMessageCount() {
+        return this.rejectedMessageCount;
+    }
+
+    private int countRejected(ByteBuffer buffer, int start, int end) {
+        this.rejectedInPacket = 0;
+        OscBytes.forEachMessage(buffer, start, end, this.rejectedCounter);
+        return this.rejectedInPacket;
+    }
+
+    private void countIfRejected(ByteBuffer buffer, int messageStart, int messageEnd) {
+        if (this.isRejected(buffer, messageStart, messageEnd)) {
+            this.rejectedInPacket++;
+        }
+    }
+
+    private boolean isRejected(ByteBuffer buffer, int messageStart, int messageEnd) {
+        int decision = this.addressFilter.decide(buffer, messageStart, messageEnd);
+        if (decision == AddressFilter.CHECK_ARGUMENTS && this.argumentParser != null) {
+            return !this.checkArguments(buffer, messageStart, messageEnd);
+        }
+        return decision == AddressFilter.REJECT;
+    }
+
+    /**
+     * Parse a single message and test it against the filter.
+     *
+     * @return true if the message is kept, including if it can't be parsed
+     */
+    private boolean checkArguments(ByteBuffer buffer, int messageStart, int messageEnd) {
+        ByteBuffer message = buffer.duplicate();
+        message.limit(messageEnd);
+        message.position(messageStart);
+        try {
+            OSCPacket packet = this.argumentParser.convert(message.slice());
+            return !(packet instanceof OSCMessage) || this.addressFilter.test(new RecordedMessage((OSCMessage) packet));
+        } catch (OSCParseException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of messages kept
+     */
+    private int copyKept(ByteBuffer src, int start, int end, ByteBuffer dst) {
+        if (!OscBytes.isBundle(src, start, end)) {
+            if (this.isRejected(src, start, end)) {
+                return 0;
+            }
+            copy(src, start, end, dst);
+            return 1;
+        }
+        int bundleStart = dst.position();
+        copy(src, start, start + BUNDLE_HEADER_LENGTH, dst);
+        int kept = 0;
+        int elementPosition = start + BUNDLE_HEADER_LENGTH;
+        while (elementPosition < end) {
+            int elementSize = src.getInt(elementPosition);
+            int elementStart = elementPosition + 4;
+            int elementEnd = elementStart + elementSize;
+            int sizePosition = dst.position();
+            dst.putInt(0);
+            int elementKept = this.copyKept(src, elementStart, elementEnd, dst);
+            if (elementKept == 0) {
+                dst.position(sizePosition);
+            } else {
+                dst.putInt(sizePosition, dst.position() - sizePosition - 4);
+                kept += elementKept;
+            }
+            elementPosition = elementEnd;
+        }
+        if (kept == 0) {
+            dst.position(bundleStart);
+        }
+        return kept;
+    }
+
+    private static void copy(ByteBuffer src, int start, int end, ByteBuffer dst) {
+        if (src.hasArray()) {
+            dst.put(src.array(), src.arrayOffset() + start, end - start);
+        } else {
+            // Direct buffers, such as the relay's receive buffer, are copied in bulk through a view of the range
+            ByteBuffer range = src.duplicate();
+            // Limit must be set first since the position can't be beyond the current limit
+            range.limit(end);
+            range.position(start);
+            dst.put(range);
+        }
+    }
+}
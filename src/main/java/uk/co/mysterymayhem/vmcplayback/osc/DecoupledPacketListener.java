@@ -0,0 +1,140 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.OSCBadDataEvent;
+import com.illposed.osc.OSCPacket;
+import com.illposed.osc.OSCPacketEvent;
+import com.illposed.osc.OSCPacketListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Packet listener that moves recording off of the thread receiving packets, so that the socket keeps getting drained
+ * while packets are converted, filtered and stored.
+ * <p>
+ * The receiving thread only timestamps each packet and publishes it into a preallocated {@link SpscRingBuffer}. A
+ * worker thread takes packets from the ring buffer and passes them to a {@link RecordingPacketListener}. If the worker
+ * falls so far behind that the ring buffer fills up, newly received packets are dropped and counted rather than
+ * blocking the receiving thread.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class DecoupledPacketListener implements OSCPacketListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DecoupledPacketListener.class);
+
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int MAX_DRAIN = 1024;
+    // How long the worker sleeps for when there's nothing to record, only delays recording, timestamps are unaffected
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private final RecordingPacketListener recordingPacketListener;
+    private final SpscRingBuffer<OSCPacket> ringBuffer;
+    private final SpscRingBuffer.Handler<OSCPacket> recordHandler;
+    private final Thread workerThread;
+    private volatile boolean stopping = false;
+    // Only written by the receiving thread
+    private volatile long overflowCount = 0;
+
+    public DecoupledPacketListener(RecordingPacketListener recordingPacketListener) {
+        this(recordingPacketListener, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param recordingPacketListener listener that records the packets, only called from the worker thread
+     * @param capacity                maximum number of packets waiting to be recorded
+     */
+    public DecoupledPacketListener(RecordingPacketListener recordingPacketListener, int capacity) {
+        this.recordingPacketListener = recordingPacketListener;
+        this.ringBuffer = new SpscRingBuffer<>(capacity);
+        this.recordHandler = recordingPacketListener::recordPacket;
+        this.workerThread = new Thread(this::workLoop, "RecordingWorker");
+        this.workerThread.setDaemon(true);
+    }
+
+    public void start() {
+        this.workerThread.start();
+    }
+
+    /**
+     * Stop the worker once every packet that has already been received has been recorded. Packets should no longer be
+     * being received.
+     */
+    public void stop() {
+        this.stopping = true;
+        LockSupport.unpark(this.workerThread);
+        try {
+            this.workerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long overflowCount = this.overflowCount;
+        if (overflowCount > 0) {
+            LOG.warn("Recording couldn't keep up, {} received packets were dropped", overflowCount);
+        }
+    }
+
+    /**
+     * @return the number of packets dropped because the ring buffer was full
+     */
+    public long getOverflowCount() {
+        return this.overflowCount;
+    }
+
+    /**
+     * @return the number of received packets waiting to be recorded
+     */
+    public int getQueueSize() {
+        return this.ringBuffer.size();
+    }
+
+    public int getQueueCapacity() {
+        return this.ringBuffer.capacity();
+    }
+
+    @Override
+    public void handlePacket(OSCPacketEvent event) {
+        this.offer(event.getPacket(), System.nanoTime());
+    }
+
+    /**
+     * Hand a received packet over to the worker thread to be recorded, only to be called from the receiving thread.
+     *
+     * @param packet       the received packet
+     * @param timeReceived {@link System#nanoTime()} when the packet was received
+     */
+    public void offer(OSCPacket packet, long timeReceived) {
+        if (!this.ringBuffer.offer(packet, timeReceived)) {
+            // Single writer, so the non-atomic increment is fine
+            this.overflowCount++;
+        }
+    }
+
+    @Override
+    public void handleBadData(OSCBadDataEvent event) {
+        this.recordingPacketListener.handleBadData(event);
+    }
+
+    private void workLoop() {
+        SpscRingBuffer<OSCPacket> ringBuffer = this.ringBuffer;
+        while (true) {
+            // Read before draining so that anything published before stopping still gets drained
+            boolean stopping = this.stopping;
+            int drained;
+            try {
+                drained = ringBuffer.drain(this.recordHandler, MAX_DRAIN);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to record packet", e);
+                continue;
+            }
+            if (drained == 0) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drops messages that repeat the previous value of the same {@link MessageKey} exactly, such as static blendshapes,
+ * idle fingers or an unchanged root.
+ * <p>
+ * So that receivers that start listening part way through, or that missed a datagram, get back in sync, a message is
+ * always let through as a keyframe when its key hasn't been sent for at least the keyframe interval of offset time.
+ * Every key is tracked separately, so keys that only appear in some packets still get their keyframes. The first
+ * message of each key, and the first after a {@link #reset()}, is always sent.
+ * <p>
+ * Messages without arguments, such as {@code /VMC/Ext/Blend/Apply}, are commands rather than values, so they're never
+ * dropped. Packets that have no messages left are dropped entirely.
+ * <p>
+ * Not thread safe, packets must be passed in offset time order from a single thread. The counters can be read from any
+ * thread.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class DeltaSuppressor {
+    private final long keyframeIntervalNanos;
+    // Last value sent for each key and when it was sent
+    private final Map<MessageKey, SentValue> lastValues = new HashMap<>();
+
+    private volatile long sentMessageCount = 0;
+    private volatile long suppressedMessageCount = 0;
+    private volatile long droppedPacketCount = 0;
+    private volatile long keyframeCount = 0;
+
+    /**
+     * @param keyframeIntervalNanos offset time in nanoseconds after which an unchanged message is sent again
+     */
+    public DeltaSuppressor(long keyframeIntervalNanos) {
+        if (keyframeIntervalNanos < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+        this.keyframeIntervalNanos = keyframeIntervalNanos;
+    }
+
+    /**
+     * Remove the messages that are unchanged since they were last sent.
+     *
+     * @param recordedPacket next packet, in offset time order
+     * @return the packet without its unchanged messages, the same packet if every message is sent, or null if no
+     * messages are left
+     */
+    public RecordedPacket<?, ?> apply(RecordedPacket<?, ?> recordedPacket) {
+        long offsetTime = recordedPacket.getOffsetTime();
+        RecordedPacket<?, ?> filtered = recordedPacket.filter(message -> this.shouldSend(message, offsetTime));
+        if (filtered == null) {
+            this.droppedPacketCount++;
+        }
+        return filtered;
+    }
+
+    /**
+     * Apply to every packet of a list. This is reset first, so values remembered from earlier packets, which could be
+     * from a different time range, don't cause the first packets of the list to be dropped.
+     *
+     * @param sortedPackets packets in offset time order
+     * @return the packets that still have messages left, with their unchanged messages removed
+     */
+    public List<RecordedPacket<?, ?>> apply(List<RecordedPacket<?, ?>> sortedPackets) {
+        this.reset();
+        List<RecordedPacket<?, ?>> filteredPackets = new ArrayList<>(sortedPackets.size());
+        for (RecordedPacket<?, ?> recordedPacket : sortedPackets) {
+            RecordedPacket<?, ?> filtered = this.apply(recordedPacket);
+            if (filtered != null) {
+                filteredPackets.add(filtered);
+            }
+        }
+        return filteredPackets;
+    }
+
+    /**
+     * Create a cursor that applies this to every packet of another cursor. Rewinding the cursor resets this, so that
+     * every loop starts by sending every key.
+     */
+    public PacketCursor wrap(PacketCursor source) {
+        DeltaSuppressor suppressor = this;
+        return new PacketCursor() {
+            @Override
+            public RecordedPacket<?, ?> next() {
+                RecordedPacket<?, ?> next;
+                while ((next = source.next()) != null) {
+                    RecordedPacket<?, ?> filtered = suppressor.apply(next);
+                    if (filtered != null) {
+                        return filtered;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void rewind() {
+                source.rewind();
+                suppressor.reset();
+            }
+        };
+    }
+
+    /**
+     * Forget every value, so that the next message of every key is sent. The counters are kept.
+     */
+    public void reset() {
+        this.lastValues.clear();
+    }
+
+    private boolean shouldSend(RecordedMessage message, long offsetTime) {
+        List<Object> arguments = message.getArguments();
+        if (arguments.isEmpty()) {
+            this.sentMessageCount++;
+            return true;
+        }
+        MessageKey key = MessageKey.of(message);
+        SentValue previous = this.lastValues.get(key);
+        if (previous == null) {
+            this.lastValues.put(key, new SentValue(arguments, offsetTime));
+        } else if (!arguments.equals(previous.arguments)) {
+            // Arguments of the same key could have different types, which equals also catches
+            previous.arguments = arguments;
+            previous.sentTime = offsetTime;
+        } else if (offsetTime - previous.sentTime >= this.keyframeIntervalNanos) {
+            previous.sentTime = offsetTime;
+            this.keyframeCount++;
+        } else {
+            this.suppressedMessageCount++;
+            return false;
+        }
+        this.sentMessageCount++;
+        return true;
+    }
+
+    /**
+     * @return number of messages let through
+     */
+    public long getSentMessageCount() {
+        return this.sentMessageCount;
+    }
+
+    /**
+     * @return number of messages dropped because they were unchanged
+     */
+    public long getSuppressedMessageCount() {
+        return this.suppressedMessageCount;
+    }
+
+    /**
+     * @return number of packets dropped because none of their messages changed
+     */
+    public long getDroppedPacketCount() {
+        return this.droppedPacketCount;
+    }
+
+    /**
+     * @return number of unchanged messages let through because their key hadn't been sent for the keyframe interval
+     */
+    public long getKeyframeCount() {
+        return this.keyframeCount;
+    }
+
+    private static class SentValue {
+        List<Object> arguments;
+        long sentTime;
+
+        SentValue(List<Object> arguments, long sentTime) {
+            this.arguments = arguments;
+            this.sentTime = sentTime;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.BufferBytesReceiver;
+import com.illposed.osc.OSCSerializeException;
+import com.illposed.osc.OSCSerializer;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Timeline of packets that have each been serialized to OSC bytes once, up front, so that playing them back, however
+ * many times they loop, only needs a DatagramChannel send of bytes that already exist.
+ * <p>
+ * The bytes of every packet are stored back to back in one shared direct ByteBuffer, so the recorded packets
+ * themselves don't need to be kept around once encoded. A packet is only encoded more than once when some playback
+ * targets have a filter that removes some of its messages, every target that receives the whole packet is sent the
+ * same bytes.
+ * <p>
+ * Float arguments whose value has to be calculated when sent, such as VMC timing, can be patched into the encoded bytes
+ * in place just before sending, see {@link #patchFloatArgument(String, DoubleSupplier)}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+class EncodedPacketTimeline implements PlaybackTimeline {
+    // Largest possible UDP payload
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int INITIAL_ENCODED_CAPACITY = 1 << 20;
+
+    private final long[] offsetTimes;
+    private final PlaybackTargetGroup[] groups;
+    // Start and end of the bytes to send to each group for each packet, at [packetIndex * groups.length + groupIndex],
+    // groups that receive the same bytes share the same range, an empty range means there's nothing to send
+    private final int[] starts;
+    private final int[] ends;
+    private final ByteBuffer data;
+    // Reused for every send so that sending doesn't allocate
+    private final ByteBuffer sendView;
+    private final DatagramChannel channel;
+    private int index = -1;
+
+    // Start of each packet's patch positions in patchPositions, with an extra element at the end, null when not patching
+    private int[] patchStarts = null;
+    // Absolute positions in the data buffer of floats to overwrite when sent
+    private int[] patchPositions = null;
+    private DoubleSupplier patchValue = null;
+
+    /**
+     * Encode packets for playback.
+     *
+     * @param sortedPackets packets to encode, already in offset time order
+     * @param targets       targets to send to
+     */
+    EncodedPacketTimeline(RecordedPacket<?, ?>[] sortedPackets, List<PlaybackTarget> targets) throws IOException {
+        int packetCount = sortedPackets.length;
+        this.groups = PlaybackTargetGroup.group(targets);
+        int groupCount = this.groups.length;
+        this.offsetTimes = new long[packetCount];
+        this.starts = new int[packetCount * groupCount];
+        this.ends = new int[packetCount * groupCount];
+
+        ByteBuffer scratch = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        OSCSerializer serializer = new OSCSerializerAndParserBuilder().buildSerializer(new BufferBytesReceiver(scratch));
+        // Grown as needed, positions in the data buffer are ints so the total is limited to Integer.MAX_VALUE bytes
+        ByteBuffer encoded = ByteBuffer.allocateDirect(INITIAL_ENCODED_CAPACITY);
+        for (int i = 0; i < packetCount; i++) {
+            RecordedPacket<?, ?> recordedPacket = sortedPackets[i];
+            this.offsetTimes[i] = recordedPacket.getOffsetTime();
+            int unfilteredStart = -1;
+            int unfilteredEnd = -1;
+            for (int g = 0; g < groupCount; g++) {
+                int rangeIndex = i * groupCount + g;
+                RecordedPacket<?, ?> filtered = this.groups[g].filter(recordedPacket);
+                if (filtered == null) {
+                    // Empty range, nothing to send to this group
+                    continue;
+                }
+                if (filtered == recordedPacket && unfilteredStart != -1) {
+                    this.starts[rangeIndex] = unfilteredStart;
+                    this.ends[rangeIndex] = unfilteredEnd;
+                    continue;
+                }
+                encode(filtered, serializer, scratch);
+                encoded = ensureRemaining(encoded, scratch.remaining());
+                int start = encoded.position();
+                encoded.put(scratch);
+                this.starts[rangeIndex] = start;
+                this.ends[rangeIndex] = encoded.position();
+                if (filtered == recordedPacket) {
+                    unfilteredStart = start;
+                    unfilteredEnd = encoded.position();
+                }
+            }
+        }
+
+        encoded.flip();
+        // Copied into a buffer of the exact size so that the unused capacity isn't kept for as long as playback runs
+        this.data = ByteBuffer.allocateDirect(encoded.limit());
+        this.data.put(encoded);
+        this.data.clear();
+        this.sendView = this.data.duplicate();
+
+        this.channel = DatagramChannel.open();
+    }
+
+    /**
+     * Serialize a packet into the scratch buffer, leaving it flipped, ready to be read from.
+     */
+    private static void encode(RecordedPacket<?, ?> recordedPacket, OSCSerializer serializer, ByteBuffer scratch) throws IOException {
+        scratch.clear();
+        try {
+            serializer.write(recordedPacket.toOscPacket());
+        } catch (OSCSerializeException e) {
+            throw new IOException("Failed to serialize " + recordedPacket, e);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Packet is too large to send in a single datagram " + recordedPacket, e);
+        }
+        scratch.flip();
+    }
+
+    /**
+     * @return the buffer, or a larger copy of it if it has fewer than the required number of bytes remaining
+     * @throws IOException if the buffer would have to be larger than Integer.MAX_VALUE bytes
+     */
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        long minCapacity = (long) buffer.position() + required;
+        if (minCapacity > Integer.MAX_VALUE) {
+            throw new IOException("Recording is too large to pre-encode, more than " + Integer.MAX_VALUE
+                    + " bytes of OSC packets, play it without -e/--preEncode instead");
+        }
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(minCapacity, 2L * buffer.capacity()));
+        ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * @return total size in bytes of all the encoded packets
+     */
+    int getEncodedSize() {
+        return this.data.capacity();
+    }
+
+    /**
+     * Overwrite the first argument of every message with the given address, in every packet, with a value calculated
+     * just before the packet containing it is sent. Only messages where the first argument is a float are patched.
+     *
+     * @param address       address of the messages to patch
+     * @param valueSupplier supplier of the value to write, called at most once per packet sent
+     * @return number of messages that will be patched
+     */
+    int patchFloatArgument(String address, DoubleSupplier valueSupplier) {
+        int packetCount = this.offsetTimes.length;
+        int[] patchStarts = new int[packetCount + 1];
+        int groupCount = this.groups.length;
+        FloatArgumentFinder finder = new FloatArgumentFinder(address.getBytes(StandardCharsets.US_ASCII), packetCount);
+        for (int i = 0; i < packetCount; i++) {
+            patchStarts[i] = finder.count;
+            int firstRange = i * groupCount;
+            for (int r = firstRange; r < firstRange + groupCount; r++) {
+                if (this.starts[r] != this.ends[r] && !isSharedRange(firstRange, r)) {
+                    OscBytes.forEachMessage(this.data, this.starts[r], this.ends[r], finder);
+                }
+            }
+        }
+        patchStarts[packetCount] = finder.count;
+
+        this.patchStarts = patchStarts;
+        this.patchPositions = Arrays.copyOf(finder.floatPositions, finder.count);
+        this.patchValue = valueSupplier;
+        return finder.count;
+    }
+
+    /**
+     * @return true if a range before rangeIndex, starting from firstRange, has the same bytes as rangeIndex
+     */
+    private boolean isSharedRange(int firstRange, int rangeIndex) {
+        for (int r = firstRange; r < rangeIndex; r++) {
+            if (this.starts[r] == this.starts[rangeIndex] && this.ends[r] == this.ends[rangeIndex]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean next() {
+        if (this.index + 1 < this.offsetTimes.length) {
+            this.index++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long getOffsetTime() {
+        return this.offsetTimes[this.index];
+    }
+
+    @Override
+    public void send() throws IOException {
+        int[] patchStarts = this.patchStarts;
+        if (patchStarts != null) {
+            int patchStart = patchStarts[this.index];
+            int patchEnd = patchStarts[this.index + 1];
+            if (patchStart != patchEnd) {
+                float value = (float) this.patchValue.getAsDouble();
+                for (int i = patchStart; i < patchEnd; i++) {
+                    // Absolute put, the send view shares the same content so sees the new value
+                    this.data.putFloat(this.patchPositions[i], value);
+                }
+            }
+        }
+        ByteBuffer view = this.sendView;
+        PlaybackTargetGroup[] groups = this.groups;
+        int firstRange = this.index * groups.length;
+        for (int g = 0; g < groups.length; g++) {
+            int start = this.starts[firstRange + g];
+            int end = this.ends[firstRange + g];
+            if (start == end) {
+                continue;
+            }
+            // Limit must be set first since the position can't be beyond the current limit
+            view.limit(end);
+            view.position(start);
+            groups[g].send(this.channel, view);
+        }
+    }
+
+    @Override
+    public void rewind() {
+        this.index = -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Finds the positions of the first argument of messages with a specific address where that argument is a float.
+     */
+    private static class FloatArgumentFinder implements OscBytes.MessageVisitor {
+        private final byte[] address;
+        private int[] floatPositions;
+        private int count = 0;
+
+        FloatArgumentFinder(byte[] address, int initialCapacity) {
+            this.address = address;
+            this.floatPositions = new int[Math.max(initialCapacity, 1)];
+        }
+
+        @Override
+        public void visitMessage(ByteBuffer buffer, int messageStart, int messageEnd) {
+            if (!OscBytes.addressEquals(buffer, messageStart, messageEnd, this.address)) {
+                return;
+            }
+            int typeTagsStart = OscBytes.typeTagsStart(buffer, messageStart, messageEnd);
+            if (typeTagsStart + 1 >= messageEnd || buffer.get(typeTagsStart) != ',' || buffer.get(typeTagsStart + 1) != 'f') {
+                return;
+            }
+            int floatPosition = OscBytes.argumentsStart(buffer, messageStart, messageEnd);
+            if (floatPosition + Float.BYTES > messageEnd) {
+                return;
+            }
+            if (this.count == this.floatPositions.length) {
+                this.floatPositions = Arrays.copyOf(this.floatPositions, this.count * 2);
+            }
+            this.floatPositions[this.count++] = floatPosition;
+        }
+    }
+}
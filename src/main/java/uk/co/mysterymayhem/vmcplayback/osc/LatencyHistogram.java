@@ -0,0 +1,142 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, for percentiles of timings that are recorded far too often to keep every
+ * value.
+ * <p>
+ * Like an HdrHistogram, values are counted in buckets whose width grows with the value, each power of two is split
+ * into {@value #SUB_BUCKET_COUNT} equal buckets, so every value is known to within about 3% no matter how large. Values
+ * below {@value #SUB_BUCKET_COUNT} nanoseconds are counted exactly and values above about 18 minutes are counted as 18
+ * minutes.
+ * <p>
+ * Recording is lock-free and doesn't allocate, so it's safe to do on a playback or receiving thread. Percentiles are
+ * read from a {@link Snapshot}, which can be taken from any thread at any time. Subtracting an earlier snapshot from a
+ * later one gives the values recorded in between.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values from 2^40 nanoseconds, about 18 minutes, upwards go in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * @param nanos duration to count, negative durations are counted as zero
+     */
+    public void record(long nanos) {
+        this.counts.incrementAndGet(bucketIndex(nanos));
+    }
+
+    /**
+     * @return the counts recorded so far, more may be being recorded while the snapshot is taken, so the snapshot may
+     * include some but not all of them
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.counts.get(i);
+        }
+        return new Snapshot(counts);
+    }
+
+    private static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        if (nanos > MAX_VALUE) {
+            nanos = MAX_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return the greatest value counted in the bucket
+     */
+    private static long bucketHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Counts of a histogram at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long totalCount = 0;
+            for (long count : counts) {
+                totalCount += count;
+            }
+            this.totalCount = totalCount;
+        }
+
+        /**
+         * @param earlier snapshot of the same histogram taken before this one
+         * @return the counts recorded between the two snapshots
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = this.counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(counts);
+        }
+
+        /**
+         * @return number of values counted
+         */
+        public long getCount() {
+            return this.totalCount;
+        }
+
+        /**
+         * @param percentile percentile from 0 to 100, e.g. 99.9
+         * @return the value in nanoseconds that the percentile of values are less than or equal to, to within the
+         * precision of the histogram, or 0 if nothing has been counted
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (this.totalCount == 0) {
+                return 0;
+            }
+            // The rank of the value, starting from 1
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.totalCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return bucketHighestValue(i);
+                }
+            }
+            return bucketHighestValue(BUCKET_COUNT - 1);
+        }
+
+        /**
+         * @return the greatest value counted in nanoseconds, to within the precision of the histogram, or 0 if nothing
+         * has been counted
+         */
+        public long getMax() {
+            for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+                if (this.counts[i] != 0) {
+                    return bucketHighestValue(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
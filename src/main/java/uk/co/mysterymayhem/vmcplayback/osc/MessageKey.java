@@ -0,0 +1,61 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies what a message is the value of, its address and, if it has one, its first string argument, e.g. the bone
+ * name of a VMC bone message or the blendshape name of a VMC blendshape message. Messages with the same key replace
+ * each other's value.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class MessageKey {
+    private final String address;
+    private final String name;
+
+    private MessageKey(String address, String name) {
+        this.address = address;
+        this.name = name;
+    }
+
+    public static MessageKey of(RecordedMessage message) {
+        List<Object> arguments = message.getArguments();
+        Object first = arguments.isEmpty() ? null : arguments.get(0);
+        return new MessageKey(message.getAddress(), first instanceof String ? (String) first : null);
+    }
+
+    public String getAddress() {
+        return this.address;
+    }
+
+    /**
+     * @return the first argument of the message if it's a string, otherwise null
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageKey)) {
+            return false;
+        }
+        MessageKey key = (MessageKey) o;
+        // Usually interned, so usually the same instance
+        return this.address.equals(key.address) && Objects.equals(this.name, key.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.address.hashCode() + Objects.hashCode(this.name);
+    }
+
+    @Override
+    public String toString() {
+        return this.name == null ? this.address : this.address + ' ' + this.name;
+    }
+}
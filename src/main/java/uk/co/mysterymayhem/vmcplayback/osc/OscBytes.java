@@ -0,0 +1,230 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Utilities for working with serialized OSC packets directly, without parsing them into OSCPackets, and for working out
+ * the size of recorded packets once serialized.
+ * <p>
+ * All methods use absolute indexing, the position and limit of the buffers are not used or modified.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class OscBytes {
+
+    // javaosc encodes strings with the default charset unless a different one is configured, which this program never
+    // does
+    private static final Charset OSC_CHARSET = Charset.defaultCharset();
+    private static final byte[] BUNDLE_HEADER = "#bundle\0".getBytes(StandardCharsets.US_ASCII);
+    // "#bundle\0" and the 8 byte time tag
+    private static final int BUNDLE_ELEMENTS_OFFSET = 16;
+
+    private OscBytes() {
+    }
+
+    /**
+     * @return the length of the packet data encoded as OSC
+     */
+    public static int encodedLength(RecordedPacketData<?> packetData) {
+        if (packetData instanceof RecordedMessage) {
+            return ((RecordedMessage) packetData).getEncodedLength();
+        }
+        int length = BUNDLE_ELEMENTS_OFFSET;
+        for (RecordedPacketData<?> element : ((RecordedBundle) packetData).getRecordedPacketData()) {
+            // Each element is preceded by its size
+            length += 4 + encodedLength(element);
+        }
+        return length;
+    }
+
+    /**
+     * @return the length of the message encoded as OSC
+     */
+    public static int encodedLength(RecordedMessage message) {
+        CharSequence types = message.getArgumentTypes();
+        // Address and type tags are both null terminated and padded to a multiple of 4, the type tags start with ','
+        int length = stringLength(message.getAddress()) + padded(types.length() + 2);
+        // Type tags and arguments are walked separately, the elements of an array argument are tagged between '[' and
+        // ']', which have no argument of their own
+        ArrayDeque<Iterator<?>> enclosingArrays = new ArrayDeque<>();
+        Iterator<?> arguments = message.getArguments().iterator();
+        for (int i = 0; i < types.length(); i++) {
+            char type = types.charAt(i);
+            if (type == ']') {
+                if (!enclosingArrays.isEmpty()) {
+                    arguments = enclosingArrays.pop();
+                }
+                continue;
+            }
+            // Arguments are only missing if the message is malformed, count them as empty
+            Object argument = arguments.hasNext() ? arguments.next() : null;
+            switch (type) {
+                case '[':
+                    enclosingArrays.push(arguments);
+                    arguments = argument instanceof List ? ((List<?>) argument).iterator() : Collections.emptyIterator();
+                    break;
+                case 'i':
+                case 'f':
+                case 'c':
+                case 'r':
+                case 'm':
+                    length += 4;
+                    break;
+                case 'h':
+                case 'd':
+                case 't':
+                    length += 8;
+                    break;
+                case 's':
+                case 'S':
+                    length += argument == null ? 4 : stringLength(argument.toString());
+                    break;
+                case 'b':
+                    int blobLength = 0;
+                    if (argument instanceof byte[]) {
+                        blobLength = ((byte[]) argument).length;
+                    } else if (argument instanceof ByteBuffer) {
+                        blobLength = ((ByteBuffer) argument).remaining();
+                    }
+                    length += 4 + padded(blobLength);
+                    break;
+                default:
+                    // T, F, N and I have no argument bytes
+                    break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the length of a null terminated and padded OSC string, encoded with the same charset as javaosc's default
+     * serializer
+     */
+    private static int stringLength(String string) {
+        int byteLength = string.length();
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                // Only non-ASCII strings need encoding to find their length, the default charset is a superset of ASCII
+                byteLength = string.getBytes(OSC_CHARSET).length;
+                break;
+            }
+        }
+        return padded(byteLength + 1);
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+
+    /**
+     * Visitor for the messages of a serialized OSC packet.
+     */
+    public interface MessageVisitor {
+        /**
+         * @param buffer       buffer containing the message
+         * @param messageStart index of the start of the message's address
+         * @param messageEnd   index of the end of the message (exclusive)
+         */
+        void visitMessage(ByteBuffer buffer, int messageStart, int messageEnd);
+    }
+
+    /**
+     * Visit every message in a serialized OSC packet, recursing into bundles.
+     *
+     * @param buffer  buffer containing the packet
+     * @param start   index of the start of the packet
+     * @param end     index of the end of the packet (exclusive)
+     * @param visitor visitor to call for each message
+     * @throws IllegalArgumentException if the packet is malformed
+     */
+    public static void forEachMessage(ByteBuffer buffer, int start, int end, MessageVisitor visitor) {
+        if (isBundle(buffer, start, end)) {
+            int elementPosition = start + BUNDLE_ELEMENTS_OFFSET;
+            while (elementPosition < end) {
+                int elementSize = buffer.getInt(elementPosition);
+                int elementStart = elementPosition + 4;
+                int elementEnd = elementStart + elementSize;
+                if (elementSize < 0 || elementEnd > end) {
+                    throw new IllegalArgumentException("Bundle element extends past the end of the bundle");
+                }
+                forEachMessage(buffer, elementStart, elementEnd, visitor);
+                elementPosition = elementEnd;
+            }
+        } else {
+            visitor.visitMessage(buffer, start, end);
+        }
+    }
+
+    public static boolean isBundle(ByteBuffer buffer, int start, int end) {
+        if (end - start < BUNDLE_ELEMENTS_OFFSET) {
+            return false;
+        }
+        for (int i = 0; i < BUNDLE_HEADER.length; i++) {
+            if (buffer.get(start + i) != BUNDLE_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the index after a null terminated and 4 byte padded OSC string.
+     *
+     * @param buffer buffer containing the string
+     * @param start  index of the start of the string
+     * @param end    index that the string must end before
+     * @return index of the first byte after the string's padding
+     * @throws IllegalArgumentException if the string isn't terminated before the end
+     */
+    public static int skipString(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == 0) {
+                // Length including the null terminator, rounded up to a multiple of 4
+                return start + ((i - start + 1 + 3) & ~3);
+            }
+        }
+        throw new IllegalArgumentException("OSC string is not terminated");
+    }
+
+    /**
+     * Check if the address of a serialized message equals the given address.
+     *
+     * @param buffer       buffer containing the message
+     * @param messageStart index of the start of the message
+     * @param messageEnd   index of the end of the message (exclusive)
+     * @param address      ASCII bytes of the address to compare against, without a null terminator
+     * @return true if the message's address is the same as the given address
+     */
+    public static boolean addressEquals(ByteBuffer buffer, int messageStart, int messageEnd, byte[] address) {
+        int length = address.length;
+        if (messageEnd - messageStart <= length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(messageStart + i) != address[i]) {
+                return false;
+            }
+        }
+        return buffer.get(messageStart + length) == 0;
+    }
+
+    /**
+     * Get the index of the start of the type tags of a serialized message, this is the index of the ','.
+     */
+    public static int typeTagsStart(ByteBuffer buffer, int messageStart, int messageEnd) {
+        return skipString(buffer, messageStart, messageEnd);
+    }
+
+    /**
+     * Get the index of the start of the arguments of a serialized message.
+     */
+    public static int argumentsStart(ByteBuffer buffer, int messageStart, int messageEnd) {
+        return skipString(buffer, typeTagsStart(buffer, messageStart, messageEnd), messageEnd);
+    }
+}
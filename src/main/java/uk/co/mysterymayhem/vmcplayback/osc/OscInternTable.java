@@ -0,0 +1,102 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of the OSC addresses and string arguments seen so far, each given a small integer id in the order first seen.
+ * <p>
+ * Every {@link RecordedMessage} interns its address and short string arguments through the {@link #shared()} table, so
+ * a recording holds one String instance per distinct address or bone/blendshape name, rather than one per message.
+ * Interned strings can also be compared by id or by reference instead of with {@link String#equals(Object)}, which is
+ * what the VMC filters and the recording writer do.
+ * <p>
+ * Strings longer than {@link #MAX_STRING_LENGTH} and new strings once the table has {@link #MAX_SIZE} entries are not
+ * interned, so arbitrary string arguments can't grow the table without limit.
+ * <p>
+ * Lookups are thread safe and lock free, adding a new string locks.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class OscInternTable {
+    public static final int MAX_SIZE = 1 << 16;
+    public static final int MAX_STRING_LENGTH = 128;
+    public static final int NO_ID = -1;
+
+    private static final OscInternTable SHARED = new OscInternTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Each string is stored here before its id is published in ids, so any id that can be looked up has its string set
+    private volatile String[] strings = new String[64];
+    private int size = 0;
+
+    public static OscInternTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the id of a string, adding it to the table if it isn't in it yet.
+     *
+     * @param string string to get the id of
+     * @return the string's id, or NO_ID if it's too long or is new and the table is full
+     */
+    public int getOrAdd(String string) {
+        Integer id = this.ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        if (string.length() > MAX_STRING_LENGTH) {
+            return NO_ID;
+        }
+        return this.add(string);
+    }
+
+    /**
+     * @return the id of a string, or NO_ID if it isn't in the table
+     */
+    public int getId(String string) {
+        Integer id = this.ids.get(string);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * @return the interned instance of the string with the given id
+     */
+    public String getString(int id) {
+        return this.strings[id];
+    }
+
+    /**
+     * Get the interned instance of a string, adding it to the table if it isn't in it yet.
+     *
+     * @return the interned instance, or the string itself if it can't be interned
+     */
+    public String intern(String string) {
+        int id = this.getOrAdd(string);
+        return id == NO_ID ? string : this.strings[id];
+    }
+
+    public int size() {
+        return this.ids.size();
+    }
+
+    private synchronized int add(String string) {
+        Integer existing = this.ids.get(string);
+        if (existing != null) {
+            return existing;
+        }
+        int id = this.size;
+        if (id >= MAX_SIZE) {
+            return NO_ID;
+        }
+        String[] strings = this.strings;
+        if (id >= strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        strings[id] = string;
+        this.strings = strings;
+        this.size = id + 1;
+        this.ids.put(string, id);
+        return id;
+    }
+}
@@ -1,24 +1,34 @@
 package uk.co.mysterymayhem.vmcplayback.osc;
 
-import com.illposed.osc.transport.udp.OSCPortOut;
-
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
 
 /**
- * Plays back recorded OSC packets, sending them as new messages to a specified host and port.
+ * Plays back recorded OSC packets, sending them as new messages to one or more playback targets, see
+ * {@link PlaybackTarget}.
+ * <p>
+ * All packets are played back by a single thread that walks through the packets in offset time order, see
+ * {@link PlaybackThread}.
+ * <p>
+ * When pre-encoding, every packet is serialized to OSC bytes once when the player is created, instead of being
+ * serialized again every time it's sent, see {@link EncodedPacketTimeline}.
  * <p>
  * Created by Mysteryem on 31/07/2021.
  */
 public class OscPlayer {
-    protected final OSCPortOut oscPortOut;
-    private final List<RecordedPacket<?, ?>> recordedPackets;
-    private final long repeatPeriod;
-    private final Timer timer;
+    private final PlaybackTimeline timeline;
+    private final List<PlaybackTarget> targets;
+    private final long repeatPeriodNanos;
     private final boolean hasMessages;
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    private PlaybackThread playbackThread;
 
     private boolean started = false;
     private boolean stopped = false;
@@ -39,56 +49,200 @@ public class OscPlayer {
         this(socketAddress, recordedPackets, -1, true);
     }
 
+    /**
+     * @param socketAddress   address to send to
+     * @param recordedPackets packets to play back
+     * @param preEncode       true to serialize every packet to OSC bytes up front instead of every time it's sent
+     */
+    public OscPlayer(SocketAddress socketAddress, List<RecordedPacket<?, ?>> recordedPackets, boolean preEncode) throws IOException {
+        this(Collections.singletonList(new PlaybackTarget(socketAddress)), recordedPackets, preEncode);
+    }
+
+    /**
+     * @param targets         targets to send to, each packet is encoded once and sent to all of them
+     * @param recordedPackets packets to play back
+     * @param preEncode       true to serialize every packet to OSC bytes up front instead of every time it's sent
+     */
+    public OscPlayer(List<PlaybackTarget> targets, List<RecordedPacket<?, ?>> recordedPackets, boolean preEncode) throws IOException {
+        this(targets, recordedPackets, -1, true, preEncode);
+    }
+
+    /**
+     * @param targets           targets to send to, each packet is encoded once and sent to all of them
+     * @param recordedPackets   packets to play back
+     * @param repeatPeriodNanos period in nanoseconds between the starts of each loop, must not be less than the greatest
+     *                          offset time
+     * @param preEncode         true to serialize every packet to OSC bytes up front instead of every time it's sent
+     */
+    public OscPlayer(List<PlaybackTarget> targets, List<RecordedPacket<?, ?>> recordedPackets, long repeatPeriodNanos, boolean preEncode) throws IOException {
+        this(createTimeline(targets, sortPackets(recordedPackets), preEncode), targets, getRepeatPeriod(recordedPackets, repeatPeriodNanos, false));
+    }
+
     private OscPlayer(SocketAddress socketAddress, List<RecordedPacket<?, ?>> recordedPackets, long repeatPeriodMillis, boolean autoDuration) throws IOException {
+        this(Collections.singletonList(new PlaybackTarget(socketAddress)), recordedPackets, repeatPeriodMillis, autoDuration, false);
+    }
+
+    private OscPlayer(List<PlaybackTarget> targets, List<RecordedPacket<?, ?>> recordedPackets, long repeatPeriodMillis, boolean autoDuration, boolean preEncode) throws IOException {
+        this(createTimeline(targets, sortPackets(recordedPackets), preEncode), targets,
+                getRepeatPeriod(recordedPackets, TimeUnit.MILLISECONDS.toNanos(repeatPeriodMillis), autoDuration));
+    }
+
+    /**
+     * Create a player that plays back packets from a cursor as they're needed instead of from a list that has all been
+     * loaded into memory. The cursor must return its packets in offset time order.
+     *
+     * @param socketAddress      address to send to
+     * @param packetCursor       packets to play back
+     * @param repeatPeriodNanos period in nanoseconds between the starts of each loop, must not be less than the greatest
+     *                          offset time
+     */
+    public OscPlayer(SocketAddress socketAddress, PacketCursor packetCursor, long repeatPeriodNanos) throws IOException {
+        this(Collections.singletonList(new PlaybackTarget(socketAddress)), packetCursor, repeatPeriodNanos);
+    }
+
+    /**
+     * Create a player that plays back packets from a cursor to multiple targets, see
+     * {@link #OscPlayer(SocketAddress, PacketCursor, long)}.
+     *
+     * @param targets           targets to send to, each packet is encoded once and sent to all of them
+     * @param packetCursor      packets to play back
+     * @param repeatPeriodNanos period in nanoseconds between the starts of each loop, must not be less than the greatest
+     *                          offset time
+     */
+    public OscPlayer(List<PlaybackTarget> targets, PacketCursor packetCursor, long repeatPeriodNanos) throws IOException {
+        this(createTimeline(targets, packetCursor), targets, repeatPeriodNanos);
+    }
+
+    /**
+     * Create a player that plays back packets from a cursor to multiple targets, looping at the offset time of the last
+     * packet, for cursors whose length isn't known until they've been read to the end, such as a
+     * {@link uk.co.mysterymayhem.vmcplayback.osc.io.StreamingRecordingReader}.
+     *
+     * @param targets      targets to send to, each packet is encoded once and sent to all of them
+     * @param packetCursor packets to play back
+     */
+    public OscPlayer(List<PlaybackTarget> targets, PacketCursor packetCursor) throws IOException {
+        this(createTimeline(targets, packetCursor), targets, PlaybackThread.REPEAT_AT_LAST_PACKET);
+    }
+
+    private OscPlayer(PlaybackTimeline timeline, List<PlaybackTarget> targets, long repeatPeriodNanos) throws IOException {
+        this.targets = Collections.unmodifiableList(targets);
+        this.hasMessages = timeline.next();
+        timeline.rewind();
+        if (this.hasMessages) {
+            if (repeatPeriodNanos < 1 && repeatPeriodNanos != PlaybackThread.REPEAT_AT_LAST_PACKET) {
+                throw new IllegalArgumentException("repeat duration must be positive");
+            }
+            this.timeline = timeline;
+            this.repeatPeriodNanos = repeatPeriodNanos;
+        } else {
+            System.out.println("Note, recorded packets is empty");
+            timeline.close();
+            this.timeline = null;
+            this.repeatPeriodNanos = -1;
+        }
+    }
+
+    private static PlaybackTimeline createTimeline(List<PlaybackTarget> targets, PacketCursor packetCursor) throws IOException {
+        if (packetCursor == null) {
+            throw new IllegalArgumentException("Packet cursor must not be null");
+        }
+        return new CursorPlaybackTimeline(packetCursor, targets);
+    }
+
+    private static PlaybackTimeline createTimeline(List<PlaybackTarget> targets, RecordedPacket<?, ?>[] sortedPackets, boolean preEncode) throws IOException {
+        if (preEncode) {
+            return new EncodedPacketTimeline(sortedPackets, targets);
+        } else {
+            return new CursorPlaybackTimeline(new ArrayPacketCursor(sortedPackets), targets);
+        }
+    }
+
+    private static RecordedPacket<?, ?>[] sortPackets(List<RecordedPacket<?, ?>> recordedPackets) {
         if (recordedPackets == null) {
             throw new IllegalArgumentException("Recorded packets must not be null");
         }
+        RecordedPacket<?, ?>[] packetArray = recordedPackets.toArray(new RecordedPacket<?, ?>[0]);
+        // Should be sorted already if come from a direct recording, but might not be if read from a file
+        if (!isSorted(packetArray)) {
+            // Stable, so packets with the same offset time stay in the order they were recorded in
+            Arrays.sort(packetArray, Comparator.comparingLong(RecordedPacket::getOffsetTime));
+        }
+        return packetArray;
+    }
 
-        if (!recordedPackets.isEmpty()) {
-
-            this.oscPortOut = new OSCPortOut(socketAddress);
-
-            // Should be sorted already if come from a direct recording, but might not be if read from a file
-            this.recordedPackets = recordedPackets.stream()
-                    .sorted(Comparator.comparingLong(RecordedPacket::getOffsetTime))
-                    .collect(Collectors.toList());
-            RecordedPacket<?, ?> lastRecordedPacket = this.recordedPackets.get(this.recordedPackets.size() - 1);
-            if (lastRecordedPacket != null) {
-                long greatestOffsetTime = lastRecordedPacket.getOffsetTime();
-                if (!autoDuration) {
-                    if (greatestOffsetTime > repeatPeriodMillis) {
-                        throw new IllegalArgumentException("Repeat duration cannot be less than the greatest offset time");
-                    }
-                } else {
-                    repeatPeriodMillis = greatestOffsetTime;
-                    if (repeatPeriodMillis < 1) {
-                        throw new IllegalArgumentException("repeat duration must be positive");
-                    }
-                }
-            } else {
-                // There's no last recorded message, so there's no messages at all
-                // Maybe print out something
+    private static boolean isSorted(RecordedPacket<?, ?>[] packetArray) {
+        for (int i = 1; i < packetArray.length; i++) {
+            if (packetArray[i - 1].getOffsetTime() > packetArray[i].getOffsetTime()) {
+                return false;
             }
-            this.repeatPeriod = repeatPeriodMillis;
-            this.timer = new Timer("OscOutTimer");
-            this.hasMessages = true;
+        }
+        return true;
+    }
 
+    /**
+     * @return the repeat period in nanoseconds
+     */
+    private static long getRepeatPeriod(List<RecordedPacket<?, ?>> recordedPackets, long repeatPeriodNanos, boolean autoDuration) {
+        if (recordedPackets == null || recordedPackets.isEmpty()) {
+            // There's no messages at all, the repeat period won't be used
+            return repeatPeriodNanos;
+        }
+        long greatestOffsetTime = recordedPackets.stream().mapToLong(RecordedPacket::getOffsetTime).max().getAsLong();
+        if (!autoDuration) {
+            if (greatestOffsetTime > repeatPeriodNanos) {
+                throw new IllegalArgumentException("Repeat duration cannot be less than the greatest offset time");
+            }
+            return repeatPeriodNanos;
         } else {
-            System.out.println("Note, recorded packets is empty");
-            this.recordedPackets = Collections.emptyList();
-            this.repeatPeriod = -1;
-            this.timer = null;
-            this.hasMessages = false;
-            this.oscPortOut = null;
+            if (greatestOffsetTime < 1) {
+                throw new IllegalArgumentException("repeat duration must be positive");
+            }
+            return greatestOffsetTime;
         }
     }
 
+    /**
+     * When pre-encoded, overwrite the first float argument of every message with the given address with a value
+     * calculated when it's sent, directly in the encoded bytes. Must be called before starting.
+     *
+     * @param address       address of the messages to patch
+     * @param valueSupplier supplier of the value to send
+     * @return false if playback isn't pre-encoded, in which case nothing will be patched
+     */
+    protected boolean patchFloatArgument(String address, DoubleSupplier valueSupplier) {
+        if (this.started) {
+            throw new IllegalStateException("Already started");
+        }
+        if (this.timeline instanceof EncodedPacketTimeline) {
+            ((EncodedPacketTimeline) this.timeline).patchFloatArgument(address, valueSupplier);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the targets being sent to, with their send statistics
+     */
+    public List<PlaybackTarget> getTargets() {
+        return this.targets;
+    }
+
+    /**
+     * @return timing of the packets sent so far, see {@link PlaybackMetrics}
+     */
+    public PlaybackMetrics getMetrics() {
+        return this.metrics;
+    }
+
     public void start() {
         if (this.started) {
             throw new IllegalStateException("Already started");
         }
         if (this.hasMessages) {
-            this.addRecordedMessages();
+            this.metrics.start();
+            this.playbackThread = new PlaybackThread(this.timeline, this.repeatPeriodNanos, this.metrics);
+            this.playbackThread.start();
         }
         this.started = true;
     }
@@ -101,19 +255,34 @@ public class OscPlayer {
             throw new IllegalStateException("Hasn't started yet");
         }
         if (this.hasMessages) {
-            this.timer.cancel();
+            this.playbackThread.shutdown();
+            this.metrics.stop();
         }
         this.stopped = true;
     }
 
-    protected void addRecordedMessages() {
-        // It might be better to map entirely first and then schedule the tasks
-        this.recordedPackets.stream()
-                .map(recordedPacket -> new RecordedPacketTimerTask(recordedPacket, this.oscPortOut))
-                .forEach(rmtt -> this.scheduleTask(rmtt, rmtt.getDelayMillis(), this.repeatPeriod));
-    }
+    /**
+     * Cursor over an array of packets that are already sorted by offset time.
+     */
+    private static class ArrayPacketCursor implements PacketCursor {
+        private final RecordedPacket<?, ?>[] packets;
+        private int index = 0;
+
+        ArrayPacketCursor(RecordedPacket<?, ?>[] packets) {
+            this.packets = packets;
+        }
 
-    protected void scheduleTask(TimerTask task, long delayMillis, long repeatPeriodMillis) {
-        this.timer.scheduleAtFixedRate(task, delayMillis, repeatPeriodMillis);
+        @Override
+        public RecordedPacket<?, ?> next() {
+            if (this.index < this.packets.length) {
+                return this.packets[this.index++];
+            }
+            return null;
+        }
+
+        @Override
+        public void rewind() {
+            this.index = 0;
+        }
     }
 }
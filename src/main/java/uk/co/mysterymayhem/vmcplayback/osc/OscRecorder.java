@@ -8,6 +8,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
@@ -18,19 +19,73 @@ import java.util.function.Predicate;
 public class OscRecorder {
 
     private final RecordingPacketListener recordingPacketListener;
+    // Null unless recording on a separate thread to receiving
+    private final DecoupledPacketListener decoupledPacketListener;
+    // Exactly one of these is used to receive packets
     private final OSCPortIn oscPortIn;
+    private final PrefilteringOscReceiver prefilteringReceiver;
+    private final RecorderMetrics metrics = new RecorderMetrics();
     private boolean started = false;
     private boolean ended = false;
     private long endTime = -1;
 
     public OscRecorder(Predicate<RecordedMessage> messageSelector, SocketAddress socketAddress) throws IOException {
-        RecordingPacketListener messageListener = new RecordingPacketListener(messageSelector);
+        this(new RecordingPacketListener(messageSelector), socketAddress);
+    }
+
+    /**
+     * Create a recorder that passes each recorded packet to the given sink instead of keeping them in memory, in which
+     * case stopRecording() will return an empty list.
+     */
+    public OscRecorder(Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink, SocketAddress socketAddress) throws IOException {
+        this(new RecordingPacketListener(messageSelector, packetSink), socketAddress);
+    }
+
+    public OscRecorder(Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink, int port) throws IOException {
+        this(messageSelector, packetSink, new InetSocketAddress("localhost", port));
+    }
+
+    /**
+     * Create a recorder that can optionally record packets on a separate worker thread to the thread receiving them,
+     * see {@link DecoupledPacketListener}.
+     * <p>
+     * If the messageSelector is an {@link AddressFilter}, messages it rejects by address are removed from received
+     * datagrams before they're parsed, see {@link PrefilteringOscReceiver}.
+     *
+     * @param messageSelector predicate to select which messages get recorded
+     * @param packetSink      consumer to pass recorded packets to, or null to keep them in memory
+     * @param port            localhost port to listen on
+     * @param decoupleReceive true to receive and record packets on separate threads
+     */
+    public OscRecorder(Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink, int port, boolean decoupleReceive) throws IOException {
+        this(packetSink == null ? new RecordingPacketListener(messageSelector) : new RecordingPacketListener(messageSelector, packetSink),
+                new InetSocketAddress("localhost", port), decoupleReceive,
+                messageSelector instanceof AddressFilter ? (AddressFilter) messageSelector : null);
+    }
 
+    private OscRecorder(RecordingPacketListener messageListener, SocketAddress socketAddress) throws IOException {
+        this(messageListener, socketAddress, false, null);
+    }
+
+    private OscRecorder(RecordingPacketListener messageListener, SocketAddress socketAddress, boolean decoupleReceive, AddressFilter prefilter) throws IOException {
         this.recordingPacketListener = messageListener;
-        this.oscPortIn = new OSCPortInBuilder()
-                .setSocketAddress(socketAddress)
-                .addPacketListener(messageListener)
-                .build();
+        this.recordingPacketListener.setMetrics(this.metrics);
+        this.decoupledPacketListener = decoupleReceive ? new DecoupledPacketListener(messageListener) : null;
+        if (this.decoupledPacketListener != null) {
+            this.metrics.setDecoupledPacketListener(this.decoupledPacketListener);
+        }
+        if (prefilter != null) {
+            this.oscPortIn = null;
+            this.prefilteringReceiver = new PrefilteringOscReceiver(socketAddress, prefilter,
+                    decoupleReceive ? this.decoupledPacketListener::offer : messageListener::recordPacket);
+            this.metrics.setReceiver(this.prefilteringReceiver);
+        } else {
+            this.oscPortIn = new OSCPortInBuilder()
+                    .setSocketAddress(socketAddress)
+                    .addPacketListener(decoupleReceive ? this.decoupledPacketListener : messageListener)
+                    .build();
+            this.prefilteringReceiver = null;
+        }
     }
 
     public OscRecorder(Predicate<RecordedMessage> messageSelector, String hostname, int port) throws IOException {
@@ -45,21 +100,60 @@ public class OscRecorder {
         this(messageSelector, "localhost", port);
     }
 
+    /**
+     * Drop messages that are unchanged since they were last recorded, see
+     * {@link RecordingPacketListener#setDeltaSuppressor(DeltaSuppressor)}. Must be set before recording starts.
+     */
+    public void setDeltaSuppressor(DeltaSuppressor deltaSuppressor) {
+        if (this.started) {
+            throw new IllegalStateException("Already started");
+        }
+        this.recordingPacketListener.setDeltaSuppressor(deltaSuppressor);
+    }
+
     public void init() {
-        this.oscPortIn.run();
+        if (this.oscPortIn != null) {
+            this.oscPortIn.run();
+        }
+    }
+
+    /**
+     * @return live counts and rates of what's being received and recorded, see {@link RecorderMetrics}
+     */
+    public RecorderMetrics getMetrics() {
+        return this.metrics;
     }
 
     public void startRecording() {
         this.recordingPacketListener.startRecording();
-        this.oscPortIn.startListening();
+        this.metrics.start();
+        if (this.decoupledPacketListener != null) {
+            this.decoupledPacketListener.start();
+        }
+        if (this.oscPortIn != null) {
+            this.oscPortIn.startListening();
+        } else {
+            this.prefilteringReceiver.startListening();
+        }
         this.started = true;
     }
 
     public List<RecordedPacket<?, ?>> stopRecording() throws IOException {
         if (this.started) {
-            this.oscPortIn.stopListening();
+            if (this.oscPortIn != null) {
+                this.oscPortIn.stopListening();
+            } else {
+                this.prefilteringReceiver.close();
+            }
             long endTimeMilli = System.currentTimeMillis();
-            this.oscPortIn.close();
+            if (this.decoupledPacketListener != null) {
+                // Finish recording everything that was received
+                this.decoupledPacketListener.stop();
+            }
+            if (this.oscPortIn != null) {
+                this.oscPortIn.close();
+            }
+            this.metrics.stop();
             this.endTime = endTimeMilli;
             this.ended = true;
             return recordingPacketListener.getRecordedPackets();
@@ -100,6 +194,22 @@ public class OscRecorder {
         return recordingPacketListener.getPacketCount();
     }
 
+    /**
+     * @return the number of received packets that were dropped because recording couldn't keep up, always 0 unless
+     * receiving and recording are decoupled
+     */
+    public long getOverflowCount() {
+        return this.decoupledPacketListener == null ? 0 : this.decoupledPacketListener.getOverflowCount();
+    }
+
+    /**
+     * @return the number of received messages that were removed before being parsed, always 0 unless the message
+     * selector is an {@link AddressFilter}
+     */
+    public long getPrefilteredMessageCount() {
+        return this.prefilteringReceiver == null ? 0 : this.prefilteringReceiver.getRejectedMessageCount();
+    }
+
     public int countMessages() {
         return recordingPacketListener.countMessages();
     }
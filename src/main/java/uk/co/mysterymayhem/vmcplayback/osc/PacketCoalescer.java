@@ -0,0 +1,222 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges packets that are due within the same tick into bundles, so that recordings of senders that send every message
+ * as its own datagram, which many VMC senders do, are played back with far fewer datagrams and send calls.
+ * <p>
+ * Bundles are filled with messages up to the maximum datagram size, typically the MTU minus the IP and UDP headers, and
+ * a new bundle is started at a message boundary whenever the next message doesn't fit, so recorded bundles that are too
+ * large are split too. Each bundle is due at the offset time of the first packet merged into it, so nothing is sent
+ * more than a tick early and messages are always sent in the same order.
+ * <p>
+ * Recorded bundles with the time tag "immediately", which is what VMC senders use, are unpacked into their messages.
+ * Bundles with any other time tag are kept whole, and anything that doesn't fit in a datagram on its own is sent as it
+ * is.
+ * <p>
+ * Not thread safe, packets must be passed in offset time order from a single thread. The counters can be read from any
+ * thread.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class PacketCoalescer {
+    // Ethernet MTU minus the IPv4 and UDP headers
+    public static final int DEFAULT_MAX_DATAGRAM_BYTES = 1472;
+    // Packets closer together than this are sent together, short enough to be hard to notice even at 120Hz
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // OSC time tag meaning "immediately"
+    private static final long IMMEDIATE_NTP_TIME = 1;
+    // "#bundle\0" and the 8 byte time tag
+    private static final int BUNDLE_HEADER_BYTES = 16;
+    // Largest UDP payload over IPv4
+    private static final int MAX_UDP_PAYLOAD_BYTES = 65507;
+
+    private final long tickNanos;
+    private final int maxDatagramBytes;
+    // Reused between groups
+    private final List<RecordedPacket<?, ?>> group = new ArrayList<>();
+    private final List<RecordedPacketData<?>> elements = new ArrayList<>();
+
+    private volatile long inputPacketCount = 0;
+    private volatile long outputPacketCount = 0;
+
+    /**
+     * Coalesce into datagrams of at most {@link #DEFAULT_MAX_DATAGRAM_BYTES}, with a tick of
+     * {@link #DEFAULT_TICK_NANOS}.
+     */
+    public PacketCoalescer() {
+        this(DEFAULT_TICK_NANOS, DEFAULT_MAX_DATAGRAM_BYTES);
+    }
+
+    /**
+     * @param tickNanos        packets due less than this many nanoseconds after the first packet of a group are merged
+     *                         into that group
+     * @param maxDatagramBytes largest bundle to create, in bytes of encoded OSC
+     */
+    public PacketCoalescer(long tickNanos, int maxDatagramBytes) {
+        if (tickNanos < 1) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        if (maxDatagramBytes <= BUNDLE_HEADER_BYTES || maxDatagramBytes > MAX_UDP_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Maximum datagram size must be between " + (BUNDLE_HEADER_BYTES + 1)
+                    + " and " + MAX_UDP_PAYLOAD_BYTES + " bytes");
+        }
+        this.tickNanos = tickNanos;
+        this.maxDatagramBytes = maxDatagramBytes;
+    }
+
+    /**
+     * Apply to every packet of a list.
+     *
+     * @param sortedPackets packets in offset time order
+     * @return the coalesced packets, in offset time order
+     */
+    public List<RecordedPacket<?, ?>> apply(List<RecordedPacket<?, ?>> sortedPackets) {
+        List<RecordedPacket<?, ?>> coalesced = new ArrayList<>();
+        List<RecordedPacket<?, ?>> group = this.group;
+        for (RecordedPacket<?, ?> recordedPacket : sortedPackets) {
+            if (!group.isEmpty() && recordedPacket.getOffsetTime() - group.get(0).getOffsetTime() >= this.tickNanos) {
+                this.coalesce(coalesced);
+            }
+            group.add(recordedPacket);
+        }
+        if (!group.isEmpty()) {
+            this.coalesce(coalesced);
+        }
+        return coalesced;
+    }
+
+    /**
+     * Create a cursor that applies this to the packets of another cursor, reading ahead of the source by up to one tick.
+     */
+    public PacketCursor wrap(PacketCursor source) {
+        PacketCoalescer coalescer = this;
+        return new PacketCursor() {
+            private final Queue<RecordedPacket<?, ?>> coalesced = new ArrayDeque<>();
+            // First packet of the next group, read while looking for the end of the previous group
+            private RecordedPacket<?, ?> pending = null;
+
+            @Override
+            public RecordedPacket<?, ?> next() {
+                if (this.coalesced.isEmpty()) {
+                    RecordedPacket<?, ?> first = this.pending != null ? this.pending : source.next();
+                    if (first == null) {
+                        return null;
+                    }
+                    List<RecordedPacket<?, ?>> group = coalescer.group;
+                    group.add(first);
+                    RecordedPacket<?, ?> next;
+                    while ((next = source.next()) != null && next.getOffsetTime() - first.getOffsetTime() < coalescer.tickNanos) {
+                        group.add(next);
+                    }
+                    this.pending = next;
+                    coalescer.coalesce(this.coalesced);
+                }
+                return this.coalesced.poll();
+            }
+
+            @Override
+            public void rewind() {
+                source.rewind();
+                this.coalesced.clear();
+                this.pending = null;
+            }
+        };
+    }
+
+    /**
+     * Pack the messages of the current group into as few packets as fit, then clear the group.
+     */
+    private void coalesce(Collection<RecordedPacket<?, ?>> output) {
+        List<RecordedPacket<?, ?>> group = this.group;
+        this.inputPacketCount += group.size();
+        RecordedPacket<?, ?> first = group.get(0);
+        if (group.size() == 1 && OscBytes.encodedLength(first.getPacketData()) <= this.maxDatagramBytes) {
+            // Nothing to merge or split
+            output.add(first);
+            this.outputPacketCount++;
+            group.clear();
+            return;
+        }
+        long offsetTime = first.getOffsetTime();
+        int bundleBytes = BUNDLE_HEADER_BYTES;
+        List<RecordedPacketData<?>> elements = this.elements;
+        for (RecordedPacket<?, ?> recordedPacket : group) {
+            for (RecordedPacketData<?> element : unpack(recordedPacket.getPacketData(), new ArrayList<>())) {
+                // Each element is preceded by its size
+                int elementBytes = 4 + OscBytes.encodedLength(element);
+                if (bundleBytes + elementBytes > this.maxDatagramBytes) {
+                    this.flush(offsetTime, output);
+                    bundleBytes = BUNDLE_HEADER_BYTES;
+                }
+                elements.add(element);
+                bundleBytes += elementBytes;
+            }
+        }
+        this.flush(offsetTime, output);
+        group.clear();
+    }
+
+    /**
+     * Output the elements collected so far as a single packet.
+     */
+    private void flush(long offsetTime, Collection<RecordedPacket<?, ?>> output) {
+        List<RecordedPacketData<?>> elements = this.elements;
+        if (elements.isEmpty()) {
+            return;
+        }
+        RecordedPacketData<?> onlyElement = elements.size() == 1 ? elements.get(0) : null;
+        if (onlyElement instanceof RecordedMessage) {
+            output.add(new RecordedMessagePacket(offsetTime, (RecordedMessage) onlyElement));
+        } else if (onlyElement != null) {
+            // A bundle that had to be kept whole
+            output.add(new RecordedBundlePacket(offsetTime, (RecordedBundle) onlyElement));
+        } else {
+            output.add(new RecordedBundlePacket(offsetTime, new RecordedBundle(IMMEDIATE_NTP_TIME, new ArrayList<>(elements))));
+        }
+        this.outputPacketCount++;
+        elements.clear();
+    }
+
+    /**
+     * @return the messages of the packet data, with the contents of bundles that are due immediately in place of the
+     * bundles themselves
+     */
+    private static List<RecordedPacketData<?>> unpack(RecordedPacketData<?> packetData, List<RecordedPacketData<?>> unpacked) {
+        if (packetData instanceof RecordedBundle && ((RecordedBundle) packetData).getNtpTime() == IMMEDIATE_NTP_TIME) {
+            for (RecordedPacketData<?> element : ((RecordedBundle) packetData).getRecordedPacketData()) {
+                unpack(element, unpacked);
+            }
+        } else {
+            unpacked.add(packetData);
+        }
+        return unpacked;
+    }
+
+    /**
+     * @return number of packets passed in
+     */
+    public long getInputPacketCount() {
+        return this.inputPacketCount;
+    }
+
+    /**
+     * @return number of packets, each sent as one datagram, passed out
+     */
+    public long getOutputPacketCount() {
+        return this.outputPacketCount;
+    }
+
+    /**
+     * @return the largest bundle that will be created, in bytes
+     */
+    public int getMaxDatagramBytes() {
+        return this.maxDatagramBytes;
+    }
+}
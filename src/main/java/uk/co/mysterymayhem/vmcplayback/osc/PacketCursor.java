@@ -0,0 +1,100 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sequential access to recorded packets, in offset time order, that can be rewound back to the start for looping.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public interface PacketCursor {
+    /**
+     * Get the next packet.
+     *
+     * @return the next packet, or null if the end has been reached
+     */
+    RecordedPacket<?, ?> next();
+
+    /**
+     * Go back to the start so that the next call to next() returns the first packet again.
+     */
+    void rewind();
+
+    /**
+     * Create a cursor over a list of packets that are already in offset time order.
+     *
+     * @param sortedPackets packets to return, the list must not be modified while the cursor is in use
+     * @return a cursor backed by the list
+     */
+    static PacketCursor of(List<RecordedPacket<?, ?>> sortedPackets) {
+        return new PacketCursor() {
+            private int index = 0;
+
+            @Override
+            public RecordedPacket<?, ?> next() {
+                if (this.index < sortedPackets.size()) {
+                    return sortedPackets.get(this.index++);
+                }
+                return null;
+            }
+
+            @Override
+            public void rewind() {
+                this.index = 0;
+            }
+        };
+    }
+
+    /**
+     * Create a cursor that filters the messages of each packet of this cursor, skipping packets that have no messages
+     * left after filtering.
+     *
+     * @param messagePredicate predicate to use when filtering, messages that fail will be discarded
+     * @return a filtering cursor backed by this cursor
+     */
+    default PacketCursor filter(Predicate<RecordedMessage> messagePredicate) {
+        PacketCursor source = this;
+        return new PacketCursor() {
+            @Override
+            public RecordedPacket<?, ?> next() {
+                RecordedPacket<?, ?> next;
+                while ((next = source.next()) != null) {
+                    RecordedPacket<?, ?> filtered = next.filter(messagePredicate);
+                    if (filtered != null) {
+                        return filtered;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void rewind() {
+                source.rewind();
+            }
+        };
+    }
+
+    /**
+     * Create a cursor that maps the messages of each packet of this cursor.
+     *
+     * @param mapper function to map each message
+     * @return a mapping cursor backed by this cursor
+     */
+    default PacketCursor mapMessages(Function<RecordedMessage, RecordedMessage> mapper) {
+        PacketCursor source = this;
+        return new PacketCursor() {
+            @Override
+            public RecordedPacket<?, ?> next() {
+                RecordedPacket<?, ?> next = source.next();
+                return next == null ? null : next.mapMessages(mapper);
+            }
+
+            @Override
+            public void rewind() {
+                source.rewind();
+            }
+        };
+    }
+}
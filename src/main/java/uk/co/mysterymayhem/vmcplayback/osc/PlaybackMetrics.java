@@ -0,0 +1,204 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timing of a {@link PlaybackThread}, how late each packet is sent compared to when it was due, and how long sending
+ * it takes.
+ * <p>
+ * Lateness that keeps growing means the scheduler is drifting, occasional large lateness or send durations usually
+ * mean GC or OS stalls.
+ * <p>
+ * While playing, the p50, p99, p99.9 and max of both are logged once every reporting interval and are available over
+ * JMX as {@code uk.co.mysterymayhem.vmcplayback:type=Playback,name=<n>}. The all-time values are logged when playback
+ * stops.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class PlaybackMetrics implements PlaybackMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlaybackMetrics.class);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private static final LatencyHistogram.Snapshot EMPTY = new LatencyHistogram().snapshot();
+
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final LatencyHistogram sendDuration = new LatencyHistogram();
+    private final int id = NEXT_ID.getAndIncrement();
+    private Thread reportThread;
+    private ObjectName objectName;
+    private volatile boolean stopped = false;
+
+    // Last completed reporting interval
+    private volatile LatencyHistogram.Snapshot latenessInterval = EMPTY;
+    private volatile LatencyHistogram.Snapshot sendDurationInterval = EMPTY;
+
+    /**
+     * Playback thread only.
+     *
+     * @param latenessNanos     time between when the packet was due and when sending it started
+     * @param sendDurationNanos time taken to send the packet to every target
+     */
+    void record(long latenessNanos, long sendDurationNanos) {
+        this.lateness.record(latenessNanos);
+        this.sendDuration.record(sendDurationNanos);
+    }
+
+    /**
+     * Register with JMX and start logging every reporting interval.
+     */
+    void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("uk.co.mysterymayhem.vmcplayback:type=Playback,name=" + this.id);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            LOG.warn("Failed to register playback metrics with JMX", e);
+        }
+        this.reportThread = new Thread(this::reportLoop, "OscPlaybackMetrics");
+        this.reportThread.setDaemon(true);
+        this.reportThread.start();
+    }
+
+    /**
+     * Stop logging, unregister from JMX and log the all-time values.
+     */
+    void stop() {
+        this.stopped = true;
+        if (this.reportThread != null) {
+            LockSupport.unpark(this.reportThread);
+            try {
+                this.reportThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister playback metrics from JMX", e);
+            }
+            this.objectName = null;
+        }
+        LatencyHistogram.Snapshot lateness = this.lateness.snapshot();
+        if (lateness.getCount() != 0) {
+            log("Played back " + lateness.getCount() + " packets in total", lateness, this.sendDuration.snapshot());
+        }
+    }
+
+    private void reportLoop() {
+        LatencyHistogram.Snapshot previousLateness = EMPTY;
+        LatencyHistogram.Snapshot previousSendDuration = EMPTY;
+        long nextReport = System.nanoTime() + REPORT_INTERVAL_NANOS;
+        while (!this.stopped) {
+            long remaining = nextReport - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            nextReport += REPORT_INTERVAL_NANOS;
+            LatencyHistogram.Snapshot lateness = this.lateness.snapshot();
+            LatencyHistogram.Snapshot sendDuration = this.sendDuration.snapshot();
+            this.latenessInterval = lateness.minus(previousLateness);
+            this.sendDurationInterval = sendDuration.minus(previousSendDuration);
+            previousLateness = lateness;
+            previousSendDuration = sendDuration;
+            log("Sent " + this.latenessInterval.getCount() + " packets in the last "
+                    + TimeUnit.NANOSECONDS.toSeconds(REPORT_INTERVAL_NANOS) + "s", this.latenessInterval, this.sendDurationInterval);
+        }
+    }
+
+    private static void log(String prefix, LatencyHistogram.Snapshot lateness, LatencyHistogram.Snapshot sendDuration) {
+        LOG.info("{}, lateness p50 {}us, p99 {}us, p99.9 {}us, max {}us, send duration p50 {}us, p99 {}us, p99.9 {}us, max {}us",
+                prefix,
+                toMicros(lateness.getValueAtPercentile(50)), toMicros(lateness.getValueAtPercentile(99)),
+                toMicros(lateness.getValueAtPercentile(99.9)), toMicros(lateness.getMax()),
+                toMicros(sendDuration.getValueAtPercentile(50)), toMicros(sendDuration.getValueAtPercentile(99)),
+                toMicros(sendDuration.getValueAtPercentile(99.9)), toMicros(sendDuration.getMax()));
+    }
+
+    private static double toMicros(long nanos) {
+        // One decimal place is more than the precision of the histogram for anything but the smallest values
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    /**
+     * @return lateness of every packet sent so far
+     */
+    public LatencyHistogram getLateness() {
+        return this.lateness;
+    }
+
+    /**
+     * @return send duration of every packet sent so far
+     */
+    public LatencyHistogram getSendDuration() {
+        return this.sendDuration;
+    }
+
+    @Override
+    public long getPacketCount() {
+        return this.lateness.snapshot().getCount();
+    }
+
+    @Override
+    public double getLatenessP50Micros() {
+        return toMicros(this.latenessInterval.getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getLatenessP99Micros() {
+        return toMicros(this.latenessInterval.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getLatenessP999Micros() {
+        return toMicros(this.latenessInterval.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public double getLatenessMaxMicros() {
+        return toMicros(this.latenessInterval.getMax());
+    }
+
+    @Override
+    public double getSendDurationP50Micros() {
+        return toMicros(this.sendDurationInterval.getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getSendDurationP99Micros() {
+        return toMicros(this.sendDurationInterval.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getSendDurationP999Micros() {
+        return toMicros(this.sendDurationInterval.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public double getSendDurationMaxMicros() {
+        return toMicros(this.sendDurationInterval.getMax());
+    }
+
+    @Override
+    public double getLatenessAllTimeMaxMicros() {
+        return toMicros(this.lateness.snapshot().getMax());
+    }
+
+    @Override
+    public double getSendDurationAllTimeMaxMicros() {
+        return toMicros(this.sendDuration.snapshot().getMax());
+    }
+}
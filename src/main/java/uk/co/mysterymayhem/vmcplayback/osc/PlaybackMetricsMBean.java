@@ -0,0 +1,39 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+/**
+ * Management interface of {@link PlaybackMetrics}, for viewing playback timing in JConsole, VisualVM and similar.
+ * <p>
+ * Percentiles are of the last completed reporting interval, so that they show what playback is doing now rather than
+ * being diluted by everything since it started.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public interface PlaybackMetricsMBean {
+    long getPacketCount();
+
+    double getLatenessP50Micros();
+
+    double getLatenessP99Micros();
+
+    double getLatenessP999Micros();
+
+    double getLatenessMaxMicros();
+
+    double getSendDurationP50Micros();
+
+    double getSendDurationP99Micros();
+
+    double getSendDurationP999Micros();
+
+    double getSendDurationMaxMicros();
+
+    /**
+     * @return the greatest lateness since playback started
+     */
+    double getLatenessAllTimeMaxMicros();
+
+    /**
+     * @return the greatest send duration since playback started
+     */
+    double getSendDurationAllTimeMaxMicros();
+}
@@ -0,0 +1,107 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.function.Predicate;
+
+/**
+ * A receiver that an {@link OscPlayer} sends to, along with which messages it should receive and statistics of what
+ * has been sent to it.
+ * <p>
+ * Targets with the same filter instance, or no filter, are sent the exact same bytes, each packet is only serialized
+ * once for all of them.
+ * <p>
+ * The statistics are only updated by the thread sending to the target, they can be read from any thread.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class PlaybackTarget {
+    private static final Logger LOG = LoggerFactory.getLogger(PlaybackTarget.class);
+
+    private final SocketAddress address;
+    private final Predicate<RecordedMessage> messageFilter;
+
+    private volatile long packetCount = 0;
+    private volatile long byteCount = 0;
+    private volatile long failedCount = 0;
+
+    public PlaybackTarget(SocketAddress address) {
+        this(address, null);
+    }
+
+    /**
+     * @param address       address to send to
+     * @param messageFilter predicate to select which messages get sent to this target, on top of any filtering of the
+     *                      whole playback, or null to send every message
+     */
+    public PlaybackTarget(SocketAddress address, Predicate<RecordedMessage> messageFilter) {
+        this.address = address;
+        this.messageFilter = messageFilter;
+    }
+
+    public SocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * @return predicate to select which messages get sent to this target, or null if every message is sent
+     */
+    public Predicate<RecordedMessage> getMessageFilter() {
+        return this.messageFilter;
+    }
+
+    /**
+     * @return the number of packets sent to this target
+     */
+    public long getPacketCount() {
+        return this.packetCount;
+    }
+
+    /**
+     * @return the number of bytes sent to this target
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+     * @return the number of packets that failed to send to this target
+     */
+    public long getFailedCount() {
+        return this.failedCount;
+    }
+
+    /**
+     * Send bytes to this target, counting them. A failure to send is counted and only logged the first time, so that one
+     * unreachable target doesn't stop the others being sent to. Must only be called from one thread.
+     *
+     * @param channel channel to send through
+     * @param bytes   bytes to send, between the position and limit, the position is left unchanged
+     */
+    public void send(DatagramChannel channel, ByteBuffer bytes) {
+        int position = bytes.position();
+        int length = bytes.remaining();
+        try {
+            channel.send(bytes, this.address);
+            // Single writer, so the non-atomic increments are fine
+            this.packetCount++;
+            this.byteCount += length;
+        } catch (IOException e) {
+            if (this.failedCount++ == 0) {
+                LOG.warn("Failed to send to {}, further failures will only be counted", this, e);
+            }
+        } finally {
+            bytes.position(position);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.address.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Playback targets that share the same message filter, and so are sent the same bytes.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+final class PlaybackTargetGroup {
+
+    private final Predicate<RecordedMessage> messageFilter;
+    private final PlaybackTarget[] targets;
+
+    private PlaybackTargetGroup(Predicate<RecordedMessage> messageFilter, List<PlaybackTarget> targets) {
+        this.messageFilter = messageFilter;
+        this.targets = targets.toArray(new PlaybackTarget[0]);
+    }
+
+    /**
+     * Group targets by their message filter instance, keeping the groups in the order their first target appears.
+     */
+    static PlaybackTargetGroup[] group(List<PlaybackTarget> targets) {
+        if (targets == null || targets.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one playback target");
+        }
+        // Keyed by identity, predicates don't generally implement equals
+        Map<Object, List<PlaybackTarget>> byFilter = new LinkedHashMap<>();
+        Object noFilter = new Object();
+        for (PlaybackTarget target : targets) {
+            Predicate<RecordedMessage> filter = target.getMessageFilter();
+            byFilter.computeIfAbsent(filter == null ? noFilter : new IdentityKey(filter), k -> new ArrayList<>()).add(target);
+        }
+        PlaybackTargetGroup[] groups = new PlaybackTargetGroup[byFilter.size()];
+        int i = 0;
+        for (List<PlaybackTarget> groupTargets : byFilter.values()) {
+            groups[i++] = new PlaybackTargetGroup(groupTargets.get(0).getMessageFilter(), groupTargets);
+        }
+        return groups;
+    }
+
+    /**
+     * @return the packet with the messages this group shouldn't receive removed, the same packet if there's nothing to
+     * remove, or null if there's nothing left to send
+     */
+    RecordedPacket<?, ?> filter(RecordedPacket<?, ?> recordedPacket) {
+        return this.messageFilter == null ? recordedPacket : recordedPacket.filter(this.messageFilter);
+    }
+
+    /**
+     * Send the same bytes to every target in the group. A target that fails to send doesn't stop the others from being
+     * sent to.
+     *
+     * @param channel channel to send through
+     * @param bytes   bytes to send, between the position and limit, the position and limit are left unchanged
+     */
+    void send(DatagramChannel channel, ByteBuffer bytes) {
+        for (PlaybackTarget target : this.targets) {
+            target.send(channel, bytes);
+        }
+    }
+
+    private static final class IdentityKey {
+        private final Object value;
+
+        IdentityKey(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).value == this.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.value);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread that plays back packets from a PlaybackTimeline, waiting until each packet is due before sending it and
+ * rewinding the timeline to loop once the end is reached.
+ * <p>
+ * Deadlines are calculated from the time playback started rather than from when the previous packet was sent, so like
+ * {@link java.util.Timer#scheduleAtFixedRate}, playback catches up if sending falls behind instead of drifting.
+ * <p>
+ * Parking can overshoot by anywhere from tens of microseconds to more than a millisecond depending on the OS, so the
+ * thread parks until shortly before each deadline and then spins for the remainder, giving sub-millisecond accuracy.
+ * <p>
+ * How late each packet is sent and how long sending takes are recorded in {@link PlaybackMetrics}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+class PlaybackThread extends Thread {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlaybackThread.class);
+    // How long before a deadline to stop parking and start spinning
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    // Loop at the offset time of the last packet, for timelines whose length isn't known until they've been played
+    static final long REPEAT_AT_LAST_PACKET = -1;
+
+    private final PlaybackTimeline timeline;
+    private final long repeatPeriodNanos;
+    private final PlaybackMetrics metrics;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param timeline          timeline to play back, must contain at least one packet
+     * @param repeatPeriodNanos period in nanoseconds between the starts of each loop, or {@link #REPEAT_AT_LAST_PACKET}
+     * @param metrics           metrics to record the timing of each packet in
+     */
+    PlaybackThread(PlaybackTimeline timeline, long repeatPeriodNanos, PlaybackMetrics metrics) {
+        super("OscPlayback");
+        this.timeline = timeline;
+        this.repeatPeriodNanos = repeatPeriodNanos;
+        this.metrics = metrics;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        long loopStartNanos = System.nanoTime();
+        PlaybackTimeline timeline = this.timeline;
+        long lastOffsetTime = 0;
+        while (!this.stopped) {
+            if (!timeline.next()) {
+                long repeatPeriodNanos = this.repeatPeriodNanos == REPEAT_AT_LAST_PACKET ? lastOffsetTime : this.repeatPeriodNanos;
+                if (repeatPeriodNanos < 1) {
+                    LOG.error("Every packet has an offset time of 0, so playback can't loop, stopping playback");
+                    break;
+                }
+                timeline.rewind();
+                loopStartNanos += repeatPeriodNanos;
+                continue;
+            }
+            lastOffsetTime = timeline.getOffsetTime();
+            long dueNanos = loopStartNanos + lastOffsetTime;
+            if (!this.waitUntil(dueNanos)) {
+                break;
+            }
+            long sendStartNanos = System.nanoTime();
+            try {
+                timeline.send();
+            } catch (IOException e) {
+                LOG.error("Failed to send packet, stopping playback", e);
+                break;
+            }
+            this.metrics.record(sendStartNanos - dueNanos, System.nanoTime() - sendStartNanos);
+        }
+        try {
+            timeline.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close playback", e);
+        }
+    }
+
+    /**
+     * Stop playback, waiting for the thread to finish.
+     */
+    void shutdown() {
+        this.stopped = true;
+        LockSupport.unpark(this);
+        try {
+            this.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false if stopped while waiting
+     */
+    private boolean waitUntil(long dueNanos) {
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > SPIN_THRESHOLD_NANOS) {
+            if (this.stopped) {
+                return false;
+            }
+            LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+        }
+        while (dueNanos - System.nanoTime() > 0) {
+            if (this.stopped) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return !this.stopped;
+    }
+}
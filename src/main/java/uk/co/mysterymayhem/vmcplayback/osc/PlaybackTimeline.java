@@ -0,0 +1,33 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Packets to be played back by a {@link PlaybackThread}, in offset time order, along with the means of sending them.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+interface PlaybackTimeline extends Closeable {
+    /**
+     * Move to the next packet.
+     *
+     * @return false if the end has been reached, in which case there is no current packet
+     */
+    boolean next();
+
+    /**
+     * @return the offset time in nanoseconds of the current packet
+     */
+    long getOffsetTime();
+
+    /**
+     * Send the current packet.
+     */
+    void send() throws IOException;
+
+    /**
+     * Go back to the start so that the next call to next() moves to the first packet again.
+     */
+    void rewind();
+}
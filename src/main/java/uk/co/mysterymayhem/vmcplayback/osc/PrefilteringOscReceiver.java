@@ -0,0 +1,140 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.OSCPacket;
+import com.illposed.osc.OSCParseException;
+import com.illposed.osc.OSCParser;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Receives OSC packets on a UDP socket, removing messages rejected by an {@link AddressFilter} from each datagram before
+ * it's parsed, see {@link DatagramPrefilter}. Rejected messages never have their arguments parsed and datagrams where
+ * every message is rejected are never parsed at all.
+ * <p>
+ * Used in place of javaosc's OSCPortIn, which parses every datagram in full before any listener sees it.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class PrefilteringOscReceiver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrefilteringOscReceiver.class);
+
+    // Largest possible UDP payload
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final DatagramChannel datagramChannel;
+    private final DatagramPrefilter prefilter;
+    private final ObjLongConsumer<OSCPacket> packetHandler;
+    private final OSCParser parser = new OSCSerializerAndParserBuilder().buildParser();
+    private final Thread receiveThread;
+
+    // Only written by the receive thread
+    private volatile long datagramCount = 0;
+    private volatile long droppedDatagramCount = 0;
+    private volatile long unparseableCount = 0;
+
+    /**
+     * Bind to the given address.
+     *
+     * @param socketAddress address to receive datagrams on
+     * @param addressFilter filter to remove messages with
+     * @param packetHandler called from the receiving thread with each parsed packet and the {@link System#nanoTime()}
+     *                      it was received at
+     */
+    public PrefilteringOscReceiver(SocketAddress socketAddress, AddressFilter addressFilter, ObjLongConsumer<OSCPacket> packetHandler) throws IOException {
+        this.datagramChannel = DatagramChannel.open().bind(socketAddress);
+        this.prefilter = new DatagramPrefilter(addressFilter, MAX_DATAGRAM_SIZE);
+        this.packetHandler = packetHandler;
+        this.receiveThread = new Thread(this::receiveLoop, "PrefilteringOscReceiver");
+        this.receiveThread.setDaemon(true);
+    }
+
+    public void startListening() {
+        this.receiveThread.start();
+    }
+
+    /**
+     * Stop receiving and close the socket, waiting for the packet currently being handled to finish.
+     */
+    public void close() throws IOException {
+        // Unblocks the receive thread
+        this.datagramChannel.close();
+        try {
+            this.receiveThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of datagrams received
+     */
+    public long getDatagramCount() {
+        return this.datagramCount;
+    }
+
+    /**
+     * @return the number of datagrams dropped without being parsed, because every message in them was rejected
+     */
+    public long getDroppedDatagramCount() {
+        return this.droppedDatagramCount;
+    }
+
+    /**
+     * @return the number of messages removed from datagrams before they were parsed, only accurate once closed
+     */
+    public long getRejectedMessageCount() {
+        return this.prefilter.getRejectedMessageCount();
+    }
+
+    /**
+     * @return the number of datagrams that couldn't be parsed as OSC
+     */
+    public long getUnparseableCount() {
+        return this.unparseableCount;
+    }
+
+    private void receiveLoop() {
+        ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        try {
+            while (true) {
+                datagram.clear();
+                this.datagramChannel.receive(datagram);
+                long timeReceived = System.nanoTime();
+                datagram.flip();
+                this.datagramCount++;
+
+                ByteBuffer kept = this.prefilter.prefilter(datagram);
+                if (kept == null) {
+                    this.droppedDatagramCount++;
+                    continue;
+                }
+                OSCPacket packet;
+                try {
+                    packet = this.parser.convert(kept);
+                } catch (OSCParseException e) {
+                    this.unparseableCount++;
+                    LOG.warn("Got bad data packet", e);
+                    continue;
+                }
+                try {
+                    this.packetHandler.accept(packet, timeReceived);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to handle packet", e);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by close()
+        } catch (IOException e) {
+            LOG.error("Failed to receive datagram, no longer receiving", e);
+        }
+    }
+}
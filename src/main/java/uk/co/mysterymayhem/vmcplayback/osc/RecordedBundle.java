@@ -7,6 +7,7 @@ import com.illposed.osc.argument.OSCTimeTag64;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -61,11 +62,35 @@ public class RecordedBundle implements RecordedPacketData<RecordedBundle>, Seria
                         .collect(Collectors.toList());
         if (filteredData.isEmpty()) {
             return null;
+        } else if (this.isUnchanged(filteredData)) {
+            // Nothing was filtered out, so this bundle can be shared instead of copied
+            return this;
         } else {
             return new RecordedBundle(this.ntpTime, filteredData);
         }
     }
 
+    private boolean isUnchanged(List<RecordedPacketData<?>> filteredData) {
+        List<RecordedPacketData<?>> data = this.getRecordedPacketData();
+        if (filteredData.size() != data.size()) {
+            return false;
+        }
+        for (int i = 0; i < data.size(); i++) {
+            if (filteredData.get(i) != data.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachMessage(Consumer<RecordedMessage> messageConsumer) {
+        List<RecordedPacketData<?>> data = this.getRecordedPacketData();
+        for (int i = 0; i < data.size(); i++) {
+            data.get(i).forEachMessage(messageConsumer);
+        }
+    }
+
     @Override
     public RecordedBundle mapMessages(Function<RecordedMessage, RecordedMessage> mapper) {
         List<RecordedPacketData<?>> mapped =
@@ -19,7 +19,7 @@ import java.util.stream.Collectors;
 public class RecordedBundlePacket extends RecordedPacket<RecordedBundlePacket, RecordedBundle> implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private RecordedBundlePacket(long offsetTime, RecordedBundle recordedBundle) {
+    public RecordedBundlePacket(long offsetTime, RecordedBundle recordedBundle) {
         super(offsetTime, recordedBundle);
     }
 
@@ -34,8 +34,8 @@ public class RecordedBundlePacket extends RecordedPacket<RecordedBundlePacket, R
         }
     }
 
-    // Not used at the moment. The only time RecordedBundlePackets are created outside of this class, and not from OSC
-    // classes, is from deserialization
+    // Not used at the moment. RecordedBundlePackets created outside of this class, and not from OSC classes, come from
+    // reading recordings, which don't need filtering while being read
     public static RecordedBundlePacket fromData(long offsetTime, long ntpTime, List<RecordedPacketData<?>> recordedPacketData, Predicate<RecordedMessage> messagePredicate) {
         recordedPacketData = recordedPacketData.stream().map(data -> data.filter(messagePredicate)).filter(Objects::nonNull).collect(Collectors.toList());
         if (recordedPacketData.isEmpty()) {
@@ -45,10 +45,17 @@ public class RecordedBundlePacket extends RecordedPacket<RecordedBundlePacket, R
         }
     }
 
+    @Override
+    public RecordedBundlePacket withOffsetTime(long offsetTime) {
+        return new RecordedBundlePacket(offsetTime, this.getPacketData());
+    }
+
     @Override
     public RecordedBundlePacket filter(Predicate<RecordedMessage> messagePredicate) {
         RecordedBundle filtered = this.getPacketData().filter(messagePredicate);
-        if (filtered != null) {
+        if (filtered == this.getPacketData()) {
+            return this;
+        } else if (filtered != null) {
             return new RecordedBundlePacket(this.getOffsetTime(), filtered);
         } else {
             return null;
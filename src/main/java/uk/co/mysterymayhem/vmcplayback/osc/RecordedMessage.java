@@ -12,20 +12,28 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
  * Represents the data of a recorded OSC message.
  * <p>
+ * The address and short string arguments are interned through the shared {@link OscInternTable}, so that every message
+ * with the same address or bone name refers to the same String instance.
+ * <p>
  * Created by Mysteryem on 31/07/2021.
  */
 public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Serializable {
     private static final long serialVersionUID = 3L;
 
     private final String address;
+    transient private final int addressId;
     transient private List<Object> arguments;
     transient private CharSequence argumentTypes;
+    // Lazily calculated, 0 until then since no message encodes to 0 bytes. Calculating it more than once when read
+    // from multiple threads is harmless since it always calculates the same value
+    transient private int encodedLength;
 
     public RecordedMessage(OSCMessage oscMessage) {
         this(oscMessage.getAddress(), oscMessage.getArguments(), oscMessage.getInfo().getArgumentTypeTags());
@@ -35,10 +43,29 @@ public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Ser
         if (!(argumentTypes instanceof Serializable)) {
             argumentTypes = argumentTypes.toString();
         }
+        boolean copied = false;
         if (arguments.getClass() != ArrayList.class) {
             arguments = new ArrayList<>(arguments);
+            copied = true;
+        }
+        OscInternTable internTable = OscInternTable.shared();
+        for (int i = 0; i < arguments.size(); i++) {
+            Object argument = arguments.get(i);
+            if (argument instanceof String) {
+                String interned = internTable.intern((String) argument);
+                if (interned != argument) {
+                    // The caller's list is left as it was
+                    if (!copied) {
+                        arguments = new ArrayList<>(arguments);
+                        copied = true;
+                    }
+                    arguments.set(i, interned);
+                }
+            }
         }
-        this.address = address;
+        int addressId = internTable.getOrAdd(address);
+        this.addressId = addressId;
+        this.address = addressId == OscInternTable.NO_ID ? address : internTable.getString(addressId);
         this.arguments = arguments;
         this.argumentTypes = argumentTypes;
     }
@@ -47,6 +74,14 @@ public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Ser
         return address;
     }
 
+    /**
+     * @return the id of the address in the shared {@link OscInternTable}, or {@link OscInternTable#NO_ID} if it couldn't
+     * be interned
+     */
+    public int getAddressId() {
+        return addressId;
+    }
+
     public List<Object> getArguments() {
         return arguments;
     }
@@ -55,6 +90,18 @@ public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Ser
         return argumentTypes;
     }
 
+    /**
+     * @return the length of this message encoded as OSC
+     */
+    public int getEncodedLength() {
+        int encodedLength = this.encodedLength;
+        if (encodedLength == 0) {
+            encodedLength = OscBytes.encodedLength(this);
+            this.encodedLength = encodedLength;
+        }
+        return encodedLength;
+    }
+
     @Override
     public int getMessageCount() {
         return 1;
@@ -75,6 +122,11 @@ public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Ser
         }
     }
 
+    @Override
+    public void forEachMessage(Consumer<RecordedMessage> messageConsumer) {
+        messageConsumer.accept(this);
+    }
+
     @Override
     public RecordedMessage mapMessages(Function<RecordedMessage, RecordedMessage> mapper) {
         return mapper.apply(this);
@@ -132,5 +184,10 @@ public class RecordedMessage implements RecordedPacketData<RecordedMessage>, Ser
         this.argumentTypes = argumentTypes;
     }
 
+    // Deserialized instances skip the constructor, so replace them with one that has interned its strings
+    private Object readResolve() {
+        return new RecordedMessage(this.address, this.arguments, this.argumentTypes);
+    }
+
 
 }
@@ -22,10 +22,17 @@ public class RecordedMessagePacket extends RecordedPacket<RecordedMessagePacket,
         super(offsetTime, recordedMessage);
     }
 
+    @Override
+    public RecordedMessagePacket withOffsetTime(long offsetTime) {
+        return new RecordedMessagePacket(offsetTime, this.getPacketData());
+    }
+
     @Override
     public RecordedMessagePacket filter(Predicate<RecordedMessage> messagePredicate) {
         RecordedMessage filtered = this.filterData(messagePredicate);
-        if (filtered != null) {
+        if (filtered == this.getPacketData()) {
+            return this;
+        } else if (filtered != null) {
             return new RecordedMessagePacket(this.getOffsetTime(), filtered);
         } else {
             return null;
@@ -1,9 +1,12 @@
 package uk.co.mysterymayhem.vmcplayback.osc;
 
+import com.illposed.osc.OSCBundle;
+import com.illposed.osc.OSCMessage;
 import com.illposed.osc.OSCPacket;
 
 import java.io.Serializable;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -18,6 +21,8 @@ public abstract class RecordedPacket<T extends RecordedPacket<T, U> & Serializab
 
     private static final long serialVersionUID = 1L;
 
+    // Nanoseconds since the start of the recording. Recordings made before nanosecond offsets were in milliseconds, these
+    // are converted when read, see RecordingFiles
     private final long offsetTime;
     private U packetData;
 
@@ -60,6 +65,30 @@ public abstract class RecordedPacket<T extends RecordedPacket<T, U> & Serializab
                 '}';
     }
 
+    /**
+     * Create a RecordedPacket from a received OSCPacket.
+     *
+     * @param offsetTime      offset time of the new packet
+     * @param packet          the received packet
+     * @param messageSelector predicate to select which messages get recorded
+     * @return the recorded packet, or null if none of the packet's messages were selected
+     */
+    public static RecordedPacket<?, ?> fromOscPacket(long offsetTime, OSCPacket packet, Predicate<RecordedMessage> messageSelector) {
+        if (packet instanceof OSCMessage) {
+            RecordedMessagePacket recordedMessagePacket = new RecordedMessagePacket(offsetTime, (OSCMessage) packet);
+            return messageSelector.test(recordedMessagePacket.getPacketData()) ? recordedMessagePacket : null;
+        } else if (packet instanceof OSCBundle) {
+            RecordedBundlePacket recordedBundlePacket = RecordedBundlePacket.fromOscBundle(offsetTime, (OSCBundle) packet, messageSelector);
+            // If the bundle has no recorded packet data (it has no messages), ignore it
+            if (recordedBundlePacket != null && !recordedBundlePacket.getPacketData().getRecordedPacketData().isEmpty()) {
+                return recordedBundlePacket;
+            }
+            return null;
+        } else {
+            throw new RuntimeException("Unexpected OSCPacket '" + packet + "' of class '" + packet.getClass() + "'");
+        }
+    }
+
     /**
      * Convert this to an OSCPacket so it can be sent via OSC.
      *
@@ -69,12 +98,21 @@ public abstract class RecordedPacket<T extends RecordedPacket<T, U> & Serializab
         return this.getPacketData().toOscPacket();
     }
 
+    /**
+     * Create a copy of this packet with a different offset time, sharing the same packet data.
+     *
+     * @param offsetTime the offset time of the new packet
+     * @return a RecordedPacket of the same type as this, but with the new offset time
+     */
+    public abstract T withOffsetTime(long offsetTime);
+
     /**
      * Filter this packet's messages, discarding messages that fail the given predicate and returning null if no
      * messages remain after filtering.
      *
      * @param messagePredicate Predicate to use when filtering, messages that fail will be discarded
-     * @return A RecordedPacket of the same type as this, but with messages filtered, may return the same object if
+     * @return A RecordedPacket of the same type as this, but with messages filtered, returns the same object if no
+     * messages were filtered out
      */
     public abstract T filter(Predicate<RecordedMessage> messagePredicate);
 
@@ -82,6 +120,15 @@ public abstract class RecordedPacket<T extends RecordedPacket<T, U> & Serializab
         return this.getPacketData().filter(messagePredicate);
     }
 
+    /**
+     * Pass each of this packet's messages to the consumer, in order, without creating any new packets.
+     *
+     * @param messageConsumer consumer to pass each message to
+     */
+    public void forEachMessage(Consumer<RecordedMessage> messageConsumer) {
+        this.getPacketData().forEachMessage(messageConsumer);
+    }
+
     @SuppressWarnings("unchecked")
     public T mapMessages(Function<RecordedMessage, RecordedMessage> mapper) {
         U packetData = this.getPacketData();
@@ -2,6 +2,7 @@ package uk.co.mysterymayhem.vmcplayback.osc;
 
 import com.illposed.osc.OSCPacket;
 
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -35,5 +36,12 @@ public interface RecordedPacketData<T extends RecordedPacketData<T>> {
      */
     T filter(Predicate<RecordedMessage> messagePredicate);
 
+    /**
+     * Pass each of this data's messages to the consumer, in order, without creating any new packet data.
+     *
+     * @param messageConsumer consumer to pass each message to
+     */
+    void forEachMessage(Consumer<RecordedMessage> messageConsumer);
+
     T mapMessages(Function<RecordedMessage, RecordedMessage> mapper);
 }
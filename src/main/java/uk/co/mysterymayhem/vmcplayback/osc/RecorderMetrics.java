@@ -0,0 +1,402 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import com.illposed.osc.OSCBundle;
+import com.illposed.osc.OSCPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Live counts and rates of what an {@link OscRecorder} is receiving and recording, so that recording falling behind
+ * can be seen while it's happening.
+ * <p>
+ * Recorded messages and their size as OSC are counted per address prefix, the first three parts of the address, e.g.
+ * {@code /VMC/Ext/Bone}. Also counted are messages that were filtered out or unchanged, packets that couldn't be parsed
+ * or were dropped because recording couldn't keep up, and how long converting each packet into a recorded packet takes.
+ * The occupancy of any queues between receiving and writing to file is sampled when reporting.
+ * <p>
+ * Every count can be updated from any thread. While recording, the rates are logged once every reporting interval and
+ * everything is available over JMX as {@code uk.co.mysterymayhem.vmcplayback:type=Recorder,name=<n>}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class RecorderMetrics implements RecorderMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecorderMetrics.class);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Non-VMC OSC can use any number of addresses, beyond this many, new addresses are counted as OTHER_PREFIX
+    private static final int MAX_ADDRESSES = 1024;
+    private static final String OTHER_PREFIX = "<other>";
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private static final LatencyHistogram.Snapshot EMPTY = new LatencyHistogram().snapshot();
+
+    private final int id = NEXT_ID.getAndIncrement();
+    private final LongAdder receivedPacketCount = new LongAdder();
+    private final LongAdder recordedPacketCount = new LongAdder();
+    private final LongAdder filteredMessageCount = new LongAdder();
+    private final LongAdder badDataCount = new LongAdder();
+    private final LatencyHistogram conversionTime = new LatencyHistogram();
+    // Addresses are looked up far more often than they're added, so counters are found by full address and shared by
+    // every address with the same prefix
+    private final Map<String, PrefixCounters> countersByAddress = new ConcurrentHashMap<>();
+    private final Map<String, PrefixCounters> countersByPrefix = new ConcurrentHashMap<>();
+    private final Consumer<RecordedMessage> messageCounter = this::countMessage;
+    private final List<Queue> queues = new CopyOnWriteArrayList<>();
+    // Counts kept elsewhere, null when not used
+    private PrefilteringOscReceiver receiver;
+    private DecoupledPacketListener decoupledPacketListener;
+
+    private Thread reportThread;
+    private ObjectName objectName;
+    private volatile boolean stopped = false;
+    // Last completed reporting interval
+    private volatile Interval lastInterval = new Interval(0, 0, 0, EMPTY, new String[0]);
+
+    /**
+     * Sample the size of a queue when reporting.
+     *
+     * @param name     name to report the queue as
+     * @param size     current number of elements in the queue, called from the reporting thread
+     * @param capacity maximum number of elements in the queue
+     */
+    public void addQueue(String name, IntSupplier size, int capacity) {
+        this.queues.add(new Queue(name, size, capacity));
+    }
+
+    /**
+     * Include the datagrams and messages dropped by a receiver before they were parsed.
+     */
+    void setReceiver(PrefilteringOscReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Include the packets dropped by, and the queue of, a decoupled listener.
+     */
+    void setDecoupledPacketListener(DecoupledPacketListener decoupledPacketListener) {
+        this.decoupledPacketListener = decoupledPacketListener;
+        this.addQueue("receive", decoupledPacketListener::getQueueSize, decoupledPacketListener.getQueueCapacity());
+    }
+
+    /**
+     * Count a received packet.
+     *
+     * @param packet          the packet as received
+     * @param recordedPacket  the packet that was recorded, or null if nothing was recorded
+     * @param conversionNanos time taken to convert the packet into the recorded packet
+     */
+    void recordPacket(OSCPacket packet, RecordedPacket<?, ?> recordedPacket, long conversionNanos) {
+        this.receivedPacketCount.increment();
+        this.conversionTime.record(conversionNanos);
+        int receivedMessageCount = countMessages(packet);
+        int recordedMessageCount = 0;
+        if (recordedPacket != null) {
+            this.recordedPacketCount.increment();
+            recordedMessageCount = recordedPacket.getPacketData().getMessageCount();
+            recordedPacket.forEachMessage(this.messageCounter);
+        }
+        if (receivedMessageCount > recordedMessageCount) {
+            this.filteredMessageCount.add(receivedMessageCount - recordedMessageCount);
+        }
+    }
+
+    /**
+     * Count a packet that couldn't be parsed.
+     */
+    void recordBadData() {
+        this.badDataCount.increment();
+    }
+
+    /**
+     * Register with JMX and start logging every reporting interval.
+     */
+    void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("uk.co.mysterymayhem.vmcplayback:type=Recorder,name=" + this.id);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            LOG.warn("Failed to register recorder metrics with JMX", e);
+        }
+        this.reportThread = new Thread(this::reportLoop, "OscRecorderMetrics");
+        this.reportThread.setDaemon(true);
+        this.reportThread.start();
+    }
+
+    /**
+     * Stop logging and unregister from JMX.
+     */
+    void stop() {
+        this.stopped = true;
+        if (this.reportThread != null) {
+            LockSupport.unpark(this.reportThread);
+            try {
+                this.reportThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister recorder metrics from JMX", e);
+            }
+            this.objectName = null;
+        }
+    }
+
+    private static int countMessages(OSCPacket packet) {
+        if (packet instanceof OSCBundle) {
+            int count = 0;
+            for (OSCPacket element : ((OSCBundle) packet).getPackets()) {
+                count += countMessages(element);
+            }
+            return count;
+        }
+        return 1;
+    }
+
+    private void countMessage(RecordedMessage message) {
+        PrefixCounters counters = this.countersByAddress.get(message.getAddress());
+        if (counters == null) {
+            counters = this.addAddress(message.getAddress());
+        }
+        counters.messageCount.increment();
+        counters.byteCount.add(message.getEncodedLength());
+    }
+
+    private PrefixCounters addAddress(String address) {
+        String prefix = this.countersByAddress.size() < MAX_ADDRESSES ? addressPrefix(address) : OTHER_PREFIX;
+        PrefixCounters counters = this.countersByPrefix.computeIfAbsent(prefix, k -> new PrefixCounters());
+        if (prefix != OTHER_PREFIX) {
+            this.countersByAddress.putIfAbsent(address, counters);
+        }
+        return counters;
+    }
+
+    private static String addressPrefix(String address) {
+        int slashes = 0;
+        for (int i = 0; i < address.length(); i++) {
+            if (address.charAt(i) == '/' && ++slashes == 4) {
+                return address.substring(0, i);
+            }
+        }
+        return address;
+    }
+
+    private void reportLoop() {
+        long previousReport = System.nanoTime();
+        long nextReport = previousReport + REPORT_INTERVAL_NANOS;
+        long previousPackets = 0;
+        long previousMessages = 0;
+        long previousBytes = 0;
+        LatencyHistogram.Snapshot previousConversionTime = EMPTY;
+        Map<String, long[]> previousByPrefix = new HashMap<>();
+        while (!this.stopped) {
+            long now = System.nanoTime();
+            if (nextReport - now > 0) {
+                LockSupport.parkNanos(this, nextReport - now);
+                continue;
+            }
+            nextReport += REPORT_INTERVAL_NANOS;
+            double seconds = (now - previousReport) / (double) TimeUnit.SECONDS.toNanos(1);
+            previousReport = now;
+
+            long packets = this.recordedPacketCount.sum();
+            long messages = 0;
+            long bytes = 0;
+            List<String> prefixRates = new ArrayList<>();
+            // Sorted so that the prefixes are always logged in the same order
+            for (Map.Entry<String, PrefixCounters> entry : new TreeMap<>(this.countersByPrefix).entrySet()) {
+                long prefixMessages = entry.getValue().messageCount.sum();
+                long prefixBytes = entry.getValue().byteCount.sum();
+                long[] previous = previousByPrefix.computeIfAbsent(entry.getKey(), k -> new long[2]);
+                if (prefixMessages != previous[0]) {
+                    prefixRates.add(String.format("%s %.1f messages/s %.1f bytes/s", entry.getKey(),
+                            (prefixMessages - previous[0]) / seconds, (prefixBytes - previous[1]) / seconds));
+                }
+                previous[0] = prefixMessages;
+                previous[1] = prefixBytes;
+                messages += prefixMessages;
+                bytes += prefixBytes;
+            }
+            LatencyHistogram.Snapshot conversionTime = this.conversionTime.snapshot();
+            Interval interval = new Interval(
+                    (packets - previousPackets) / seconds, (messages - previousMessages) / seconds,
+                    (bytes - previousBytes) / seconds,
+                    conversionTime.minus(previousConversionTime), prefixRates.toArray(new String[0]));
+            this.lastInterval = interval;
+            previousPackets = packets;
+            previousMessages = messages;
+            previousBytes = bytes;
+            previousConversionTime = conversionTime;
+
+            LOG.info("Recording {} packets/s, {} messages/s, {} bytes/s, {} filtered out, {} bad, {} dropped, " +
+                            "conversion p50 {}us, p99 {}us, max {}us, queues {}",
+                    String.format("%.1f", interval.packetsPerSecond), String.format("%.1f", interval.messagesPerSecond),
+                    String.format("%.1f", interval.bytesPerSecond), this.getFilteredMessageCount(), this.getBadDataCount(),
+                    this.getDroppedPacketCount(),
+                    toMicros(interval.conversionTime.getValueAtPercentile(50)),
+                    toMicros(interval.conversionTime.getValueAtPercentile(99)),
+                    toMicros(interval.conversionTime.getMax()), String.join(", ", this.getQueueOccupancy()));
+            if (interval.prefixRates.length != 0) {
+                LOG.info("Recording by address: {}", String.join(", ", interval.prefixRates));
+            }
+        }
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    @Override
+    public double getPacketsPerSecond() {
+        return this.lastInterval.packetsPerSecond;
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return this.lastInterval.messagesPerSecond;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return this.lastInterval.bytesPerSecond;
+    }
+
+    @Override
+    public long getReceivedPacketCount() {
+        return this.receivedPacketCount.sum();
+    }
+
+    @Override
+    public long getRecordedPacketCount() {
+        return this.recordedPacketCount.sum();
+    }
+
+    @Override
+    public long getRecordedMessageCount() {
+        long count = 0;
+        for (PrefixCounters counters : this.countersByPrefix.values()) {
+            count += counters.messageCount.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getRecordedByteCount() {
+        long count = 0;
+        for (PrefixCounters counters : this.countersByPrefix.values()) {
+            count += counters.byteCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return messages that weren't recorded because of the message filter, including those removed before being
+     * parsed, or because they were unchanged, see {@link DeltaSuppressor}
+     */
+    @Override
+    public long getFilteredMessageCount() {
+        PrefilteringOscReceiver receiver = this.receiver;
+        return this.filteredMessageCount.sum() + (receiver == null ? 0 : receiver.getRejectedMessageCount());
+    }
+
+    @Override
+    public long getBadDataCount() {
+        PrefilteringOscReceiver receiver = this.receiver;
+        return this.badDataCount.sum() + (receiver == null ? 0 : receiver.getUnparseableCount());
+    }
+
+    /**
+     * @return packets dropped because recording couldn't keep up
+     */
+    @Override
+    public long getDroppedPacketCount() {
+        DecoupledPacketListener decoupledPacketListener = this.decoupledPacketListener;
+        return decoupledPacketListener == null ? 0 : decoupledPacketListener.getOverflowCount();
+    }
+
+    @Override
+    public double getConversionP50Micros() {
+        return toMicros(this.lastInterval.conversionTime.getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getConversionP99Micros() {
+        return toMicros(this.lastInterval.conversionTime.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getConversionMaxMicros() {
+        return toMicros(this.lastInterval.conversionTime.getMax());
+    }
+
+    @Override
+    public String[] getAddressPrefixRates() {
+        return this.lastInterval.prefixRates.clone();
+    }
+
+    @Override
+    public String[] getQueueOccupancy() {
+        String[] occupancy = new String[this.queues.size()];
+        for (int i = 0; i < occupancy.length; i++) {
+            Queue queue = this.queues.get(i);
+            occupancy[i] = queue.name + ' ' + queue.size.getAsInt() + '/' + queue.capacity;
+        }
+        return occupancy;
+    }
+
+    private static final class PrefixCounters {
+        final LongAdder messageCount = new LongAdder();
+        final LongAdder byteCount = new LongAdder();
+    }
+
+    private static final class Queue {
+        final String name;
+        final IntSupplier size;
+        final int capacity;
+
+        Queue(String name, IntSupplier size, int capacity) {
+            this.name = name;
+            this.size = size;
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Interval {
+        final double packetsPerSecond;
+        final double messagesPerSecond;
+        final double bytesPerSecond;
+        final LatencyHistogram.Snapshot conversionTime;
+        final String[] prefixRates;
+
+        Interval(double packetsPerSecond, double messagesPerSecond, double bytesPerSecond,
+                 LatencyHistogram.Snapshot conversionTime, String[] prefixRates) {
+            this.packetsPerSecond = packetsPerSecond;
+            this.messagesPerSecond = messagesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.conversionTime = conversionTime;
+            this.prefixRates = prefixRates;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+/**
+ * Management interface of {@link RecorderMetrics}, for watching a recording in JConsole, VisualVM and similar.
+ * <p>
+ * Rates and conversion times are of the last completed reporting interval, counts are since recording started.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public interface RecorderMetricsMBean {
+    double getPacketsPerSecond();
+
+    double getMessagesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getReceivedPacketCount();
+
+    long getRecordedPacketCount();
+
+    long getRecordedMessageCount();
+
+    long getRecordedByteCount();
+
+    long getFilteredMessageCount();
+
+    long getBadDataCount();
+
+    long getDroppedPacketCount();
+
+    double getConversionP50Micros();
+
+    double getConversionP99Micros();
+
+    double getConversionMaxMicros();
+
+    /**
+     * @return the rates of each address prefix, e.g. {@code /VMC/Ext/Bone 3600.0 messages/s 216000.0 bytes/s}
+     */
+    String[] getAddressPrefixRates();
+
+    /**
+     * @return how full each queue is, e.g. {@code receive 12/16384}
+     */
+    String[] getQueueOccupancy();
+}
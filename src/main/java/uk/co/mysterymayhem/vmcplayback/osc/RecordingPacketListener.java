@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
@@ -16,20 +17,70 @@ public class RecordingPacketListener implements OSCPacketListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(RecordingPacketListener.class);
     private final Predicate<RecordedMessage> messageSelector;
-    private int packetCount;
-    private int messageCount;
+    // Where recorded packets end up, either the recordedPackets list or some external consumer, such as a writer that
+    // streams the packets to file
+    private final Consumer<RecordedPacket<?, ?>> packetSink;
+    // Null unless unchanged messages are being dropped
+    private DeltaSuppressor deltaSuppressor = null;
+    // Null unless metrics are being collected
+    private RecorderMetrics metrics = null;
+    // Only written by the recording thread
+    private volatile int packetCount;
+    private volatile int messageCount;
+    // Wall clock time that recording started, in milliseconds
     private long startTime;
+    // Monotonic time that recording started, offset times are measured from this so that they have nanosecond
+    // resolution and aren't affected by adjustments to the wall clock
+    private long startTimeNanos;
     private ArrayList<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>();
 
     public RecordingPacketListener(Predicate<RecordedMessage> messageSelector) {
         this.messageSelector = messageSelector;
+        // Can't be a method reference because startRecording() replaces the list
+        this.packetSink = recordedPacket -> this.recordedPackets.add(recordedPacket);
+    }
+
+    /**
+     * Create a listener that passes recorded packets to the given sink instead of keeping them in memory.
+     * getRecordedPackets() will always return an empty list.
+     *
+     * @param messageSelector predicate to select which messages get recorded
+     * @param packetSink      consumer that each recorded packet is passed to, called from the receiving thread
+     */
+    public RecordingPacketListener(Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink) {
+        this.messageSelector = messageSelector;
+        this.packetSink = packetSink;
+    }
+
+    /**
+     * Drop messages that are unchanged since they were last recorded, with periodic keyframes, to make recordings
+     * smaller. Must be set before recording starts.
+     *
+     * @param deltaSuppressor suppressor to pass each recorded packet through, or null to record every message
+     */
+    public void setDeltaSuppressor(DeltaSuppressor deltaSuppressor) {
+        this.deltaSuppressor = deltaSuppressor;
+    }
+
+    /**
+     * Count what's received and recorded as it happens, see {@link RecorderMetrics}. Must be set before recording
+     * starts.
+     *
+     * @param metrics metrics to update, or null to not collect metrics
+     */
+    public void setMetrics(RecorderMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public void startRecording() {
         // ditch any old messages
         this.recordedPackets = new ArrayList<>();
+        if (this.deltaSuppressor != null) {
+            this.deltaSuppressor.reset();
+        }
         // get the time now for use when calculating time offsets of when messages have been received
         this.startTime = System.currentTimeMillis();
+        this.startTimeNanos = System.nanoTime();
     }
 
     public int getPacketCount() {
@@ -52,36 +103,39 @@ public class RecordingPacketListener implements OSCPacketListener {
 
     @Override
     public void handlePacket(OSCPacketEvent event) {
-        long timeReceived = System.currentTimeMillis();
+        this.recordPacket(event.getPacket(), System.nanoTime());
+    }
+
+    /**
+     * Record a packet that has been received, see {@link DecoupledPacketListener} for recording packets on a different
+     * thread to the thread receiving them.
+     *
+     * @param packet       the received packet
+     * @param timeReceived {@link System#nanoTime()} when the packet was received
+     */
+    public void recordPacket(OSCPacket packet, long timeReceived) {
+        long conversionStart = System.nanoTime();
+        // Single writer, so the non-atomic increments are fine
         packetCount++;
-        long offsetTime = timeReceived - this.startTime;
-        OSCPacket packet = event.getPacket();
-        if (packet instanceof OSCMessage) {
-            OSCMessage message = (OSCMessage) packet;
-
-            RecordedMessagePacket recordedMessagePacket = new RecordedMessagePacket(offsetTime, message);
-            if (this.messageSelector.test(recordedMessagePacket.getPacketData())) {
-                this.recordedPackets.add(recordedMessagePacket);
-                // Should always be +1 since OSCMessages have a single message
-                this.messageCount += recordedMessagePacket.getPacketData().getMessageCount();
-            }
-        } else if (packet instanceof OSCBundle) {
-            OSCBundle bundle = (OSCBundle) packet;
-
-            RecordedBundlePacket recordedBundlePacket = RecordedBundlePacket.fromOscBundle(offsetTime, bundle, this.messageSelector);
-            // If the bundle has no recorded packet data (it has no messages), ignore it
-            if (recordedBundlePacket != null && !recordedBundlePacket.getPacketData().getRecordedPacketData().isEmpty()) {
-                this.recordedPackets.add(recordedBundlePacket);
-                this.messageCount += recordedBundlePacket.getPacketData().getMessageCount();
-            }
-        } else {
-            throw new RuntimeException("Unexpected OSCPacket '" + packet + "' of class '" + packet.getClass() + "'");
+        long offsetTime = timeReceived - this.startTimeNanos;
+        RecordedPacket<?, ?> recordedPacket = RecordedPacket.fromOscPacket(offsetTime, packet, this.messageSelector);
+        if (recordedPacket != null && this.deltaSuppressor != null) {
+            recordedPacket = this.deltaSuppressor.apply(recordedPacket);
+        }
+        if (this.metrics != null) {
+            this.metrics.recordPacket(packet, recordedPacket, System.nanoTime() - conversionStart);
+        }
+        if (recordedPacket != null) {
+            this.packetSink.accept(recordedPacket);
+            this.messageCount += recordedPacket.getPacketData().getMessageCount();
         }
-
     }
 
     @Override
     public void handleBadData(OSCBadDataEvent event) {
+        if (this.metrics != null) {
+            this.metrics.recordBadData();
+        }
         LOG.warn("Got bad data packet", event.getException());
     }
 }
@@ -0,0 +1,120 @@
+package uk.co.mysterymayhem.vmcplayback.osc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, lock-free, single-producer/single-consumer ring buffer of elements that are each paired with a timestamp.
+ * <p>
+ * All storage is allocated up front, so offering and draining don't allocate. Exactly one thread may offer and exactly
+ * one (other) thread may drain.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class SpscRingBuffer<E> {
+
+    private final Object[] elements;
+    private final long[] timestamps;
+    private final int mask;
+    // Index of the next slot to be read, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next slot to be written, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // Producer's last read of head, so the producer only needs to read the volatile head when the buffer looks full
+    private long cachedHead = 0;
+
+    /**
+     * Handler for drained elements.
+     */
+    public interface Handler<E> {
+        void accept(E element, long timestamp);
+    }
+
+    /**
+     * @param capacity minimum capacity, rounded up to the next power of two
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int powerOfTwoCapacity = Integer.highestOneBit(capacity - 1) << 1;
+        if (powerOfTwoCapacity == 0) {
+            powerOfTwoCapacity = 1;
+        }
+        this.elements = new Object[powerOfTwoCapacity];
+        this.timestamps = new long[powerOfTwoCapacity];
+        this.mask = powerOfTwoCapacity - 1;
+    }
+
+    /**
+     * Add an element, producer thread only.
+     *
+     * @param element   element to add, must not be null
+     * @param timestamp timestamp to pair with the element
+     * @return false if the buffer is full, in which case the element was not added
+     */
+    public boolean offer(E element, long timestamp) {
+        long tail = this.tail.get();
+        if (tail - this.cachedHead >= this.elements.length) {
+            this.cachedHead = this.head.get();
+            if (tail - this.cachedHead >= this.elements.length) {
+                return false;
+            }
+        }
+        int index = (int) tail & this.mask;
+        this.elements[index] = element;
+        this.timestamps[index] = timestamp;
+        // Ordered write publishes the element and timestamp to the consumer without a full volatile write
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Remove elements and pass them to a handler, consumer thread only.
+     *
+     * @param handler  handler to pass each element to, in the order they were offered
+     * @param maxCount maximum number of elements to drain
+     * @return the number of elements drained
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Handler<? super E> handler, int maxCount) {
+        long head = this.head.get();
+        long available = this.tail.get() - head;
+        int count = (int) Math.min(available, maxCount);
+        int drained = 0;
+        try {
+            while (drained < count) {
+                int index = (int) (head + drained) & this.mask;
+                E element = (E) this.elements[index];
+                long timestamp = this.timestamps[index];
+                // Don't keep the element reachable once it's been consumed
+                this.elements[index] = null;
+                drained++;
+                handler.accept(element, timestamp);
+            }
+        } finally {
+            // Even if the handler throws, the elements passed to it have been consumed
+            if (drained > 0) {
+                this.head.lazySet(head + drained);
+            }
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return this.head.get() == this.tail.get();
+    }
+
+    /**
+     * @return the number of elements waiting to be drained, may be out of date by the time it's returned if called from
+     * a thread other than the producer or consumer
+     */
+    public int size() {
+        // Read head first, so that a concurrent drain can't make the size appear negative
+        long head = this.head.get();
+        return (int) Math.max(0, this.tail.get() - head);
+    }
+
+    public int capacity() {
+        return this.elements.length;
+    }
+}
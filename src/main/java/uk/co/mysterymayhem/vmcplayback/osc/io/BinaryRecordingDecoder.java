@@ -0,0 +1,247 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import com.illposed.osc.argument.OSCTimeTag64;
+import uk.co.mysterymayhem.vmcplayback.osc.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the payloads of records in the binary recording format, see {@link RecordingFormat}. Keeps track of the
+ * addresses and type tags that have been defined so far and the offset time of the previous packet, so records must be
+ * decoded in the order they were written.
+ * <p>
+ * Not thread safe.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class BinaryRecordingDecoder {
+
+    private final List<String> addresses = new ArrayList<>();
+    private final List<String> typeTags = new ArrayList<>();
+    private final List<Boolean> typeTagsDirectlyEncodable = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private VmcSampleCodec codec = null;
+    private byte[] stringBytes = new byte[64];
+    private final long nanosPerOffsetTimeUnit;
+    private final boolean keyframesResetState;
+    private long previousOffsetTime = 0;
+
+    /**
+     * @param version format version of the recording being decoded, as returned by {@link #readHeader(ByteBuffer)}
+     */
+    public BinaryRecordingDecoder(int version) {
+        this.nanosPerOffsetTimeUnit = RecordingFormat.nanosPerOffsetTimeUnit(version);
+        this.keyframesResetState = RecordingFormat.isSeekable(version);
+    }
+
+    /**
+     * Read the version from a recording header.
+     *
+     * @param header buffer positioned at the start of the header, the position is advanced past the header
+     * @return the format version
+     * @throws IOException if the header isn't a recording header or the version isn't supported
+     */
+    public static int readHeader(ByteBuffer header) throws IOException {
+        byte[] magic = new byte[RecordingFormat.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, RecordingFormat.MAGIC)) {
+            throw new StreamCorruptedException("Not a recording, invalid header");
+        }
+        int version = header.get() & 0xFF;
+        // Flags, currently unused
+        header.get();
+        if (version < 1 || version > RecordingFormat.VERSION) {
+            throw new IOException("Unsupported recording format version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Decode the payload of a record.
+     *
+     * @param recordType type of the record
+     * @param payload    buffer positioned at the start of the record's payload and limited to the end of it
+     * @return the decoded packet, or null if the record doesn't contain a packet
+     */
+    public RecordedPacket<?, ?> decode(byte recordType, ByteBuffer payload) throws IOException {
+        switch (recordType) {
+            case RecordingFormat.RECORD_DEFINE_ADDRESS:
+                this.define(this.addresses, payload, StandardCharsets.UTF_8);
+                return null;
+            case RecordingFormat.RECORD_DEFINE_TYPE_TAGS:
+                String defined = this.define(this.typeTags, payload, StandardCharsets.US_ASCII);
+                this.typeTagsDirectlyEncodable.add(RecordingFormat.isDirectlyEncodable(defined));
+                return null;
+            case RecordingFormat.RECORD_DEFINE_NAME:
+                this.define(this.names, payload, StandardCharsets.UTF_8);
+                return null;
+            case RecordingFormat.RECORD_CODEC:
+                this.codec = new VmcSampleCodec(VmcCodecSettings.read(payload));
+                return null;
+            case RecordingFormat.RECORD_KEYFRAME:
+                if (this.codec != null) {
+                    this.codec.reset();
+                }
+                if (this.keyframesResetState) {
+                    this.addresses.clear();
+                    this.typeTags.clear();
+                    this.typeTagsDirectlyEncodable.clear();
+                    this.names.clear();
+                    this.previousOffsetTime = 0;
+                }
+                return null;
+            case RecordingFormat.RECORD_MESSAGE_PACKET:
+                return new RecordedMessagePacket(this.readOffsetTime(payload), this.readMessage(payload));
+            case RecordingFormat.RECORD_BUNDLE_PACKET:
+                return new RecordedBundlePacket(this.readOffsetTime(payload), this.readBundle(payload));
+            case RecordingFormat.RECORD_END:
+            case RecordingFormat.RECORD_TIME_INDEX:
+                return null;
+            default:
+                throw new StreamCorruptedException("Unknown record type " + recordType);
+        }
+    }
+
+    private long readOffsetTime(ByteBuffer payload) {
+        long offsetTime = this.previousOffsetTime + readZigZag(payload) * this.nanosPerOffsetTimeUnit;
+        this.previousOffsetTime = offsetTime;
+        return offsetTime;
+    }
+
+    private String define(List<String> definitions, ByteBuffer payload, Charset charset) throws IOException {
+        int id = (int) readVarint(payload);
+        if (id != definitions.size()) {
+            throw new StreamCorruptedException("Expected definition " + definitions.size() + " but got " + id);
+        }
+        String value = this.readString(payload, payload.remaining(), charset);
+        definitions.add(value);
+        return value;
+    }
+
+    private RecordedBundle readBundle(ByteBuffer payload) throws IOException {
+        long ntpTime = payload.getLong();
+        int elementCount = (int) readVarint(payload);
+        List<RecordedPacketData<?>> elements = new ArrayList<>(elementCount);
+        for (int i = 0; i < elementCount; i++) {
+            byte elementKind = payload.get();
+            switch (elementKind) {
+                case RecordingFormat.ELEMENT_MESSAGE:
+                    elements.add(this.readMessage(payload));
+                    break;
+                case RecordingFormat.ELEMENT_BUNDLE:
+                    elements.add(this.readBundle(payload));
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown bundle element kind " + elementKind);
+            }
+        }
+        return new RecordedBundle(ntpTime, elements);
+    }
+
+    private RecordedMessage readMessage(ByteBuffer payload) throws IOException {
+        String address = this.addresses.get((int) readVarint(payload));
+        int typeTagsId = (int) readVarint(payload);
+        String typeTags = this.typeTags.get(typeTagsId);
+
+        if (this.codec != null) {
+            int channelKind = VmcSampleCodec.getChannelKind(address, typeTags);
+            if (channelKind != VmcSampleCodec.CHANNEL_NONE) {
+                int nameId = (int) readVarint(payload);
+                List<Object> arguments = this.codec.decode(channelKind, nameId, this.names.get(nameId), payload);
+                return new RecordedMessage(address, arguments, typeTags);
+            }
+        }
+
+        if (!this.typeTagsDirectlyEncodable.get(typeTagsId)) {
+            int serializedLength = (int) readVarint(payload);
+            byte[] serialized = new byte[serializedLength];
+            payload.get(serialized);
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                Object[] arguments = (Object[]) objectInputStream.readObject();
+                return new RecordedMessage(address, new ArrayList<>(Arrays.asList(arguments)), typeTags);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        int argumentCount = typeTags.length();
+        ArrayList<Object> arguments = new ArrayList<>(argumentCount);
+        for (int i = 0; i < argumentCount; i++) {
+            switch (typeTags.charAt(i)) {
+                case 'i':
+                    arguments.add(payload.getInt());
+                    break;
+                case 'f':
+                    arguments.add(payload.getFloat());
+                    break;
+                case 'h':
+                    arguments.add(payload.getLong());
+                    break;
+                case 'd':
+                    arguments.add(payload.getDouble());
+                    break;
+                case 't':
+                    arguments.add(OSCTimeTag64.valueOf(payload.getLong()));
+                    break;
+                case 's':
+                    arguments.add(this.readString(payload, (int) readVarint(payload), StandardCharsets.UTF_8));
+                    break;
+                case 'c':
+                    arguments.add(payload.getChar());
+                    break;
+                case 'T':
+                    arguments.add(Boolean.TRUE);
+                    break;
+                case 'F':
+                    arguments.add(Boolean.FALSE);
+                    break;
+                case 'N':
+                    arguments.add(null);
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unexpected type tag in " + typeTags);
+            }
+        }
+        return new RecordedMessage(address, arguments, typeTags);
+    }
+
+    private String readString(ByteBuffer payload, int length, Charset charset) {
+        if (payload.hasArray()) {
+            int position = payload.position();
+            payload.position(position + length);
+            return new String(payload.array(), payload.arrayOffset() + position, length, charset);
+        } else {
+            if (this.stringBytes.length < length) {
+                this.stringBytes = new byte[Math.max(length, this.stringBytes.length * 2)];
+            }
+            payload.get(this.stringBytes, 0, length);
+            return new String(this.stringBytes, 0, length, charset);
+        }
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static long readZigZag(ByteBuffer buffer) {
+        long zigZag = readVarint(buffer);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
@@ -0,0 +1,317 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import com.illposed.osc.argument.OSCTimeTag64;
+import uk.co.mysterymayhem.vmcplayback.osc.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes recorded packets in the binary recording format, see {@link RecordingFormat}.
+ * <p>
+ * Not thread safe.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class BinaryRecordingEncoder {
+
+    private final OutputStream out;
+    private final RecordBuffer recordBuffer = new RecordBuffer(512);
+    private final RecordBuffer defineBuffer = new RecordBuffer(64);
+    private final Map<String, Integer> addressIds = new HashMap<>();
+    // Ids of addresses in this recording plus one, indexed by their id in the shared intern table, so that addresses
+    // that have been interned are looked up without hashing them. 0 means the address hasn't been defined yet
+    private int[] internedAddressIds = new int[0];
+    private final Map<String, Integer> typeTagsIds = new HashMap<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final VmcSampleCodec codec;
+    private long previousOffsetTime = 0;
+    private long nextKeyframeTime = Long.MIN_VALUE;
+    // Number of bytes written so far
+    private long position = 0;
+    private long packetCount = 0;
+    private long lastOffsetTime = 0;
+    // Offset times and positions of every keyframe written so far, for the time index
+    private long[] keyframeOffsetTimes = new long[64];
+    private long[] keyframePositions = new long[64];
+    private int keyframeCount = 0;
+
+    /**
+     * Create an encoder that compresses VMC messages losslessly and write the recording header.
+     *
+     * @param out stream to write to, the caller is responsible for buffering and closing it
+     */
+    public BinaryRecordingEncoder(OutputStream out) throws IOException {
+        this(out, VmcCodecSettings.LOSSLESS);
+    }
+
+    /**
+     * Create an encoder and write the recording header.
+     *
+     * @param out           stream to write to, the caller is responsible for buffering and closing it
+     * @param codecSettings how to compress VMC messages, or null to write them the same as any other message
+     */
+    public BinaryRecordingEncoder(OutputStream out, VmcCodecSettings codecSettings) throws IOException {
+        this.out = out;
+        out.write(RecordingFormat.MAGIC);
+        out.write(RecordingFormat.VERSION);
+        // No flags yet
+        out.write(0);
+        this.position = RecordingFormat.HEADER_LENGTH;
+        if (codecSettings != null) {
+            this.codec = new VmcSampleCodec(codecSettings);
+            RecordBuffer buffer = this.defineBuffer;
+            buffer.reset();
+            codecSettings.write(buffer);
+            this.writeRecord(RecordingFormat.RECORD_CODEC, buffer);
+        } else {
+            this.codec = null;
+        }
+    }
+
+    public void writePacket(RecordedPacket<?, ?> recordedPacket) throws IOException {
+        RecordedPacketData<?> packetData = recordedPacket.getPacketData();
+        long offsetTime = recordedPacket.getOffsetTime();
+        if (offsetTime >= this.nextKeyframeTime) {
+            this.writeKeyframe(offsetTime);
+        }
+        // Any new addresses, type tags or names need to be defined before the packet that uses them
+        this.defineAll(packetData);
+
+        RecordBuffer buffer = this.recordBuffer;
+        buffer.reset();
+        buffer.putZigZag(offsetTime - this.previousOffsetTime);
+        this.previousOffsetTime = offsetTime;
+        this.lastOffsetTime = offsetTime;
+        this.packetCount++;
+
+        byte recordType;
+        if (packetData instanceof RecordedMessage) {
+            recordType = RecordingFormat.RECORD_MESSAGE_PACKET;
+            this.putMessage((RecordedMessage) packetData);
+        } else if (packetData instanceof RecordedBundle) {
+            recordType = RecordingFormat.RECORD_BUNDLE_PACKET;
+            this.putBundle((RecordedBundle) packetData);
+        } else {
+            throw new IllegalArgumentException("Unsupported packet data " + packetData);
+        }
+        this.writeRecord(recordType, buffer);
+    }
+
+    /**
+     * Write the record that marks the recording as complete, followed by the time index. Nothing else should be written
+     * after this.
+     */
+    public void writeEnd() throws IOException {
+        long endPosition = this.position;
+        this.writeEmptyRecord(RecordingFormat.RECORD_END);
+
+        RecordBuffer buffer = this.recordBuffer;
+        buffer.reset();
+        buffer.putVarint(this.packetCount);
+        buffer.putZigZag(this.lastOffsetTime);
+        buffer.putVarint(endPosition);
+        buffer.putVarint(this.keyframeCount);
+        long previousKeyframeOffsetTime = 0;
+        long previousKeyframePosition = 0;
+        for (int i = 0; i < this.keyframeCount; i++) {
+            buffer.putZigZag(this.keyframeOffsetTimes[i] - previousKeyframeOffsetTime);
+            buffer.putVarint(this.keyframePositions[i] - previousKeyframePosition);
+            previousKeyframeOffsetTime = this.keyframeOffsetTimes[i];
+            previousKeyframePosition = this.keyframePositions[i];
+        }
+        long indexPosition = this.position;
+        this.writeRecord(RecordingFormat.RECORD_TIME_INDEX, buffer);
+
+        buffer.reset();
+        buffer.putLong(indexPosition);
+        buffer.putBytes(RecordingFormat.TIME_INDEX_MAGIC);
+        buffer.writeTo(this.out);
+        this.position += buffer.length();
+    }
+
+    /**
+     * Write a keyframe, after which everything is defined again and the next offset time delta is relative to 0.
+     *
+     * @param offsetTime offset time of the packet about to be written
+     */
+    private void writeKeyframe(long offsetTime) throws IOException {
+        if (this.keyframeCount == this.keyframePositions.length) {
+            this.keyframeOffsetTimes = Arrays.copyOf(this.keyframeOffsetTimes, this.keyframeCount * 2);
+            this.keyframePositions = Arrays.copyOf(this.keyframePositions, this.keyframeCount * 2);
+        }
+        this.keyframeOffsetTimes[this.keyframeCount] = offsetTime;
+        this.keyframePositions[this.keyframeCount] = this.position;
+        this.keyframeCount++;
+        this.writeEmptyRecord(RecordingFormat.RECORD_KEYFRAME);
+
+        if (this.codec != null) {
+            this.codec.reset();
+        }
+        this.addressIds.clear();
+        Arrays.fill(this.internedAddressIds, 0);
+        this.typeTagsIds.clear();
+        this.nameIds.clear();
+        this.previousOffsetTime = 0;
+        this.nextKeyframeTime = offsetTime + RecordingFormat.KEYFRAME_INTERVAL_NANOS;
+    }
+
+    private void writeEmptyRecord(byte recordType) throws IOException {
+        this.out.write(recordType);
+        RecordBuffer.writeVarint(this.out, 0);
+        this.position += 2;
+    }
+
+    private void writeRecord(byte recordType, RecordBuffer payload) throws IOException {
+        this.out.write(recordType);
+        RecordBuffer.writeVarint(this.out, payload.length());
+        payload.writeTo(this.out);
+        this.position += 1 + RecordBuffer.varintLength(payload.length()) + payload.length();
+    }
+
+    private void defineAll(RecordedPacketData<?> packetData) throws IOException {
+        if (packetData instanceof RecordedMessage) {
+            RecordedMessage message = (RecordedMessage) packetData;
+            String typeTags = message.getArgumentTypes().toString();
+            this.getAddressId(message);
+            this.define(this.typeTagsIds, typeTags, RecordingFormat.RECORD_DEFINE_TYPE_TAGS, StandardCharsets.US_ASCII);
+            if (this.codec != null && VmcSampleCodec.getChannelKind(message.getAddress(), typeTags) != VmcSampleCodec.CHANNEL_NONE) {
+                this.define(this.nameIds, (String) message.getArguments().get(0), RecordingFormat.RECORD_DEFINE_NAME, StandardCharsets.UTF_8);
+            }
+        } else if (packetData instanceof RecordedBundle) {
+            for (RecordedPacketData<?> element : ((RecordedBundle) packetData).getRecordedPacketData()) {
+                this.defineAll(element);
+            }
+        }
+    }
+
+    private int define(Map<String, Integer> ids, String value, byte recordType, Charset charset) throws IOException {
+        Integer existingId = ids.get(value);
+        if (existingId != null) {
+            return existingId;
+        }
+        int id = ids.size();
+        ids.put(value, id);
+        RecordBuffer buffer = this.defineBuffer;
+        buffer.reset();
+        buffer.putVarint(id);
+        buffer.putBytes(value.getBytes(charset));
+        this.writeRecord(recordType, buffer);
+        return id;
+    }
+
+    /**
+     * Get the id of a message's address in this recording, defining the address if this is the first time it's used.
+     */
+    private int getAddressId(RecordedMessage message) throws IOException {
+        int internId = message.getAddressId();
+        if (internId == OscInternTable.NO_ID) {
+            return this.define(this.addressIds, message.getAddress(), RecordingFormat.RECORD_DEFINE_ADDRESS, StandardCharsets.UTF_8);
+        }
+        int[] internedAddressIds = this.internedAddressIds;
+        if (internId >= internedAddressIds.length) {
+            int oldLength = internedAddressIds.length;
+            internedAddressIds = Arrays.copyOf(internedAddressIds, Math.max(internId + 1, oldLength * 2));
+            this.internedAddressIds = internedAddressIds;
+        }
+        int idPlusOne = internedAddressIds[internId];
+        if (idPlusOne == 0) {
+            idPlusOne = this.define(this.addressIds, message.getAddress(), RecordingFormat.RECORD_DEFINE_ADDRESS, StandardCharsets.UTF_8) + 1;
+            internedAddressIds[internId] = idPlusOne;
+        }
+        return idPlusOne - 1;
+    }
+
+    private void putElement(RecordedPacketData<?> element) throws IOException {
+        if (element instanceof RecordedMessage) {
+            this.recordBuffer.putByte(RecordingFormat.ELEMENT_MESSAGE);
+            this.putMessage((RecordedMessage) element);
+        } else if (element instanceof RecordedBundle) {
+            this.recordBuffer.putByte(RecordingFormat.ELEMENT_BUNDLE);
+            this.putBundle((RecordedBundle) element);
+        } else {
+            throw new IllegalArgumentException("Unsupported bundle element " + element);
+        }
+    }
+
+    private void putBundle(RecordedBundle bundle) throws IOException {
+        List<RecordedPacketData<?>> elements = bundle.getRecordedPacketData();
+        this.recordBuffer.putLong(bundle.getNtpTime());
+        this.recordBuffer.putVarint(elements.size());
+        for (RecordedPacketData<?> element : elements) {
+            this.putElement(element);
+        }
+    }
+
+    private void putMessage(RecordedMessage message) throws IOException {
+        RecordBuffer buffer = this.recordBuffer;
+        String typeTags = message.getArgumentTypes().toString();
+        List<Object> arguments = message.getArguments();
+        // Already defined by defineAll
+        buffer.putVarint(this.getAddressId(message));
+        buffer.putVarint(this.typeTagsIds.get(typeTags));
+
+        if (this.codec != null) {
+            int channelKind = VmcSampleCodec.getChannelKind(message.getAddress(), typeTags);
+            if (channelKind != VmcSampleCodec.CHANNEL_NONE) {
+                int nameId = this.nameIds.get((String) arguments.get(0));
+                buffer.putVarint(nameId);
+                this.codec.encode(channelKind, nameId, arguments, buffer);
+                return;
+            }
+        }
+
+        if (!RecordingFormat.isDirectlyEncodable(typeTags)) {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized)) {
+                objectOutputStream.writeObject(arguments.toArray());
+            }
+            buffer.putVarint(serialized.size());
+            buffer.putBytes(serialized.toByteArray());
+            return;
+        }
+
+        if (arguments.size() != typeTags.length()) {
+            throw new IllegalArgumentException("Argument count of " + message + " does not match its type tags");
+        }
+        for (int i = 0; i < typeTags.length(); i++) {
+            Object argument = arguments.get(i);
+            switch (typeTags.charAt(i)) {
+                case 'i':
+                    buffer.putInt((Integer) argument);
+                    break;
+                case 'f':
+                    buffer.putInt(Float.floatToRawIntBits((Float) argument));
+                    break;
+                case 'h':
+                    buffer.putLong((Long) argument);
+                    break;
+                case 'd':
+                    buffer.putLong(Double.doubleToRawLongBits((Double) argument));
+                    break;
+                case 't':
+                    buffer.putLong(((OSCTimeTag64) argument).getNtpTime());
+                    break;
+                case 's':
+                    byte[] stringBytes = argument.toString().getBytes(StandardCharsets.UTF_8);
+                    buffer.putVarint(stringBytes.length);
+                    buffer.putBytes(stringBytes);
+                    break;
+                case 'c':
+                    buffer.putShort((Character) argument);
+                    break;
+                default:
+                    // 'T', 'F' and 'N' have no data, their value is implied by the type tag
+                    break;
+            }
+        }
+    }
+}
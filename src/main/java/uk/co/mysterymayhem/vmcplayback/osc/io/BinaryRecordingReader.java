@@ -0,0 +1,78 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads recorded packets, one at a time, from a stream in the binary recording format, see {@link RecordingFormat}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class BinaryRecordingReader implements Closeable {
+
+    private final DataInputStream in;
+    private final BinaryRecordingDecoder decoder;
+    private byte[] payloadBytes = new byte[512];
+    private boolean ended = false;
+
+    /**
+     * Create a reader and read the recording header.
+     *
+     * @param in stream positioned at the start of the header, the caller is responsible for buffering it
+     */
+    public BinaryRecordingReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        byte[] header = new byte[RecordingFormat.HEADER_LENGTH];
+        this.in.readFully(header);
+        this.decoder = new BinaryRecordingDecoder(BinaryRecordingDecoder.readHeader(ByteBuffer.wrap(header)));
+    }
+
+    /**
+     * Read the next packet.
+     *
+     * @return the next packet, or null once the end of the recording has been reached
+     * @throws EOFException if the recording was cut off before its end
+     */
+    public RecordedPacket<?, ?> readPacket() throws IOException {
+        while (!this.ended) {
+            int recordType = this.in.read();
+            if (recordType == -1) {
+                throw new EOFException("Recording ended without an end record");
+            }
+            int payloadLength = (int) this.readVarint();
+            if (this.payloadBytes.length < payloadLength) {
+                this.payloadBytes = new byte[Math.max(payloadLength, this.payloadBytes.length * 2)];
+            }
+            this.in.readFully(this.payloadBytes, 0, payloadLength);
+
+            if (recordType == RecordingFormat.RECORD_END) {
+                this.ended = true;
+            } else {
+                RecordedPacket<?, ?> packet = this.decoder.decode((byte) recordType, ByteBuffer.wrap(this.payloadBytes, 0, payloadLength));
+                if (packet != null) {
+                    return packet;
+                }
+            }
+        }
+        return null;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = this.in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
@@ -0,0 +1,371 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A recording in the chunked recording format, see {@link ChunkedRecordingFormat}.
+ * <p>
+ * Opening a chunked recording only reads its chunk table. Reading the packets decompresses, decodes and filters every
+ * chunk in parallel on a {@link ForkJoinPool}, then joins the chunks back together in order. When reading a range of
+ * offset times, the chunk table is used as a time index, so only the chunks that overlap the range are read.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class ChunkedRecording implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedRecording.class);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Chunk[] chunks;
+
+    public ChunkedRecording(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = this.read(0, ChunkedRecordingFormat.HEADER_LENGTH);
+            byte[] magic = new byte[ChunkedRecordingFormat.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, ChunkedRecordingFormat.MAGIC)) {
+                throw new StreamCorruptedException("Not a chunked recording, invalid header");
+            }
+            int version = header.get() & 0xFF;
+            if (version != ChunkedRecordingFormat.VERSION) {
+                throw new IOException("Unsupported chunked recording version " + version);
+            }
+            Chunk[] chunks = this.readChunkTable();
+            if (chunks == null) {
+                chunks = this.scanChunks();
+            }
+            this.chunks = chunks;
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check if a file is a recording in the chunked recording format.
+     *
+     * @param path file to check
+     * @return true if the file can be opened as a ChunkedRecording
+     */
+    public static boolean isChunked(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(ChunkedRecordingFormat.MAGIC.length);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) == -1) {
+                    return false;
+                }
+            }
+            magic.flip();
+            return magic.equals(ByteBuffer.wrap(ChunkedRecordingFormat.MAGIC));
+        }
+    }
+
+    public int getChunkCount() {
+        return this.chunks.length;
+    }
+
+    public long getPacketCount() {
+        long packetCount = 0;
+        for (Chunk chunk : this.chunks) {
+            packetCount += chunk.packetCount;
+        }
+        return packetCount;
+    }
+
+    /**
+     * Read every packet, using a pool with as many threads as there are available processors.
+     *
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message. Called from
+     *                        multiple threads at once
+     * @return the recorded packets that still have at least one message, in order
+     */
+    public List<RecordedPacket<?, ?>> readPackets(Predicate<RecordedMessage> messageSelector) throws IOException {
+        return this.readPackets(messageSelector, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read the packets within a range of offset times, using a pool with as many threads as there are available
+     * processors.
+     *
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message. Called from
+     *                        multiple threads at once
+     * @param fromNanos       offset time in nanoseconds of the start of the range
+     * @param toNanos         offset time in nanoseconds of the end of the range (inclusive)
+     * @return the recorded packets in the range that still have at least one message, in order
+     */
+    public List<RecordedPacket<?, ?>> readPackets(Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return this.readPackets(messageSelector, fromNanos, toNanos, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Read the packets within a range of offset times, decoding the chunks that overlap the range in parallel.
+     *
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message. Called from
+     *                        multiple threads at once
+     * @param fromNanos       offset time in nanoseconds of the start of the range
+     * @param toNanos         offset time in nanoseconds of the end of the range (inclusive)
+     * @param pool            pool to decode the chunks on
+     * @return the recorded packets in the range that still have at least one message, in order
+     */
+    public List<RecordedPacket<?, ?>> readPackets(Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos, ForkJoinPool pool) throws IOException {
+        List<Chunk> overlapping = new ArrayList<>();
+        for (Chunk chunk : this.chunks) {
+            if (chunk.lastOffsetTime >= fromNanos && chunk.firstOffsetTime <= toNanos) {
+                overlapping.add(chunk);
+            }
+        }
+        Chunk[] chunks = overlapping.toArray(new Chunk[0]);
+        List<RecordedPacket<?, ?>>[] decodedChunks = newListArray(chunks.length);
+        try {
+            pool.invoke(new DecodeChunks(chunks, decodedChunks, messageSelector, fromNanos, toNanos, 0, chunks.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int packetCount = 0;
+        for (List<RecordedPacket<?, ?>> decodedChunk : decodedChunks) {
+            packetCount += decodedChunk.size();
+        }
+        List<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>(packetCount);
+        for (List<RecordedPacket<?, ?>> decodedChunk : decodedChunks) {
+            recordedPackets.addAll(decodedChunk);
+        }
+        return recordedPackets;
+    }
+
+    /**
+     * Read the packets within a range of offset times, decoding the chunks that overlap the range one at a time in
+     * order and passing on each chunk's packets as soon as it has been decoded.
+     *
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message
+     * @param fromNanos       offset time in nanoseconds of the start of the range
+     * @param toNanos         offset time in nanoseconds of the end of the range (inclusive)
+     * @param packetSink      consumer to pass the recorded packets in the range that still have at least one message to,
+     *                        in order
+     */
+    public void readPackets(Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        for (Chunk chunk : this.chunks) {
+            if (chunk.lastOffsetTime >= fromNanos && chunk.firstOffsetTime <= toNanos) {
+                this.decodeChunk(chunk, messageSelector, fromNanos, toNanos).forEach(packetSink);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * @return the chunks listed in the chunk table, or null if there's no trailer because the recording got cut off
+     */
+    private Chunk[] readChunkTable() throws IOException {
+        long size = this.channel.size();
+        if (size < ChunkedRecordingFormat.HEADER_LENGTH + ChunkedRecordingFormat.TRAILER_LENGTH) {
+            return null;
+        }
+        ByteBuffer trailer = this.read(size - ChunkedRecordingFormat.TRAILER_LENGTH, ChunkedRecordingFormat.TRAILER_LENGTH);
+        long tableOffset = trailer.getLong();
+        int chunkCount = trailer.getInt();
+        byte[] trailerMagic = new byte[ChunkedRecordingFormat.TRAILER_MAGIC.length];
+        trailer.get(trailerMagic);
+        long tableLength = (long) chunkCount * ChunkedRecordingFormat.CHUNK_TABLE_ENTRY_LENGTH;
+        if (!Arrays.equals(trailerMagic, ChunkedRecordingFormat.TRAILER_MAGIC) || chunkCount < 0
+                || tableOffset + tableLength != size - ChunkedRecordingFormat.TRAILER_LENGTH) {
+            return null;
+        }
+        ByteBuffer table = this.read(tableOffset, (int) tableLength);
+        Chunk[] chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long position = table.getLong();
+            chunks[i] = new Chunk(position, table);
+        }
+        return chunks;
+    }
+
+    /**
+     * Find every complete chunk by following the chunk headers from the start of the file.
+     */
+    private Chunk[] scanChunks() throws IOException {
+        long size = this.channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        long position = ChunkedRecordingFormat.HEADER_LENGTH;
+        long packetCount = 0;
+        while (position + ChunkedRecordingFormat.CHUNK_HEADER_LENGTH <= size) {
+            Chunk chunk = new Chunk(position, this.read(position, ChunkedRecordingFormat.CHUNK_HEADER_LENGTH));
+            if (chunk.compressedLength <= 0 || chunk.dataPosition() + chunk.compressedLength > size) {
+                break;
+            }
+            chunks.add(chunk);
+            packetCount += chunk.packetCount;
+            position = chunk.dataPosition() + chunk.compressedLength;
+        }
+        LOG.warn("Recording '{}' appears to have been cut off, loading the {} packets in the {} complete chunks", this.path, packetCount, chunks.size());
+        return chunks.toArray(new Chunk[0]);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            // Positional reads can be made from multiple threads at once
+            if (this.channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Recording ended part way through a chunk");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private List<RecordedPacket<?, ?>> decodeChunk(Chunk chunk, Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos) throws IOException {
+        ByteBuffer compressed = this.read(chunk.dataPosition(), chunk.compressedLength);
+        byte[] decompressed = new byte[chunk.uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, chunk.compressedLength);
+            int length = 0;
+            while (length < decompressed.length && !inflater.finished()) {
+                int inflated = inflater.inflate(decompressed, length, decompressed.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != decompressed.length) {
+                throw new IOException("Chunk at " + chunk.position + " in '" + this.path + "' is shorter than its header says");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Chunk at " + chunk.position + " in '" + this.path + "' is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(decompressed);
+        BinaryRecordingDecoder decoder = new BinaryRecordingDecoder(BinaryRecordingDecoder.readHeader(buffer));
+        List<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>(chunk.packetCount);
+        try {
+            while (true) {
+                byte recordType = buffer.get();
+                int payloadLength = (int) BinaryRecordingDecoder.readVarint(buffer);
+                if (recordType == RecordingFormat.RECORD_END) {
+                    return recordedPackets;
+                }
+                int payloadEnd = buffer.position() + payloadLength;
+                buffer.limit(payloadEnd);
+                RecordedPacket<?, ?> recordedPacket = decoder.decode(recordType, buffer);
+                buffer.limit(buffer.capacity());
+                buffer.position(payloadEnd);
+                if (recordedPacket != null && (recordedPacket.getOffsetTime() < fromNanos || recordedPacket.getOffsetTime() > toNanos)) {
+                    continue;
+                }
+                if (recordedPacket != null && messageSelector != null) {
+                    recordedPacket = recordedPacket.filter(messageSelector);
+                }
+                if (recordedPacket != null) {
+                    recordedPackets.add(recordedPacket);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Chunk at " + chunk.position + " in '" + this.path + "' ended without an end record", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<RecordedPacket<?, ?>>[] newListArray(int length) {
+        return (List<RecordedPacket<?, ?>>[]) new List<?>[length];
+    }
+
+    private static final class Chunk {
+        // Position of the chunk header
+        private final long position;
+        private final int compressedLength;
+        private final int uncompressedLength;
+        private final int packetCount;
+        private final long firstOffsetTime;
+        private final long lastOffsetTime;
+
+        /**
+         * @param position    position of the chunk header in the file
+         * @param chunkHeader buffer positioned at the start of a chunk header
+         */
+        Chunk(long position, ByteBuffer chunkHeader) {
+            this.position = position;
+            this.compressedLength = chunkHeader.getInt();
+            this.uncompressedLength = chunkHeader.getInt();
+            this.packetCount = chunkHeader.getInt();
+            this.firstOffsetTime = chunkHeader.getLong();
+            this.lastOffsetTime = chunkHeader.getLong();
+        }
+
+        long dataPosition() {
+            return this.position + ChunkedRecordingFormat.CHUNK_HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Decodes a range of chunks, splitting the range in half until there's a single chunk to decode.
+     */
+    private class DecodeChunks extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final List<RecordedPacket<?, ?>>[] decodedChunks;
+        private final Predicate<RecordedMessage> messageSelector;
+        private final long fromNanos;
+        private final long toNanos;
+        private final int from;
+        private final int to;
+
+        DecodeChunks(Chunk[] chunks, List<RecordedPacket<?, ?>>[] decodedChunks, Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos, int from, int to) {
+            this.chunks = chunks;
+            this.decodedChunks = decodedChunks;
+            this.messageSelector = messageSelector;
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new DecodeChunks(this.chunks, this.decodedChunks, this.messageSelector, this.fromNanos, this.toNanos, this.from, middle),
+                        new DecodeChunks(this.chunks, this.decodedChunks, this.messageSelector, this.fromNanos, this.toNanos, middle, this.to));
+            } else if (this.to > this.from) {
+                try {
+                    this.decodedChunks[this.from] = ChunkedRecording.this.decodeChunk(this.chunks[this.from], this.messageSelector, this.fromNanos, this.toNanos);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
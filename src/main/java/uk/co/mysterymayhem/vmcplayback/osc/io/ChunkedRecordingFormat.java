@@ -0,0 +1,56 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constants describing the chunked recording format, the format compressed recordings are written in.
+ * <p>
+ * A chunked recording starts with a header of {@link #MAGIC}, followed by a version byte and a flags byte. After the
+ * header comes a sequence of chunks. Each chunk is a complete recording in the binary recording format, see
+ * {@link RecordingFormat}, compressed by itself with DEFLATE. Because every chunk has its own addresses, type tags and
+ * names defined and starts from a keyframe, chunks can be decompressed and decoded independently of each other, and so
+ * in parallel. Offset times in a chunk are not rebased, so the first packet of each chunk has the same offset time as it
+ * does in the recording as a whole.
+ * <p>
+ * Each chunk starts with a chunk header of:
+ * <ol>
+ * <li>int length of the compressed chunk</li>
+ * <li>int length of the chunk once decompressed</li>
+ * <li>int number of packets in the chunk</li>
+ * <li>long offset time of the first packet in the chunk</li>
+ * <li>long offset time of the last packet in the chunk</li>
+ * </ol>
+ * followed by the compressed chunk itself.
+ * <p>
+ * After the last chunk comes the chunk table, which has an entry for each chunk made up of the long position of the
+ * chunk's header in the file followed by a copy of the chunk header. The file ends with a trailer of the long position
+ * of the chunk table, the int number of chunks and then {@link #TRAILER_MAGIC}. A recording that got cut off has no
+ * trailer, in which case the chunk headers can be followed from the start of the file instead to find every complete
+ * chunk.
+ * <p>
+ * Numbers are big-endian.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class ChunkedRecordingFormat {
+    public static final byte[] MAGIC = "EMVMCCHK".getBytes(StandardCharsets.US_ASCII);
+    public static final byte[] TRAILER_MAGIC = "EMVMCIDX".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = MAGIC.length + 2;
+    public static final int CHUNK_HEADER_LENGTH = 4 + 4 + 4 + 8 + 8;
+    public static final int CHUNK_TABLE_ENTRY_LENGTH = 8 + CHUNK_HEADER_LENGTH;
+    public static final int TRAILER_LENGTH = 8 + 4 + TRAILER_MAGIC.length;
+
+    /**
+     * A chunk is finished once it reaches this size before being compressed.
+     */
+    public static final int TARGET_CHUNK_SIZE = 4 << 20;
+    /**
+     * A chunk is finished once it covers this length of time, so that little is lost if a recording gets cut off.
+     */
+    public static final long MAX_CHUNK_DURATION_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private ChunkedRecordingFormat() {
+    }
+}
@@ -0,0 +1,160 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a recording in the chunked recording format, see {@link ChunkedRecordingFormat}.
+ * <p>
+ * Packets are encoded into an in-memory chunk, which is compressed and written out once it's large enough or covers
+ * enough time. The chunk table and trailer are written when the writer is closed.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class ChunkedRecordingWriter implements Closeable {
+
+    private final OutputStream out;
+    private final VmcCodecSettings codecSettings;
+    private final ChunkBuffer chunkBuffer = new ChunkBuffer();
+    private final Deflater deflater = new Deflater();
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(ChunkedRecordingFormat.CHUNK_TABLE_ENTRY_LENGTH);
+    // Chunk table entries of every chunk written so far
+    private final List<byte[]> chunkTable = new ArrayList<>();
+    private byte[] compressed = new byte[1 << 16];
+    private long position;
+    private boolean closed = false;
+
+    // The chunk currently being encoded, encoder is null when there isn't one
+    private BinaryRecordingEncoder encoder = null;
+    private int chunkPacketCount;
+    private long chunkFirstOffsetTime;
+    private long chunkLastOffsetTime;
+
+    /**
+     * Create a writer and write the recording header.
+     *
+     * @param out           stream to write to, the caller is responsible for buffering it
+     * @param codecSettings how to compress VMC messages, or null to write them the same as any other message
+     */
+    public ChunkedRecordingWriter(OutputStream out, VmcCodecSettings codecSettings) throws IOException {
+        this.out = out;
+        this.codecSettings = codecSettings;
+        out.write(ChunkedRecordingFormat.MAGIC);
+        out.write(ChunkedRecordingFormat.VERSION);
+        // No flags yet
+        out.write(0);
+        this.position = ChunkedRecordingFormat.HEADER_LENGTH;
+    }
+
+    public void writePacket(RecordedPacket<?, ?> recordedPacket) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("Writer has been closed");
+        }
+        long offsetTime = recordedPacket.getOffsetTime();
+        if (this.encoder != null && offsetTime - this.chunkFirstOffsetTime >= ChunkedRecordingFormat.MAX_CHUNK_DURATION_NANOS) {
+            this.finishChunk();
+        }
+        if (this.encoder == null) {
+            this.chunkBuffer.reset();
+            this.encoder = new BinaryRecordingEncoder(this.chunkBuffer, this.codecSettings);
+            this.chunkPacketCount = 0;
+            this.chunkFirstOffsetTime = offsetTime;
+        }
+        this.encoder.writePacket(recordedPacket);
+        this.chunkPacketCount++;
+        this.chunkLastOffsetTime = offsetTime;
+        if (this.chunkBuffer.size() >= ChunkedRecordingFormat.TARGET_CHUNK_SIZE) {
+            this.finishChunk();
+        }
+    }
+
+    /**
+     * Compress and write out the chunk currently being encoded, if there is one.
+     */
+    public void finishChunk() throws IOException {
+        if (this.encoder == null) {
+            return;
+        }
+        this.encoder.writeEnd();
+        this.encoder = null;
+
+        Deflater deflater = this.deflater;
+        deflater.reset();
+        deflater.setInput(this.chunkBuffer.array(), 0, this.chunkBuffer.size());
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == this.compressed.length) {
+                byte[] larger = new byte[this.compressed.length * 2];
+                System.arraycopy(this.compressed, 0, larger, 0, compressedLength);
+                this.compressed = larger;
+            }
+            compressedLength += deflater.deflate(this.compressed, compressedLength, this.compressed.length - compressedLength);
+        }
+
+        ByteBuffer entry = this.chunkHeader;
+        entry.clear();
+        entry.putLong(this.position);
+        entry.putInt(compressedLength);
+        entry.putInt(this.chunkBuffer.size());
+        entry.putInt(this.chunkPacketCount);
+        entry.putLong(this.chunkFirstOffsetTime);
+        entry.putLong(this.chunkLastOffsetTime);
+        this.chunkTable.add(entry.array().clone());
+
+        // The chunk header is the table entry without the position
+        this.out.write(entry.array(), 8, ChunkedRecordingFormat.CHUNK_HEADER_LENGTH);
+        this.out.write(this.compressed, 0, compressedLength);
+        this.position += ChunkedRecordingFormat.CHUNK_HEADER_LENGTH + compressedLength;
+    }
+
+    /**
+     * Write the last chunk, the chunk table and the trailer, then close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            this.finishChunk();
+            for (byte[] entry : this.chunkTable) {
+                this.out.write(entry);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(ChunkedRecordingFormat.TRAILER_LENGTH);
+            trailer.putLong(this.position);
+            trailer.putInt(this.chunkTable.size());
+            trailer.put(ChunkedRecordingFormat.TRAILER_MAGIC);
+            this.out.write(trailer.array());
+        } finally {
+            this.closed = true;
+            this.deflater.end();
+            this.out.close();
+        }
+    }
+
+    /**
+     * @return number of bytes written to the stream so far, not including the chunk table and trailer
+     */
+    public long getPosition() {
+        return this.position;
+    }
+
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+        ChunkBuffer() {
+            super(ChunkedRecordingFormat.TARGET_CHUNK_SIZE + (1 << 16));
+        }
+
+        byte[] array() {
+            return this.buf;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.AddressFilter;
+import uk.co.mysterymayhem.vmcplayback.osc.DatagramPrefilter;
+import uk.co.mysterymayhem.vmcplayback.osc.PlaybackTarget;
+import uk.co.mysterymayhem.vmcplayback.osc.SpscRingBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Forwards OSC datagrams to playback targets as soon as they're received, optionally recording them at the same time.
+ * <p>
+ * Datagrams are never parsed into OSC packets. A single thread receives each datagram into a reused buffer, removes the
+ * messages rejected by the filter directly from its bytes, see {@link DatagramPrefilter}, and sends the remaining bytes
+ * to every target. Targets can have their own {@link AddressFilter}, applied to the bytes in the same way.
+ * <p>
+ * The time from a datagram being received to it having been sent to every target is measured, and reported
+ * periodically and in total.
+ * <p>
+ * When recording, the forwarded datagrams are copied into an in-memory buffer in the raw capture format, see
+ * {@link RawCaptureFormat}. Full buffers are handed over to a background thread that writes them to file, so the
+ * relaying thread never waits on the disk. If writing falls so far behind that there's no empty buffer to switch to,
+ * datagrams stop being recorded, and are counted, until one is free, they're still relayed.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class DatagramRelay implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DatagramRelay.class);
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int RECORD_BUFFER_SIZE = 1 << 20;
+    private static final int RECORD_BUFFER_COUNT = 8;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Varint time delta and varint datagram length
+    private static final int MAX_RECORD_HEADER_LENGTH = 10 + 5;
+
+    private final DatagramChannel receiveChannel;
+    private final DatagramChannel sendChannel;
+    // Filter applied to every datagram, null to relay every message
+    private final DatagramPrefilter prefilter;
+    private final TargetGroup[] groups;
+    private final Thread relayThread;
+    // Null when not recording
+    private final Recorder recorder;
+    private long startTimeNanos;
+
+    // Only written by the relay thread
+    private volatile long datagramCount = 0;
+    private volatile long droppedDatagramCount = 0;
+    private volatile long totalLatencyNanos = 0;
+    private volatile long maxLatencyNanos = 0;
+
+    /**
+     * Bind to the receiving address and, if recording, create the capture file and write its header.
+     *
+     * @param socketAddress address to receive datagrams on
+     * @param messageFilter filter applied to every datagram, or null to relay every message
+     * @param targets       targets to relay to, any target filters must be AddressFilters
+     * @param recordPath    file to record the relayed datagrams to, or null to not record
+     */
+    public DatagramRelay(SocketAddress socketAddress, AddressFilter messageFilter, List<PlaybackTarget> targets, Path recordPath) throws IOException {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one target to relay to");
+        }
+        // Messages that need their arguments checking are decided by parsing just those messages, since the datagram
+        // isn't parsed afterwards
+        this.prefilter = messageFilter == null ? null : new DatagramPrefilter(messageFilter, RawCaptureFormat.MAX_DATAGRAM_SIZE, true);
+        this.groups = groupTargets(targets);
+        this.recorder = recordPath == null ? null : new Recorder(recordPath);
+        try {
+            this.receiveChannel = DatagramChannel.open().bind(socketAddress);
+            this.sendChannel = DatagramChannel.open();
+        } catch (IOException e) {
+            if (this.recorder != null) {
+                this.recorder.fileChannel.close();
+            }
+            throw e;
+        }
+        this.relayThread = new Thread(this::relayLoop, "DatagramRelay");
+    }
+
+    private static TargetGroup[] groupTargets(List<PlaybackTarget> targets) {
+        // Targets with the same filter instance share the filtered bytes
+        Map<Predicate<?>, TargetGroup> groupsByFilter = new IdentityHashMap<>();
+        List<TargetGroup> groups = new ArrayList<>();
+        TargetGroup unfiltered = null;
+        for (PlaybackTarget target : targets) {
+            Predicate<?> filter = target.getMessageFilter();
+            TargetGroup group;
+            if (filter == null) {
+                if (unfiltered == null) {
+                    unfiltered = new TargetGroup(null);
+                    groups.add(unfiltered);
+                }
+                group = unfiltered;
+            } else if (filter instanceof AddressFilter) {
+                group = groupsByFilter.get(filter);
+                if (group == null) {
+                    group = new TargetGroup(new DatagramPrefilter((AddressFilter) filter, RawCaptureFormat.MAX_DATAGRAM_SIZE, true));
+                    groupsByFilter.put(filter, group);
+                    groups.add(group);
+                }
+            } else {
+                throw new IllegalArgumentException("Relay target filters must be AddressFilters, but " + target + " has " + filter);
+            }
+            group.targets.add(target);
+        }
+        return groups.toArray(new TargetGroup[0]);
+    }
+
+    /**
+     * Start relaying. Recorded offset times are measured from when this is called.
+     */
+    public void start() {
+        this.startTimeNanos = System.nanoTime();
+        if (this.recorder != null) {
+            this.recorder.start(this.startTimeNanos);
+        }
+        this.relayThread.start();
+    }
+
+    /**
+     * Stop relaying and, if recording, wait for everything relayed to be written and close the file.
+     *
+     * @throws IOException if writing the recording failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // Unblocks the relay thread
+            this.receiveChannel.close();
+            try {
+                this.relayThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for relaying to stop", e);
+            }
+        } finally {
+            this.sendChannel.close();
+            if (this.recorder != null) {
+                this.recorder.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of datagrams received
+     */
+    public long getDatagramCount() {
+        return this.datagramCount;
+    }
+
+    /**
+     * @return the number of datagrams that weren't relayed because every message was filtered out
+     */
+    public long getDroppedDatagramCount() {
+        return this.droppedDatagramCount;
+    }
+
+    /**
+     * @return mean time in microseconds from a datagram being received to it having been sent to every target
+     */
+    public double getMeanLatencyMicros() {
+        long relayed = this.datagramCount - this.droppedDatagramCount;
+        return relayed == 0 ? 0 : this.totalLatencyNanos / (double) relayed / 1000;
+    }
+
+    /**
+     * @return greatest time in microseconds from a datagram being received to it having been sent to every target
+     */
+    public double getMaxLatencyMicros() {
+        return this.maxLatencyNanos / 1000.0;
+    }
+
+    /**
+     * @return the number of datagrams relayed but not recorded because writing the recording fell behind
+     */
+    public long getUnrecordedDatagramCount() {
+        return this.recorder == null ? 0 : this.recorder.unrecordedCount;
+    }
+
+    /**
+     * @return the number of datagrams recorded
+     */
+    public long getRecordedDatagramCount() {
+        return this.recorder == null ? 0 : this.recorder.recordedCount;
+    }
+
+    private void relayLoop() {
+        ByteBuffer datagram = ByteBuffer.allocateDirect(RawCaptureFormat.MAX_DATAGRAM_SIZE);
+        long nextReport = this.startTimeNanos + REPORT_INTERVAL_NANOS;
+        long intervalCount = 0;
+        long intervalLatencyNanos = 0;
+        long intervalMaxLatencyNanos = 0;
+        try {
+            while (true) {
+                datagram.clear();
+                this.receiveChannel.receive(datagram);
+                long timeReceived = System.nanoTime();
+                datagram.flip();
+                // Single writer, so the non-atomic increments are fine
+                this.datagramCount++;
+
+                ByteBuffer kept = this.prefilter == null ? datagram : this.prefilter.prefilter(datagram);
+                if (kept == null) {
+                    this.droppedDatagramCount++;
+                    continue;
+                }
+                for (TargetGroup group : this.groups) {
+                    group.send(this.sendChannel, kept);
+                }
+                long timeSent = System.nanoTime();
+
+                long latency = timeSent - timeReceived;
+                this.totalLatencyNanos += latency;
+                if (latency > this.maxLatencyNanos) {
+                    this.maxLatencyNanos = latency;
+                }
+                intervalCount++;
+                intervalLatencyNanos += latency;
+                intervalMaxLatencyNanos = Math.max(intervalMaxLatencyNanos, latency);
+
+                // Recording happens after sending, so it doesn't add to the latency
+                if (this.recorder != null) {
+                    this.recorder.record(kept, timeReceived);
+                }
+
+                if (timeSent >= nextReport) {
+                    LOG.info("Relayed {} datagrams in the last {}s, added latency mean {}us, max {}us",
+                            intervalCount, TimeUnit.NANOSECONDS.toSeconds(REPORT_INTERVAL_NANOS),
+                            intervalLatencyNanos / intervalCount / 1000, intervalMaxLatencyNanos / 1000);
+                    intervalCount = 0;
+                    intervalLatencyNanos = 0;
+                    intervalMaxLatencyNanos = 0;
+                    nextReport = timeSent + REPORT_INTERVAL_NANOS;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by close()
+        } catch (IOException e) {
+            LOG.error("Failed to receive datagram, no longer relaying", e);
+        }
+    }
+
+    /**
+     * Targets that are sent the same bytes.
+     */
+    private static final class TargetGroup {
+        // Null if the targets get every relayed message
+        final DatagramPrefilter prefilter;
+        final List<PlaybackTarget> targets = new ArrayList<>();
+
+        TargetGroup(DatagramPrefilter prefilter) {
+            this.prefilter = prefilter;
+        }
+
+        void send(DatagramChannel channel, ByteBuffer datagram) {
+            ByteBuffer bytes = this.prefilter == null ? datagram : this.prefilter.prefilter(datagram);
+            if (bytes == null) {
+                return;
+            }
+            for (int i = 0; i < this.targets.size(); i++) {
+                this.targets.get(i).send(channel, bytes);
+            }
+        }
+    }
+
+    /**
+     * Records relayed datagrams in the raw capture format, writing to file on its own thread.
+     */
+    private static final class Recorder {
+        private final FileChannel fileChannel;
+        // Full buffers waiting to be written
+        private final SpscRingBuffer<ByteBuffer> fullBuffers = new SpscRingBuffer<>(RECORD_BUFFER_COUNT);
+        // Written buffers that can be filled again
+        private final SpscRingBuffer<ByteBuffer> emptyBuffers = new SpscRingBuffer<>(RECORD_BUFFER_COUNT);
+        private final Thread writeThread;
+        private volatile boolean stopping = false;
+        private volatile IOException writeException = null;
+
+        // Only accessed by the relay thread
+        private ByteBuffer current;
+        private long previousTimeReceived;
+        private long lastHandOverTime;
+        private volatile long recordedCount = 0;
+        private volatile long unrecordedCount = 0;
+
+        Recorder(Path path) throws IOException {
+            this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            for (int i = 1; i < RECORD_BUFFER_COUNT; i++) {
+                this.emptyBuffers.offer(ByteBuffer.allocateDirect(RECORD_BUFFER_SIZE), 0);
+            }
+            this.current = ByteBuffer.allocateDirect(RECORD_BUFFER_SIZE);
+            this.current.put(RawCaptureFormat.MAGIC);
+            this.current.put((byte) RawCaptureFormat.VERSION);
+            // No flags yet
+            this.current.put((byte) 0);
+            this.writeThread = new Thread(this::writeLoop, "DatagramRelayRecorder");
+        }
+
+        void start(long startTimeNanos) {
+            this.previousTimeReceived = startTimeNanos;
+            this.lastHandOverTime = startTimeNanos;
+            this.writeThread.start();
+        }
+
+        /**
+         * Relay thread only.
+         */
+        void record(ByteBuffer datagram, long timeReceived) {
+            int length = datagram.remaining();
+            ByteBuffer current = this.current;
+            if (current != null && (current.remaining() < MAX_RECORD_HEADER_LENGTH + length || timeReceived - this.lastHandOverTime >= FLUSH_INTERVAL_NANOS)) {
+                this.handOver(timeReceived);
+                current = this.current;
+            }
+            if (current == null) {
+                current = this.takeEmptyBuffer();
+                if (current == null) {
+                    // Writing has fallen behind, the time since the last recorded datagram keeps counting so later
+                    // datagrams still have the right offset times
+                    this.unrecordedCount++;
+                    return;
+                }
+            }
+            int position = datagram.position();
+            RecordBuffer.putVarint(current, timeReceived - this.previousTimeReceived);
+            RecordBuffer.putVarint(current, length);
+            current.put(datagram);
+            datagram.position(position);
+            this.previousTimeReceived = timeReceived;
+            this.recordedCount++;
+        }
+
+        private void handOver(long now) {
+            ByteBuffer current = this.current;
+            this.current = null;
+            this.lastHandOverTime = now;
+            if (current.position() > 0) {
+                // Can't fail, there are never more buffers than the ring buffer can hold
+                this.fullBuffers.offer(current, 0);
+                LockSupport.unpark(this.writeThread);
+            } else {
+                this.current = current;
+            }
+        }
+
+        private ByteBuffer takeEmptyBuffer() {
+            ByteBuffer[] taken = new ByteBuffer[1];
+            if (this.emptyBuffers.drain((buffer, timestamp) -> taken[0] = buffer, 1) == 0) {
+                return null;
+            }
+            this.current = taken[0];
+            return taken[0];
+        }
+
+        void close() throws IOException {
+            try {
+                if (this.current != null && this.current.position() > 0) {
+                    this.fullBuffers.offer(this.current, 0);
+                    this.current = null;
+                }
+                this.stopping = true;
+                LockSupport.unpark(this.writeThread);
+                try {
+                    this.writeThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the recording to finish being written", e);
+                }
+            } finally {
+                this.fileChannel.close();
+            }
+            IOException writeException = this.writeException;
+            if (writeException != null) {
+                throw writeException;
+            }
+        }
+
+        private void writeLoop() {
+            SpscRingBuffer.Handler<ByteBuffer> writer = (buffer, timestamp) -> {
+                if (this.writeException == null) {
+                    buffer.flip();
+                    try {
+                        while (buffer.hasRemaining()) {
+                            this.fileChannel.write(buffer);
+                        }
+                    } catch (IOException e) {
+                        this.writeException = e;
+                        LOG.error("Failed to write the recording, the rest of the relayed datagrams won't be recorded", e);
+                    }
+                }
+                buffer.clear();
+                this.emptyBuffers.offer(buffer, 0);
+            };
+            while (true) {
+                // Read before draining so that anything handed over before stopping still gets written
+                boolean stopping = this.stopping;
+                if (this.fullBuffers.drain(writer, RECORD_BUFFER_COUNT) == 0) {
+                    if (stopping) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.PacketCursor;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An uncompressed recording in the binary recording format that's memory mapped instead of being read into the heap.
+ * Packets are decoded as they're needed by walking through the file with a {@link PacketCursor}, so memory use is
+ * bounded by the OS page cache rather than by the size of the recording.
+ * <p>
+ * Files larger than can be mapped in one go are mapped in windows, with a new window being mapped whenever the next
+ * record doesn't fit in the current one.
+ * <p>
+ * Complete recordings are opened by reading their time index, see {@link RecordingFormat}, otherwise every record is
+ * walked through once to find the keyframes. A cursor over a range of offset times starts decoding from the last
+ * keyframe before the range, so only the packets in and just before the range are read.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class MappedRecording implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedRecording.class);
+
+    private static final long WINDOW_SIZE = 1L << 30;
+    // Record type byte and the largest varint payload length
+    private static final int MAX_RECORD_HEADER_LENGTH = 1 + 10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int version;
+    // End of the last complete record, anything after this is either nothing or a record that got cut off
+    private final long endPosition;
+    private final long packetCount;
+    private final long lastOffsetTime;
+    // Offset times and positions of the keyframes that decoding can start from, empty before version 4
+    private final long[] keyframeOffsetTimes;
+    private final long[] keyframePositions;
+
+    public MappedRecording(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Window window = new Window(this.channel.size());
+            if (!window.ensureMapped(0, RecordingFormat.HEADER_LENGTH)) {
+                throw new EOFException("Recording is too short to contain a header");
+            }
+            this.version = BinaryRecordingDecoder.readHeader(window.buffer);
+            TimeIndex timeIndex = RecordingFormat.isSeekable(this.version) ? this.readTimeIndex(window) : null;
+            if (timeIndex == null) {
+                timeIndex = this.walkRecords(window);
+            }
+            this.endPosition = timeIndex.endPosition;
+            this.packetCount = timeIndex.packetCount;
+            this.lastOffsetTime = timeIndex.lastOffsetTime;
+            this.keyframeOffsetTimes = Arrays.copyOf(timeIndex.keyframeOffsetTimes, timeIndex.keyframeCount);
+            this.keyframePositions = Arrays.copyOf(timeIndex.keyframePositions, timeIndex.keyframeCount);
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check if a file is an uncompressed recording in the binary recording format, and can therefore be mapped.
+     *
+     * @param path file to check
+     * @return true if the file can be opened as a MappedRecording
+     */
+    public static boolean isMappable(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(RecordingFormat.MAGIC.length);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) == -1) {
+                    return false;
+                }
+            }
+            magic.flip();
+            return magic.equals(ByteBuffer.wrap(RecordingFormat.MAGIC));
+        }
+    }
+
+    public long getPacketCount() {
+        return this.packetCount;
+    }
+
+    /**
+     * @return offset time in nanoseconds of the last packet, or 0 if there are no packets
+     */
+    public long getLastOffsetTime() {
+        return this.lastOffsetTime;
+    }
+
+    /**
+     * Find the offset time of the last packet that's no later than the given offset time.
+     *
+     * @param offsetTimeNanos offset time in nanoseconds
+     * @return offset time in nanoseconds of the last packet at or before offsetTimeNanos, or -1 if there isn't one
+     */
+    public long getLastOffsetTimeAtOrBefore(long offsetTimeNanos) throws IOException {
+        if (offsetTimeNanos >= this.lastOffsetTime) {
+            return this.packetCount == 0 ? -1 : this.lastOffsetTime;
+        }
+        int keyframeIndex = this.keyframeIndexAtOrBefore(offsetTimeNanos);
+        long position = keyframeIndex == -1 ? RecordingFormat.HEADER_LENGTH : this.keyframePositions[keyframeIndex];
+        long nanosPerOffsetTimeUnit = RecordingFormat.nanosPerOffsetTimeUnit(this.version);
+        boolean keyframesResetOffsetTime = RecordingFormat.isSeekable(this.version);
+        Window window = new Window(this.endPosition);
+        long offsetTime = 0;
+        long lastAtOrBefore = -1;
+        // Only the offset time at the start of each packet needs reading, the packets don't need to be decoded
+        while (window.readRecordHeader(position)) {
+            byte recordType = window.recordType;
+            if (recordType == RecordingFormat.RECORD_KEYFRAME && keyframesResetOffsetTime) {
+                offsetTime = 0;
+            } else if (recordType == RecordingFormat.RECORD_MESSAGE_PACKET || recordType == RecordingFormat.RECORD_BUNDLE_PACKET) {
+                offsetTime += BinaryRecordingDecoder.readZigZag(window.buffer) * nanosPerOffsetTimeUnit;
+                if (offsetTime > offsetTimeNanos) {
+                    break;
+                }
+                lastAtOrBefore = offsetTime;
+            }
+            position = window.recordEnd;
+        }
+        return lastAtOrBefore;
+    }
+
+    /**
+     * Create a new cursor over the packets of this recording. Each cursor has its own position, so multiple cursors can
+     * be used independently, though an individual cursor is not thread safe.
+     *
+     * @return a new cursor positioned at the first packet
+     */
+    public PacketCursor cursor() {
+        return new Cursor(0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a new cursor over only the packets within a range of offset times. The offset times of the packets it
+     * returns are relative to the start of the range, so the range can be looped by itself.
+     *
+     * @param fromNanos offset time in nanoseconds of the start of the range
+     * @param toNanos   offset time in nanoseconds of the end of the range (inclusive)
+     * @return a new cursor positioned at the first packet in the range
+     */
+    public PacketCursor cursor(long fromNanos, long toNanos) {
+        return new Cursor(fromNanos, toNanos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * @return index of the last keyframe at or before the offset time, or -1 if there isn't one
+     */
+    private int keyframeIndexAtOrBefore(long offsetTimeNanos) {
+        int index = Arrays.binarySearch(this.keyframeOffsetTimes, offsetTimeNanos);
+        if (index >= 0) {
+            // Keyframes with the same time can't be told apart by the search, decoding has to start from the first
+            while (index > 0 && this.keyframeOffsetTimes[index - 1] == offsetTimeNanos) {
+                index--;
+            }
+            return index;
+        }
+        // The insertion point is the first keyframe after the offset time
+        return -index - 2;
+    }
+
+    /**
+     * Read the time index from the end of the file.
+     *
+     * @return the time index, or null if the recording doesn't have one because it got cut off
+     */
+    private TimeIndex readTimeIndex(Window window) throws IOException {
+        long size = this.channel.size();
+        long trailerPosition = size - RecordingFormat.TIME_INDEX_TRAILER_LENGTH;
+        if (trailerPosition < RecordingFormat.HEADER_LENGTH || !window.ensureMapped(trailerPosition, RecordingFormat.TIME_INDEX_TRAILER_LENGTH)) {
+            return null;
+        }
+        long indexPosition = window.buffer.getLong();
+        byte[] magic = new byte[RecordingFormat.TIME_INDEX_MAGIC.length];
+        window.buffer.get(magic);
+        if (!Arrays.equals(magic, RecordingFormat.TIME_INDEX_MAGIC) || indexPosition < RecordingFormat.HEADER_LENGTH
+                || indexPosition >= trailerPosition || !window.readRecordHeader(indexPosition)
+                || window.recordType != RecordingFormat.RECORD_TIME_INDEX || window.recordEnd != trailerPosition) {
+            return null;
+        }
+        ByteBuffer payload = window.buffer;
+        TimeIndex timeIndex = new TimeIndex();
+        timeIndex.packetCount = BinaryRecordingDecoder.readVarint(payload);
+        timeIndex.lastOffsetTime = BinaryRecordingDecoder.readZigZag(payload);
+        timeIndex.endPosition = BinaryRecordingDecoder.readVarint(payload);
+        int keyframeCount = (int) BinaryRecordingDecoder.readVarint(payload);
+        long keyframeOffsetTime = 0;
+        long keyframePosition = 0;
+        for (int i = 0; i < keyframeCount; i++) {
+            keyframeOffsetTime += BinaryRecordingDecoder.readZigZag(payload);
+            keyframePosition += BinaryRecordingDecoder.readVarint(payload);
+            timeIndex.addKeyframe(keyframeOffsetTime, keyframePosition);
+        }
+        return timeIndex;
+    }
+
+    /**
+     * Walk through every record once to find out how many packets there are, where the keyframes are and where the
+     * recording ends.
+     */
+    private TimeIndex walkRecords(Window window) throws IOException {
+        long nanosPerOffsetTimeUnit = RecordingFormat.nanosPerOffsetTimeUnit(this.version);
+        boolean seekable = RecordingFormat.isSeekable(this.version);
+        TimeIndex timeIndex = new TimeIndex();
+        long offsetTime = 0;
+        long position = RecordingFormat.HEADER_LENGTH;
+        // Position of a keyframe that's waiting for the time of the packet after it
+        long keyframePosition = -1;
+        boolean complete = false;
+        while (window.readRecordHeader(position)) {
+            byte recordType = window.recordType;
+            if (recordType == RecordingFormat.RECORD_END) {
+                complete = true;
+                break;
+            } else if (recordType == RecordingFormat.RECORD_KEYFRAME && seekable) {
+                keyframePosition = position;
+                offsetTime = 0;
+            } else if (recordType == RecordingFormat.RECORD_MESSAGE_PACKET || recordType == RecordingFormat.RECORD_BUNDLE_PACKET) {
+                // Packet payloads start with the offset time delta
+                offsetTime += BinaryRecordingDecoder.readZigZag(window.buffer) * nanosPerOffsetTimeUnit;
+                timeIndex.packetCount++;
+                if (keyframePosition != -1) {
+                    timeIndex.addKeyframe(offsetTime, keyframePosition);
+                    keyframePosition = -1;
+                }
+            }
+            position = window.recordEnd;
+        }
+        if (!complete) {
+            LOG.warn("Recording '{}' appears to have been cut off, only the {} complete packets will be played", this.path, timeIndex.packetCount);
+        }
+        timeIndex.endPosition = position;
+        timeIndex.lastOffsetTime = offsetTime;
+        return timeIndex;
+    }
+
+    private static class TimeIndex {
+        private long packetCount = 0;
+        private long lastOffsetTime = 0;
+        private long endPosition;
+        private long[] keyframeOffsetTimes = new long[64];
+        private long[] keyframePositions = new long[64];
+        private int keyframeCount = 0;
+
+        void addKeyframe(long offsetTime, long position) {
+            if (this.keyframeCount == this.keyframePositions.length) {
+                this.keyframeOffsetTimes = Arrays.copyOf(this.keyframeOffsetTimes, this.keyframeCount * 2);
+                this.keyframePositions = Arrays.copyOf(this.keyframePositions, this.keyframeCount * 2);
+            }
+            this.keyframeOffsetTimes[this.keyframeCount] = offsetTime;
+            this.keyframePositions[this.keyframeCount] = position;
+            this.keyframeCount++;
+        }
+    }
+
+    private class Cursor implements PacketCursor {
+        private final Window window = new Window(MappedRecording.this.endPosition);
+        private final long fromNanos;
+        private final long toNanos;
+        // Where decoding starts from, the last keyframe before the range or the start of the recording
+        private final long startPosition;
+        private BinaryRecordingDecoder decoder;
+        private long position;
+
+        Cursor(long fromNanos, long toNanos) {
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            int keyframeIndex = MappedRecording.this.keyframeIndexAtOrBefore(fromNanos);
+            this.startPosition = keyframeIndex == -1 ? RecordingFormat.HEADER_LENGTH : MappedRecording.this.keyframePositions[keyframeIndex];
+            this.rewind();
+        }
+
+        @Override
+        public RecordedPacket<?, ?> next() {
+            try {
+                while (this.window.readRecordHeader(this.position)) {
+                    this.position = this.window.recordEnd;
+                    RecordedPacket<?, ?> packet = this.decoder.decode(this.window.recordType, this.window.buffer);
+                    if (packet == null || packet.getOffsetTime() < this.fromNanos) {
+                        continue;
+                    }
+                    if (packet.getOffsetTime() > this.toNanos) {
+                        // Past the end of the range
+                        this.position = MappedRecording.this.endPosition;
+                        return null;
+                    }
+                    return this.fromNanos == 0 ? packet : packet.withOffsetTime(packet.getOffsetTime() - this.fromNanos);
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + MappedRecording.this.path, e);
+            }
+        }
+
+        @Override
+        public void rewind() {
+            // The addresses and type tags will get defined again
+            this.decoder = new BinaryRecordingDecoder(MappedRecording.this.version);
+            this.position = RecordingFormat.HEADER_LENGTH;
+            if (this.startPosition != RecordingFormat.HEADER_LENGTH) {
+                // The records before the first keyframe apply to the whole recording
+                long firstKeyframePosition = MappedRecording.this.keyframePositions[0];
+                try {
+                    while (this.position < firstKeyframePosition && this.window.readRecordHeader(this.position)) {
+                        this.position = this.window.recordEnd;
+                        this.decoder.decode(this.window.recordType, this.window.buffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read " + MappedRecording.this.path, e);
+                }
+                this.position = this.startPosition;
+            }
+        }
+    }
+
+    /**
+     * A mapped region of the file, remapped as needed.
+     */
+    private class Window {
+        // Mapping never extends beyond this
+        private final long limit;
+        private MappedByteBuffer buffer = null;
+        private long windowStart = 0;
+        private long windowEnd = 0;
+
+        // Set by readRecordHeader
+        private byte recordType;
+        private long recordEnd;
+
+        Window(long limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Make sure that the given range of the file is mapped and position the buffer at the start of the range.
+         *
+         * @return false if the range extends beyond the limit
+         */
+        boolean ensureMapped(long start, long length) throws IOException {
+            long end = start + length;
+            if (end > this.limit) {
+                return false;
+            }
+            if (this.buffer == null || start < this.windowStart || end > this.windowEnd) {
+                long mapLength = Math.min(Math.max(WINDOW_SIZE, length), this.limit - start);
+                this.buffer = MappedRecording.this.channel.map(FileChannel.MapMode.READ_ONLY, start, mapLength);
+                this.windowStart = start;
+                this.windowEnd = start + mapLength;
+            }
+            this.buffer.limit(this.buffer.capacity());
+            this.buffer.position((int) (start - this.windowStart));
+            return true;
+        }
+
+        /**
+         * Read the header of the record at the given position and position the buffer at the start of its payload,
+         * limited to the end of the payload.
+         *
+         * @return false if there's no complete record at the position
+         */
+        boolean readRecordHeader(long position) throws IOException {
+            // The header may be shorter than the maximum length when near the end of the file
+            if (position >= this.limit || !this.ensureMapped(position, Math.min(MAX_RECORD_HEADER_LENGTH, this.limit - position))) {
+                return false;
+            }
+            try {
+                this.recordType = this.buffer.get();
+                long payloadLength = BinaryRecordingDecoder.readVarint(this.buffer);
+                long payloadStart = this.windowStart + this.buffer.position();
+                if (!this.ensureMapped(payloadStart, payloadLength)) {
+                    return false;
+                }
+                this.buffer.limit(this.buffer.position() + (int) payloadLength);
+                this.recordEnd = payloadStart + payloadLength;
+                return true;
+            } catch (BufferUnderflowException e) {
+                // Cut off part way through the record header
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants describing the raw capture format, where received UDP datagrams are written exactly as they were received,
+ * without being parsed as OSC.
+ * <p>
+ * A capture starts with a header of {@link #MAGIC}, followed by a version byte and a flags byte. After the header, each
+ * datagram is written as a varint of the nanoseconds since the previous datagram was received (or since the capture
+ * started for the first datagram), a varint of the datagram's length and then the datagram's bytes.
+ * <p>
+ * There is no end marker, a capture ends at the end of the file, so a capture that got cut off only loses its last,
+ * partially written datagram.
+ * <p>
+ * Parsing the datagrams as OSC, and any filtering, happens when the capture is read, see
+ * {@link RawRecordingReader}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class RawCaptureFormat {
+    public static final byte[] MAGIC = "EMVMCRAW".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    // Largest possible UDP payload
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private RawCaptureFormat() {
+    }
+}
@@ -0,0 +1,163 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records UDP datagrams to file exactly as they're received, in the raw capture format, see {@link RawCaptureFormat}.
+ * <p>
+ * Nothing is parsed while recording. A single thread receives each datagram, timestamps it and copies it into a large
+ * output buffer, which is written to file whenever it fills up and at least every {@link #FLUSH_INTERVAL_NANOS} while
+ * datagrams are arriving. This is much less work per datagram than parsing into OSC packets, so the receiving thread
+ * can keep up with much higher rates.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class RawDatagramRecorder implements Closeable {
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // Varint time delta and varint datagram length
+    private static final int MAX_RECORD_HEADER_LENGTH = 10 + 5;
+
+    private final DatagramChannel datagramChannel;
+    private final FileChannel fileChannel;
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+    private final Thread receiveThread;
+    private long startTimeNanos;
+    private volatile IOException receiveException = null;
+
+    // Only accessed by the receive thread until it has finished
+    private long datagramCount = 0;
+    private long datagramBytes = 0;
+
+    /**
+     * Bind to the given address and create the capture file, writing its header.
+     *
+     * @param socketAddress address to receive datagrams on
+     * @param path          file to write to
+     */
+    public RawDatagramRecorder(SocketAddress socketAddress, Path path) throws IOException {
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            this.datagramChannel = DatagramChannel.open().bind(socketAddress);
+        } catch (IOException e) {
+            this.fileChannel.close();
+            throw e;
+        }
+        this.output.put(RawCaptureFormat.MAGIC);
+        this.output.put((byte) RawCaptureFormat.VERSION);
+        // No flags yet
+        this.output.put((byte) 0);
+        this.receiveThread = new Thread(this::receiveLoop, "RawDatagramRecorder");
+    }
+
+    /**
+     * Start receiving. Offset times are measured from when this is called.
+     */
+    public void start() {
+        this.startTimeNanos = System.nanoTime();
+        this.receiveThread.start();
+    }
+
+    /**
+     * Stop receiving, wait for everything received to be written and close the file.
+     *
+     * @throws IOException if receiving or writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // Unblocks the receive thread
+            this.datagramChannel.close();
+            try {
+                this.receiveThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the recording to finish being written", e);
+            }
+        } finally {
+            this.fileChannel.close();
+        }
+        IOException receiveException = this.receiveException;
+        if (receiveException != null) {
+            throw receiveException;
+        }
+    }
+
+    /**
+     * @return the number of datagrams recorded, only accurate once closed
+     */
+    public long getDatagramCount() {
+        return this.datagramCount;
+    }
+
+    /**
+     * @return the total size in bytes of the datagrams recorded, only accurate once closed
+     */
+    public long getDatagramBytes() {
+        return this.datagramBytes;
+    }
+
+    private void receiveLoop() {
+        DatagramChannel datagramChannel = this.datagramChannel;
+        ByteBuffer output = this.output;
+        ByteBuffer datagram = ByteBuffer.allocateDirect(RawCaptureFormat.MAX_DATAGRAM_SIZE);
+        long previousTimeReceived = this.startTimeNanos;
+        long lastFlushTime = this.startTimeNanos;
+        try {
+            while (true) {
+                datagram.clear();
+                datagramChannel.receive(datagram);
+                long timeReceived = System.nanoTime();
+                datagram.flip();
+                int length = datagram.remaining();
+
+                if (output.remaining() < MAX_RECORD_HEADER_LENGTH + length) {
+                    this.flush();
+                    lastFlushTime = timeReceived;
+                }
+                RecordBuffer.putVarint(output, timeReceived - previousTimeReceived);
+                RecordBuffer.putVarint(output, length);
+                output.put(datagram);
+                previousTimeReceived = timeReceived;
+                this.datagramCount++;
+                this.datagramBytes += length;
+
+                if (timeReceived - lastFlushTime >= FLUSH_INTERVAL_NANOS) {
+                    this.flush();
+                    lastFlushTime = timeReceived;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by close(), recording has finished
+        } catch (IOException e) {
+            this.receiveException = e;
+        } finally {
+            try {
+                this.flush();
+            } catch (IOException e) {
+                if (this.receiveException == null) {
+                    this.receiveException = e;
+                }
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer output = this.output;
+        output.flip();
+        while (output.hasRemaining()) {
+            this.fileChannel.write(output);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import com.illposed.osc.OSCPacket;
+import com.illposed.osc.OSCParseException;
+import com.illposed.osc.OSCParser;
+import com.illposed.osc.OSCSerializerAndParserBuilder;
+import uk.co.mysterymayhem.vmcplayback.osc.AddressFilter;
+import uk.co.mysterymayhem.vmcplayback.osc.DatagramPrefilter;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Reads datagrams, one at a time, from a stream in the raw capture format, see {@link RawCaptureFormat}, parsing each
+ * one as an OSC packet.
+ * <p>
+ * Datagrams that can't be parsed as OSC are skipped and counted.
+ * <p>
+ * If the messages are being filtered by an {@link AddressFilter}, messages it rejects by address are removed from each
+ * datagram before it's parsed, see {@link DatagramPrefilter}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class RawRecordingReader implements Closeable {
+
+    private final DataInputStream in;
+    private final OSCParser parser = new OSCSerializerAndParserBuilder().buildParser();
+    private final byte[] datagramBytes = new byte[RawCaptureFormat.MAX_DATAGRAM_SIZE];
+    private final Predicate<RecordedMessage> messageSelector;
+    // Null unless the message selector is an AddressFilter
+    private final DatagramPrefilter prefilter;
+    private long offsetTime = 0;
+    private long unparseableCount = 0;
+
+    /**
+     * Create a reader and read the capture header.
+     *
+     * @param in stream positioned at the start of the header, the caller is responsible for buffering it
+     */
+    public RawRecordingReader(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * Create a reader that filters messages as they're read and read the capture header.
+     *
+     * @param in              stream positioned at the start of the header, the caller is responsible for buffering it
+     * @param messageSelector predicate to select which messages get read, or null to read every message
+     */
+    public RawRecordingReader(InputStream in, Predicate<RecordedMessage> messageSelector) throws IOException {
+        this.messageSelector = messageSelector == null ? m -> true : messageSelector;
+        this.prefilter = messageSelector instanceof AddressFilter
+                ? new DatagramPrefilter((AddressFilter) messageSelector, RawCaptureFormat.MAX_DATAGRAM_SIZE)
+                : null;
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[RawCaptureFormat.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, RawCaptureFormat.MAGIC)) {
+            throw new StreamCorruptedException("Not a raw capture, invalid header");
+        }
+        int version = this.in.readUnsignedByte();
+        // Flags, currently unused
+        this.in.readUnsignedByte();
+        if (version != RawCaptureFormat.VERSION) {
+            throw new IOException("Unsupported raw capture format version " + version);
+        }
+    }
+
+    /**
+     * Read the next datagram that contains an OSC packet with at least one selected message.
+     *
+     * @return the next packet, or null once the end of the capture has been reached
+     * @throws EOFException if the capture was cut off part way through a datagram
+     */
+    public RecordedPacket<?, ?> readPacket() throws IOException {
+        int firstByte;
+        while ((firstByte = this.in.read()) != -1) {
+            this.offsetTime += this.readVarint(firstByte);
+            int length = (int) this.readVarint(this.in.readUnsignedByte());
+            if (length > this.datagramBytes.length) {
+                throw new StreamCorruptedException("Datagram length " + length + " is larger than the maximum UDP payload");
+            }
+            this.in.readFully(this.datagramBytes, 0, length);
+
+            ByteBuffer datagram = ByteBuffer.wrap(this.datagramBytes, 0, length);
+            if (this.prefilter != null) {
+                datagram = this.prefilter.prefilter(datagram);
+                if (datagram == null) {
+                    // Every message was rejected
+                    continue;
+                }
+            }
+            OSCPacket oscPacket;
+            try {
+                oscPacket = this.parser.convert(datagram);
+            } catch (OSCParseException e) {
+                this.unparseableCount++;
+                continue;
+            }
+            RecordedPacket<?, ?> recordedPacket = RecordedPacket.fromOscPacket(this.offsetTime, oscPacket, this.messageSelector);
+            if (recordedPacket != null) {
+                return recordedPacket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of datagrams so far that couldn't be parsed as OSC and were skipped
+     */
+    public long getUnparseableCount() {
+        return this.unparseableCount;
+    }
+
+    private long readVarint(int firstByte) throws IOException {
+        long value = firstByte & 0x7F;
+        int shift = 7;
+        int b = firstByte;
+        while ((b & 0x80) != 0) {
+            b = this.in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
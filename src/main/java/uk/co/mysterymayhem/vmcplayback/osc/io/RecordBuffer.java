@@ -0,0 +1,127 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable byte array that records get built up in before being written out, so that the length of each record is
+ * known before it's written. Reused between records to avoid allocating.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+class RecordBuffer {
+    private byte[] bytes;
+    private int length = 0;
+
+    RecordBuffer(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    void reset() {
+        this.length = 0;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(this.bytes, 0, this.length);
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = this.length + additional;
+        if (required > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+        }
+    }
+
+    void putByte(int b) {
+        this.ensureCapacity(1);
+        this.bytes[this.length++] = (byte) b;
+    }
+
+    void putBytes(byte[] src) {
+        this.putBytes(src, 0, src.length);
+    }
+
+    void putBytes(byte[] src, int offset, int count) {
+        this.ensureCapacity(count);
+        System.arraycopy(src, offset, this.bytes, this.length, count);
+        this.length += count;
+    }
+
+    void putShort(int s) {
+        this.ensureCapacity(2);
+        this.bytes[this.length++] = (byte) (s >>> 8);
+        this.bytes[this.length++] = (byte) s;
+    }
+
+    void putInt(int i) {
+        this.ensureCapacity(4);
+        this.bytes[this.length++] = (byte) (i >>> 24);
+        this.bytes[this.length++] = (byte) (i >>> 16);
+        this.bytes[this.length++] = (byte) (i >>> 8);
+        this.bytes[this.length++] = (byte) i;
+    }
+
+    void putLong(long l) {
+        this.putInt((int) (l >>> 32));
+        this.putInt((int) l);
+    }
+
+    /**
+     * Put an unsigned LEB128 varint, 7 bits per byte, least significant group first.
+     */
+    void putVarint(long value) {
+        this.ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            this.bytes[this.length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.bytes[this.length++] = (byte) value;
+    }
+
+    /**
+     * Put a signed value as a zigzag encoded varint so that small negative values are also small.
+     */
+    void putZigZag(long value) {
+        this.putVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * @return the number of bytes the value takes up as a varint
+     */
+    static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Put a varint to an output stream directly, for writing record lengths.
+     */
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Put a varint to a ByteBuffer directly.
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
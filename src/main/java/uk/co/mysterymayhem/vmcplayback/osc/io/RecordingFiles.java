@@ -0,0 +1,360 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.AddressFilter;
+import uk.co.mysterymayhem.vmcplayback.osc.PacketCursor;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reading and writing of recording files.
+ * <p>
+ * Recordings are written in the binary recording format, see {@link RecordingFormat}, which is split into independently
+ * compressed chunks when compressing, see {@link ChunkedRecordingFormat}, so that loading can decode the chunks in
+ * parallel. When reading, the format is detected from the start of the file, so older recordings made with Java
+ * serialization can still be read. The legacy layouts are, both gzipped:
+ * <ol>
+ * <li>The original layout, a single serialized List of every recorded packet</li>
+ * <li>Each recorded packet serialized one after another and terminated by null</li>
+ * </ol>
+ * Raw captures, see {@link RawCaptureFormat}, are also detected and have their datagrams parsed as OSC while being
+ * read.
+ * <p>
+ * Offset times in the legacy layouts are in milliseconds, they are converted to nanoseconds when read.
+ * <p>
+ * If a recording got cut off, everything that could be read is returned instead of failing.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class RecordingFiles {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordingFiles.class);
+
+    private static final int GZIP_MAGIC = 0x1F8B;
+    // ObjectOutputStream.STREAM_MAGIC
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private RecordingFiles() {
+    }
+
+    public static List<RecordedPacket<?, ?>> readPackets(Path path) throws IOException {
+        return readPackets(path, null);
+    }
+
+    /**
+     * Read a recording, keeping only the selected messages.
+     * <p>
+     * Raw captures are filtered as each datagram is parsed, so if the messageSelector is an {@link AddressFilter},
+     * rejected messages are never parsed. Chunked recordings are decoded and filtered on every available processor.
+     *
+     * @param path            recording file
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message
+     * @return the recorded packets that still have at least one message
+     */
+    public static List<RecordedPacket<?, ?>> readPackets(Path path, Predicate<RecordedMessage> messageSelector) throws IOException {
+        return readPackets(path, messageSelector, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read the packets within a range of offset times, keeping only the selected messages. The offset times of the
+     * returned packets are relative to the start of the range.
+     * <p>
+     * Only the chunks of chunked recordings that overlap the range are read and uncompressed recordings are read from
+     * the keyframe before the range using their time index. Other formats have to be read in full before the range can
+     * be picked out.
+     *
+     * @param path            recording file
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message
+     * @param fromNanos       offset time in nanoseconds of the start of the range
+     * @param toNanos         offset time in nanoseconds of the end of the range (inclusive)
+     * @return the recorded packets in the range that still have at least one message
+     */
+    public static List<RecordedPacket<?, ?>> readPackets(Path path, Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos) throws IOException {
+        if (ChunkedRecording.isChunked(path)) {
+            List<RecordedPacket<?, ?>> recordedPackets;
+            try (ChunkedRecording chunkedRecording = new ChunkedRecording(path)) {
+                recordedPackets = chunkedRecording.readPackets(messageSelector, fromNanos, toNanos);
+            }
+            return selectTimeRange(recordedPackets, fromNanos, toNanos);
+        }
+        if ((fromNanos != 0 || toNanos != Long.MAX_VALUE) && MappedRecording.isMappable(path)) {
+            try (MappedRecording mappedRecording = new MappedRecording(path)) {
+                PacketCursor cursor = mappedRecording.cursor(fromNanos, toNanos);
+                if (messageSelector != null) {
+                    cursor = cursor.filter(messageSelector);
+                }
+                List<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>();
+                RecordedPacket<?, ?> recordedPacket;
+                while ((recordedPacket = cursor.next()) != null) {
+                    recordedPackets.add(recordedPacket);
+                }
+                return recordedPackets;
+            }
+        }
+        List<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>();
+        readAllPackets(path, messageSelector, recordedPackets::add);
+        return selectTimeRange(recordedPackets, fromNanos, toNanos);
+    }
+
+    /**
+     * Read the packets within a range of offset times one at a time, passing each one on as soon as it's been read, so
+     * that they can be used before the whole recording has been read, see {@link StreamingRecordingReader}. The offset
+     * times of the packets are relative to the start of the range.
+     * <p>
+     * Packets are passed on in the order they were recorded in, which is offset time order for every recording made by
+     * this program. Chunked recordings are decoded one chunk at a time instead of in parallel.
+     *
+     * @param path            recording file
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message
+     * @param fromNanos       offset time in nanoseconds of the start of the range
+     * @param toNanos         offset time in nanoseconds of the end of the range (inclusive)
+     * @param packetSink      consumer to pass each packet in the range that still has at least one message to
+     */
+    public static void readPackets(Path path, Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        Consumer<RecordedPacket<?, ?>> rangeSink = packetSink;
+        if (fromNanos != 0 || toNanos != Long.MAX_VALUE) {
+            rangeSink = recordedPacket -> {
+                long offsetTime = recordedPacket.getOffsetTime();
+                if (offsetTime >= fromNanos && offsetTime <= toNanos) {
+                    packetSink.accept(recordedPacket.withOffsetTime(offsetTime - fromNanos));
+                }
+            };
+        }
+        if (ChunkedRecording.isChunked(path)) {
+            try (ChunkedRecording chunkedRecording = new ChunkedRecording(path)) {
+                chunkedRecording.readPackets(messageSelector, fromNanos, toNanos, rangeSink);
+            }
+            return;
+        }
+        if ((fromNanos != 0 || toNanos != Long.MAX_VALUE) && MappedRecording.isMappable(path)) {
+            try (MappedRecording mappedRecording = new MappedRecording(path)) {
+                PacketCursor cursor = mappedRecording.cursor(fromNanos, toNanos);
+                if (messageSelector != null) {
+                    cursor = cursor.filter(messageSelector);
+                }
+                RecordedPacket<?, ?> recordedPacket;
+                while ((recordedPacket = cursor.next()) != null) {
+                    packetSink.accept(recordedPacket);
+                }
+            }
+            return;
+        }
+        readAllPackets(path, messageSelector, rangeSink);
+    }
+
+    /**
+     * Check if a recording was made with Java serialization. Unlike the packets of the binary recording formats, its
+     * packets aren't necessarily in offset time order.
+     */
+    public static boolean isLegacy(Path path) throws IOException {
+        try (InputStream in = openDecompressed(path)) {
+            return peekShort(in) == JAVA_SERIALIZATION_MAGIC;
+        }
+    }
+
+    private static void readAllPackets(Path path, Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        Consumer<RecordedPacket<?, ?>> filteringSink = packetSink;
+        if (messageSelector != null) {
+            filteringSink = recordedPacket -> {
+                RecordedPacket<?, ?> filtered = recordedPacket.filter(messageSelector);
+                if (filtered != null) {
+                    packetSink.accept(filtered);
+                }
+            };
+        }
+        try (InputStream in = openDecompressed(path)) {
+            int magic = peekShort(in);
+            if (magic == JAVA_SERIALIZATION_MAGIC) {
+                readLegacyPackets(path, in, filteringSink);
+            } else if (Arrays.equals(peekBytes(in, RawCaptureFormat.MAGIC.length), RawCaptureFormat.MAGIC)) {
+                // Filtered while being parsed instead
+                readRawPackets(path, in, messageSelector, packetSink);
+            } else {
+                readBinaryPackets(path, in, filteringSink);
+            }
+        }
+    }
+
+    /**
+     * Pick out the packets within a range of offset times and make their offset times relative to the start of the
+     * range.
+     */
+    private static List<RecordedPacket<?, ?>> selectTimeRange(List<RecordedPacket<?, ?>> recordedPackets, long fromNanos, long toNanos) {
+        if (fromNanos == 0 && toNanos == Long.MAX_VALUE) {
+            return recordedPackets;
+        }
+        List<RecordedPacket<?, ?>> selected = new ArrayList<>();
+        for (RecordedPacket<?, ?> recordedPacket : recordedPackets) {
+            long offsetTime = recordedPacket.getOffsetTime();
+            if (offsetTime >= fromNanos && offsetTime <= toNanos) {
+                selected.add(recordedPacket.withOffsetTime(offsetTime - fromNanos));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Write a complete recording in the binary recording format.
+     *
+     * @param path            file to write to
+     * @param recordedPackets packets to write
+     * @param compress        true to write the recording as compressed chunks, false to leave it uncompressed so that
+     *                        it can be played back with a {@link MappedRecording}
+     */
+    public static void writePackets(Path path, List<RecordedPacket<?, ?>> recordedPackets, boolean compress) throws IOException {
+        writePackets(path, recordedPackets, compress, VmcCodecSettings.LOSSLESS);
+    }
+
+    /**
+     * Write a complete recording in the binary recording format.
+     *
+     * @param path            file to write to
+     * @param recordedPackets packets to write
+     * @param compress        true to write the recording as compressed chunks, false to leave it uncompressed so that
+     *                        it can be played back with a {@link MappedRecording}
+     * @param codecSettings   how to compress VMC messages, or null to write them the same as any other message
+     */
+    public static void writePackets(Path path, List<RecordedPacket<?, ?>> recordedPackets, boolean compress, VmcCodecSettings codecSettings) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE);
+        if (compress) {
+            try (ChunkedRecordingWriter writer = new ChunkedRecordingWriter(out, codecSettings)) {
+                for (RecordedPacket<?, ?> recordedPacket : recordedPackets) {
+                    writer.writePacket(recordedPacket);
+                }
+            }
+            return;
+        }
+        try {
+            BinaryRecordingEncoder encoder = new BinaryRecordingEncoder(out, codecSettings);
+            for (RecordedPacket<?, ?> recordedPacket : recordedPackets) {
+                encoder.writePacket(recordedPacket);
+            }
+            encoder.writeEnd();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Open a recording, decompressing it if it's gzipped.
+     *
+     * @param path recording file
+     * @return a buffered stream of the decompressed recording, supporting mark/reset
+     */
+    static InputStream openDecompressed(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        try {
+            if (peekShort(in) == GZIP_MAGIC) {
+                in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static int peekShort(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == -1 || second == -1) {
+            throw new EOFException("Recording is empty");
+        }
+        return (first << 8) | second;
+    }
+
+    private static byte[] peekBytes(InputStream in, int count) throws IOException {
+        in.mark(count);
+        byte[] bytes = new byte[count];
+        int read = 0;
+        int n;
+        while (read < count && (n = in.read(bytes, read, count - read)) != -1) {
+            read += n;
+        }
+        in.reset();
+        // Too short to match
+        return read == count ? bytes : new byte[0];
+    }
+
+    private static void readRawPackets(Path path, InputStream in, Predicate<RecordedMessage> messageSelector, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        RawRecordingReader reader = new RawRecordingReader(in, messageSelector);
+        long packetCount = 0;
+        try {
+            RecordedPacket<?, ?> recordedPacket;
+            while ((recordedPacket = reader.readPacket()) != null) {
+                packetSink.accept(recordedPacket);
+                packetCount++;
+            }
+        } catch (EOFException e) {
+            logCutOff(path, packetCount);
+        }
+        if (reader.getUnparseableCount() > 0) {
+            LOG.warn("Skipped {} datagrams in '{}' that couldn't be parsed as OSC", reader.getUnparseableCount(), path);
+        }
+    }
+
+    private static void readBinaryPackets(Path path, InputStream in, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        BinaryRecordingReader reader = new BinaryRecordingReader(in);
+        long packetCount = 0;
+        try {
+            RecordedPacket<?, ?> recordedPacket;
+            while ((recordedPacket = reader.readPacket()) != null) {
+                packetSink.accept(recordedPacket);
+                packetCount++;
+            }
+        } catch (EOFException e) {
+            logCutOff(path, packetCount);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readLegacyPackets(Path path, InputStream in, Consumer<RecordedPacket<?, ?>> packetSink) throws IOException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(in);
+        try {
+            Object first = objectInputStream.readObject();
+            if (first instanceof List) {
+                for (RecordedPacket<?, ?> legacyPacket : (List<RecordedPacket<?, ?>>) first) {
+                    packetSink.accept(millisToNanos(legacyPacket));
+                }
+                return;
+            }
+
+            long packetCount = 0;
+            Object next = first;
+            try {
+                while (next != null) {
+                    packetSink.accept(millisToNanos((RecordedPacket<?, ?>) next));
+                    packetCount++;
+                    next = objectInputStream.readObject();
+                }
+            } catch (EOFException e) {
+                logCutOff(path, packetCount);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RecordedPacket<?, ?> millisToNanos(RecordedPacket<?, ?> legacyPacket) {
+        return legacyPacket.withOffsetTime(TimeUnit.MILLISECONDS.toNanos(legacyPacket.getOffsetTime()));
+    }
+
+    private static void logCutOff(Path path, long packetCount) {
+        LOG.warn("Recording '{}' appears to have been cut off, loaded the {} packets that could be read", path, packetCount);
+    }
+}
@@ -0,0 +1,148 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constants describing the binary recording format.
+ * <p>
+ * A recording starts with a header of {@link #MAGIC}, followed by a version byte and a flags byte. After the header
+ * comes a sequence of records, each made up of a record type byte, the length of the record's payload as a varint and
+ * then the payload itself. Having the payload length means readers can skip records they're not interested in and can
+ * tell when a record has been cut off.
+ * <p>
+ * Record payloads:
+ * <ul>
+ * <li>{@link #RECORD_DEFINE_ADDRESS}: varint id, UTF-8 bytes of an OSC address (the rest of the payload)</li>
+ * <li>{@link #RECORD_DEFINE_TYPE_TAGS}: varint id, ASCII bytes of OSC argument type tags (the rest of the payload)</li>
+ * <li>{@link #RECORD_MESSAGE_PACKET}: zigzag varint offset time delta, message</li>
+ * <li>{@link #RECORD_BUNDLE_PACKET}: zigzag varint offset time delta, bundle</li>
+ * <li>{@link #RECORD_END}: empty, marks the end of a complete recording</li>
+ * <li>{@link #RECORD_CODEC}: VMC codec settings, see {@link VmcCodecSettings}, only ever the first record</li>
+ * <li>{@link #RECORD_DEFINE_NAME}: varint id, UTF-8 bytes of a VMC root, bone or blendshape name (the rest of the
+ * payload)</li>
+ * <li>{@link #RECORD_KEYFRAME}: empty, the next sample of every VMC root, bone and blendshape is stored in full</li>
+ * <li>{@link #RECORD_TIME_INDEX}: varint packet count, zigzag varint offset time of the last packet, varint position of
+ * the end record, varint keyframe count, then for each keyframe, a zigzag varint offset time delta and a varint position
+ * delta, both relative to the previous keyframe, only ever written after the end record</li>
+ * </ul>
+ * Addresses and type tags are written once, when first used, and referred to by id after that. Offset time deltas
+ * are relative to the previous packet's offset time and are in nanoseconds, or in milliseconds in version 1
+ * recordings.
+ * <p>
+ * A message is a varint address id, a varint type tags id and then each argument encoded according to its type tag,
+ * numbers are big-endian. Messages with type tags that can't be written directly have their arguments written with
+ * Java serialization instead, see {@link #isDirectlyEncodable(CharSequence)}.
+ * <p>
+ * From version 3, if the recording has a codec record, VMC root, bone and blendshape messages are compressed instead:
+ * after the type tags id comes a varint name id and then the float arguments compressed relative to the previous
+ * message with the same address and name, see {@link VmcSampleCodec}. Names are defined once, when first used, the
+ * same as addresses. The encoder writes a keyframe record at least every {@link #KEYFRAME_INTERVAL_NANOS}.
+ * <p>
+ * From version 4, keyframes are written whether or not there's a codec record, and a keyframe also forgets every
+ * address, type tags and name defined so far and resets the offset time to 0, so the offset time delta of the packet
+ * after a keyframe is its full offset time. Decoding can therefore start from any keyframe, instead of only from the
+ * start of the recording, as long as the records before the first keyframe, which are never more than the codec record,
+ * have been decoded first. The time of a keyframe is the offset time of the packet after it.
+ * <p>
+ * Complete recordings from version 4 have a time index record after the end record, listing the position and time of
+ * every keyframe, followed by a trailer of the long position of the time index record and {@link #TIME_INDEX_MAGIC}.
+ * Readers that only need the packets stop at the end record and never see the index. A recording that got cut off has
+ * no index, the keyframes can still be found by walking through the records from the start.
+ * <p>
+ * A bundle is an 8 byte NTP time, a varint element count and then each element, which is an element kind byte followed
+ * by a message or bundle.
+ * <p>
+ * The whole file may be gzipped.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class RecordingFormat {
+    public static final byte[] MAGIC = "EMVMCREC".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The first version, where offset times are in milliseconds.
+     */
+    public static final int VERSION_MILLISECOND_OFFSETS = 1;
+    /**
+     * The second version, where offset times are in nanoseconds.
+     */
+    public static final int VERSION_NANOSECOND_OFFSETS = 2;
+    /**
+     * The third version, which adds compression of VMC messages.
+     */
+    public static final int VERSION_VMC_CODEC = 3;
+    /**
+     * The current version, where keyframes reset all decoding state and the recording ends with a time index.
+     */
+    public static final int VERSION = 4;
+    public static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    public static final byte RECORD_END = 0;
+    public static final byte RECORD_DEFINE_ADDRESS = 1;
+    public static final byte RECORD_DEFINE_TYPE_TAGS = 2;
+    public static final byte RECORD_MESSAGE_PACKET = 3;
+    public static final byte RECORD_BUNDLE_PACKET = 4;
+    public static final byte RECORD_CODEC = 5;
+    public static final byte RECORD_DEFINE_NAME = 6;
+    public static final byte RECORD_KEYFRAME = 7;
+    public static final byte RECORD_TIME_INDEX = 8;
+
+    public static final byte[] TIME_INDEX_MAGIC = "EMVMCTIX".getBytes(StandardCharsets.US_ASCII);
+    // Position of the time index record and the magic
+    public static final int TIME_INDEX_TRAILER_LENGTH = 8 + TIME_INDEX_MAGIC.length;
+
+    public static final long KEYFRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public static final byte ELEMENT_MESSAGE = 0;
+    public static final byte ELEMENT_BUNDLE = 1;
+
+    private RecordingFormat() {
+    }
+
+    /**
+     * Get the number of nanoseconds in each unit of the offset times written in a recording.
+     *
+     * @param version format version of the recording
+     * @return the multiplier that converts the recording's offset times to nanoseconds
+     */
+    public static long nanosPerOffsetTimeUnit(int version) {
+        return version == VERSION_MILLISECOND_OFFSETS ? TimeUnit.MILLISECONDS.toNanos(1) : 1;
+    }
+
+    /**
+     * Check if keyframes in a recording reset all decoding state, so that decoding can start from a keyframe.
+     *
+     * @param version format version of the recording
+     * @return true if decoding can start from any keyframe
+     */
+    public static boolean isSeekable(int version) {
+        return version > VERSION_VMC_CODEC;
+    }
+
+    /**
+     * Check if every argument type can be written directly, without falling back to Java serialization.
+     *
+     * @param typeTags OSC argument type tags, without the leading ','
+     * @return true if every type tag is one that the binary format encodes directly
+     */
+    public static boolean isDirectlyEncodable(CharSequence typeTags) {
+        for (int i = 0; i < typeTags.length(); i++) {
+            switch (typeTags.charAt(i)) {
+                case 'i':
+                case 'f':
+                case 'h':
+                case 'd':
+                case 't':
+                case 's':
+                case 'c':
+                case 'T':
+                case 'F':
+                case 'N':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+}
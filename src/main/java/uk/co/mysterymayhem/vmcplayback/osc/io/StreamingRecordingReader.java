@@ -0,0 +1,200 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.PacketCursor;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Reads a recording on a background decoder thread while its packets are being played back, so that playback can start
+ * as soon as the first packets have been decoded instead of once the whole recording has been loaded.
+ * <p>
+ * The decoder thread reads packets in the order they were recorded, see
+ * {@link RecordingFiles#readPackets(Path, Predicate, long, long, java.util.function.Consumer)}, and queues them for the
+ * thread reading from this cursor. The cursor keeps every packet it has read, so once the end has been reached and it's
+ * rewound, the rest of the loops are played back from memory. Playback only reaches the end once the decoder has
+ * finished, so the whole recording has always been loaded by the time the first loop ends.
+ * <p>
+ * Only one thread may read from the cursor. If the recording can't be read to the end, or the reading thread is
+ * interrupted while waiting for the decoder, what was read is played back.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class StreamingRecordingReader implements PacketCursor, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingRecordingReader.class);
+
+    // If the reader falls behind, the decoder thread will block once this many packets are waiting to be read
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    // Most packets to move out of the queue each time a packet is read, so reading a packet never takes long
+    private static final int MAX_DRAIN_SIZE = 1024;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final Path path;
+    private final Predicate<RecordedMessage> messageSelector;
+    private final long fromNanos;
+    private final long toNanos;
+    private final BlockingQueue<RecordedPacket<?, ?>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread decoderThread;
+
+    private volatile boolean decodingFinished = false;
+    private volatile boolean closed = false;
+    private volatile long packetCount = 0;
+    private volatile long messageCount = 0;
+
+    // Only accessed by the thread reading from the cursor
+    private final ArrayList<RecordedPacket<?, ?>> packets = new ArrayList<>();
+    private boolean loaded = false;
+    private int index = 0;
+
+    /**
+     * @param path            recording file
+     * @param messageSelector predicate to select which messages to keep, or null to keep every message
+     * @param fromNanos       offset time in nanoseconds of the start of the range to read
+     * @param toNanos         offset time in nanoseconds of the end of the range to read (inclusive)
+     */
+    public StreamingRecordingReader(Path path, Predicate<RecordedMessage> messageSelector, long fromNanos, long toNanos) {
+        this.path = path;
+        this.messageSelector = messageSelector;
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        this.decoderThread = new Thread(this::decodeLoop, "RecordingDecoder");
+        this.decoderThread.setDaemon(true);
+    }
+
+    public StreamingRecordingReader(Path path, Predicate<RecordedMessage> messageSelector) {
+        this(path, messageSelector, 0, Long.MAX_VALUE);
+    }
+
+    public void start() {
+        this.decoderThread.start();
+    }
+
+    @Override
+    public RecordedPacket<?, ?> next() {
+        if (!this.loaded) {
+            this.receive();
+        }
+        if (this.index < this.packets.size()) {
+            return this.packets.get(this.index++);
+        }
+        return null;
+    }
+
+    @Override
+    public void rewind() {
+        this.index = 0;
+    }
+
+    /**
+     * Move decoded packets out of the queue, waiting for the decoder if there are none left to read. If interrupted
+     * while waiting, decoding is stopped and the packets read so far become the whole recording, otherwise every wait
+     * after rewinding would be interrupted straight away and the cursor would keep reaching its end without waiting.
+     */
+    private void receive() {
+        try {
+            while (true) {
+                // Read before draining, the decoder doesn't queue anything more once it's finished
+                boolean decodingFinished = this.decodingFinished;
+                this.queue.drainTo(this.packets, MAX_DRAIN_SIZE);
+                if (decodingFinished && this.queue.isEmpty()) {
+                    this.loaded = true;
+                    this.packets.trimToSize();
+                    return;
+                }
+                if (this.index < this.packets.size()) {
+                    return;
+                }
+                // Caught up with the decoder
+                RecordedPacket<?, ?> recordedPacket = this.queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (recordedPacket != null) {
+                    this.packets.add(recordedPacket);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while loading '{}', playing back the {} packets that were loaded", this.path,
+                    this.packets.size());
+            this.loaded = true;
+            this.packets.trimToSize();
+            // Nothing more will be read, so don't log the decoder failing as it stops
+            this.closed = true;
+            this.decoderThread.interrupt();
+        }
+    }
+
+    private void decodeLoop() {
+        long startNanos = System.nanoTime();
+        try {
+            RecordingFiles.readPackets(this.path, this.messageSelector, this.fromNanos, this.toNanos, this::queue);
+            LOG.info("Finished loading {} packets ({} messages) from '{}' in {}ms", this.packetCount, this.messageCount,
+                    this.path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (IOException | UncheckedIOException e) {
+            if (!this.closed) {
+                LOG.error("Failed to load '{}', playing back the {} packets that were loaded", this.path, this.packetCount, e);
+            }
+        } finally {
+            this.decodingFinished = true;
+        }
+    }
+
+    private void queue(RecordedPacket<?, ?> recordedPacket) {
+        try {
+            this.queue.put(recordedPacket);
+        } catch (InterruptedException e) {
+            throw new UncheckedIOException(new InterruptedIOException("Recording decoder interrupted"));
+        }
+        // Only written by the decoder thread
+        this.packetCount++;
+        this.messageCount += recordedPacket.getPacketData().getMessageCount();
+    }
+
+    /**
+     * @return the number of packets decoded so far
+     */
+    public long getPacketCount() {
+        return this.packetCount;
+    }
+
+    /**
+     * @return the number of messages in the packets decoded so far
+     */
+    public long getMessageCount() {
+        return this.messageCount;
+    }
+
+    /**
+     * @return true once the whole recording has been decoded
+     */
+    public boolean isDecodingFinished() {
+        return this.decodingFinished;
+    }
+
+    /**
+     * Stop decoding if it hasn't finished yet.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.decoderThread.interrupt();
+        try {
+            this.decoderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the recording decoder to stop");
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes recorded packets to file while they're being recorded, instead of holding the entire recording in memory
+ * until it ends.
+ * <p>
+ * Packets are queued by the recording thread and written in batches by a background writer thread. When compressing,
+ * packets are written in chunks covering at most a few seconds each, see {@link ChunkedRecordingFormat}, otherwise
+ * every batch is flushed to the file. Either way, if the program dies part way through a recording, the file can still
+ * be read back up to the last chunk or batch that was written.
+ * <p>
+ * The output can optionally be rotated into a new file once the current file reaches a maximum size or covers a
+ * maximum length of time. Each rotated file has its packet offset times rebased so that it can be played back by
+ * itself.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class StreamingRecordingWriter implements Consumer<RecordedPacket<?, ?>>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingRecordingWriter.class);
+
+    // If the writer can't keep up, the recording thread will block once this many packets are waiting to be written
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int MAX_BATCH_SIZE = 4096;
+    // Maximum time a packet will sit in the queue before being written, when packets are arriving slowly
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+    // Unlimited file size/duration
+    public static final long NO_ROTATION = -1;
+
+    private final Path basePath;
+    private final long maxFileBytes;
+    private final long maxFileDurationNanos;
+    private final boolean compress;
+    private final VmcCodecSettings codecSettings;
+    private final BlockingQueue<RecordedPacket<?, ?>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+
+    // Held while checking closing and queueing a packet, and while setting closing, so that once closing is set, no
+    // packet can still be on its way into the queue
+    private final Object closeLock = new Object();
+    private volatile boolean closing = false;
+    private volatile IOException writeException = null;
+
+    // Only accessed by the writer thread until it has finished
+    private CountingOutputStream fileOutputStream;
+    // Exactly one of these is non-null while a file is open, depending on whether the output is compressed
+    private BinaryRecordingEncoder encoder;
+    private ChunkedRecordingWriter chunkedWriter;
+    private int fileIndex = 0;
+    private long fileStartOffset = 0;
+    private long filePacketCount = 0;
+    private long totalPacketCount = 0;
+    private final List<Path> writtenFiles = new ArrayList<>();
+
+    /**
+     * @param basePath              file to write to, rotated files get a numbered suffix inserted before the file
+     *                              extension
+     * @param maxFileBytes          rotate to a new file once the current file has reached this size in bytes, or
+     *                              NO_ROTATION
+     * @param maxFileDurationMillis rotate to a new file once the current file covers this length of time, or
+     *                              NO_ROTATION
+     * @param compress              true to write the output as compressed chunks, false to leave it uncompressed so
+     *                              that it can be played back with a {@link MappedRecording}
+     * @param codecSettings         how to compress VMC messages, or null to write them the same as any other message
+     */
+    public StreamingRecordingWriter(Path basePath, long maxFileBytes, long maxFileDurationMillis, boolean compress, VmcCodecSettings codecSettings) {
+        if (maxFileBytes != NO_ROTATION && maxFileBytes < 1) {
+            throw new IllegalArgumentException("Maximum file size must be positive");
+        }
+        if (maxFileDurationMillis != NO_ROTATION && maxFileDurationMillis < 1) {
+            throw new IllegalArgumentException("Maximum file duration must be positive");
+        }
+        this.basePath = basePath;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileDurationNanos = maxFileDurationMillis == NO_ROTATION ? NO_ROTATION : TimeUnit.MILLISECONDS.toNanos(maxFileDurationMillis);
+        this.compress = compress;
+        this.codecSettings = codecSettings;
+        this.writerThread = new Thread(this::writeLoop, "RecordingWriter");
+    }
+
+    public StreamingRecordingWriter(Path basePath, long maxFileBytes, long maxFileDurationMillis, boolean compress) {
+        this(basePath, maxFileBytes, maxFileDurationMillis, compress, VmcCodecSettings.LOSSLESS);
+    }
+
+    public StreamingRecordingWriter(Path basePath) {
+        this(basePath, NO_ROTATION, NO_ROTATION, true);
+    }
+
+    /**
+     * Get the path of a rotated file. The first file is the base path itself, later files have '-N' inserted before
+     * the first '.' of the file name, e.g. 'recording.bin.gz', 'recording-1.bin.gz', 'recording-2.bin.gz'.
+     *
+     * @param basePath  the path of the first file
+     * @param fileIndex index of the file
+     * @return the path of the file with the given index
+     */
+    public static Path rotatedPath(Path basePath, int fileIndex) {
+        if (fileIndex == 0) {
+            return basePath;
+        }
+        String fileName = basePath.getFileName().toString();
+        int extensionIndex = fileName.indexOf('.');
+        String rotatedName;
+        if (extensionIndex == -1) {
+            rotatedName = fileName + '-' + fileIndex;
+        } else {
+            rotatedName = fileName.substring(0, extensionIndex) + '-' + fileIndex + fileName.substring(extensionIndex);
+        }
+        return basePath.resolveSibling(rotatedName);
+    }
+
+    public void start() {
+        this.writerThread.start();
+    }
+
+    /**
+     * @return the number of packets waiting to be written
+     */
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return QUEUE_CAPACITY;
+    }
+
+    /**
+     * Queue a packet to be written. Blocks if the writer has fallen too far behind, closing waits for a blocked packet
+     * to be queued.
+     *
+     * @param recordedPacket packet to write
+     * @throws IllegalStateException if the writer has been closed
+     */
+    @Override
+    public void accept(RecordedPacket<?, ?> recordedPacket) {
+        synchronized (this.closeLock) {
+            if (this.closing) {
+                throw new IllegalStateException("Writer has been closed");
+            }
+            try {
+                // The writer thread keeps taking packets until closing is set, unless writing fails
+                do {
+                    IOException exception = this.writeException;
+                    if (exception != null) {
+                        throw new UncheckedIOException("Writing recording failed", exception);
+                    }
+                } while (!this.queue.offer(recordedPacket, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Write all the remaining queued packets and close the current file.
+     *
+     * @throws IOException if writing failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.closeLock) {
+            this.closing = true;
+        }
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the recording writer to finish");
+        }
+        if (this.writeException != null) {
+            throw this.writeException;
+        }
+    }
+
+    /**
+     * @return total number of packets written, only accurate once closed
+     */
+    public long getPacketCount() {
+        return this.totalPacketCount;
+    }
+
+    /**
+     * @return all the files that were written to, only accurate once closed
+     */
+    public List<Path> getWrittenFiles() {
+        return this.writtenFiles;
+    }
+
+    private void writeLoop() {
+        List<RecordedPacket<?, ?>> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (true) {
+                RecordedPacket<?, ?> first = this.queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // Only finish once closing and there's definitely nothing left to write. closing is only set
+                    // while no packet is being queued, so nothing can be added to the queue after it's seen as empty
+                    if (this.closing && this.queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                this.writeBatch(batch);
+                batch.clear();
+            }
+            if (this.fileIndex == 0) {
+                // Nothing got recorded, but there should still be a (valid) file
+                this.openFile(0);
+            }
+            this.closeCurrentFile();
+        } catch (IOException e) {
+            this.writeException = e;
+            LOG.error("Failed to write recording", e);
+            this.closeQuietly();
+        } catch (InterruptedException e) {
+            this.writeException = new InterruptedIOException("Recording writer interrupted");
+            this.closeQuietly();
+        }
+    }
+
+    private void writeBatch(List<RecordedPacket<?, ?>> batch) throws IOException {
+        for (RecordedPacket<?, ?> recordedPacket : batch) {
+            long offsetTime = recordedPacket.getOffsetTime();
+            if (this.fileOutputStream == null) {
+                this.openFile(offsetTime);
+            } else if (this.maxFileDurationNanos != NO_ROTATION
+                    && offsetTime - this.fileStartOffset >= this.maxFileDurationNanos) {
+                // Keep the file start times aligned to multiples of the maximum duration
+                long elapsedPeriods = (offsetTime - this.fileStartOffset) / this.maxFileDurationNanos;
+                long newFileStartOffset = this.fileStartOffset + elapsedPeriods * this.maxFileDurationNanos;
+                this.closeCurrentFile();
+                this.openFile(newFileStartOffset);
+            }
+            if (this.fileStartOffset != 0) {
+                recordedPacket = recordedPacket.withOffsetTime(offsetTime - this.fileStartOffset);
+            }
+            if (this.chunkedWriter != null) {
+                this.chunkedWriter.writePacket(recordedPacket);
+            } else {
+                this.encoder.writePacket(recordedPacket);
+            }
+            this.filePacketCount++;
+            this.totalPacketCount++;
+        }
+        // When compressing, only chunks that have been finished have been written, the current chunk is only written
+        // once it's finished
+        this.fileOutputStream.flush();
+
+        if (this.maxFileBytes != NO_ROTATION && this.fileOutputStream.getCount() >= this.maxFileBytes) {
+            this.closeCurrentFile();
+        }
+    }
+
+    private void openFile(long fileStartOffset) throws IOException {
+        Path path = rotatedPath(this.basePath, this.fileIndex++);
+        this.fileOutputStream = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        if (this.compress) {
+            this.chunkedWriter = new ChunkedRecordingWriter(this.fileOutputStream, this.codecSettings);
+        } else {
+            this.encoder = new BinaryRecordingEncoder(this.fileOutputStream, this.codecSettings);
+        }
+        this.fileStartOffset = fileStartOffset;
+        this.filePacketCount = 0;
+        this.writtenFiles.add(path);
+        if (this.fileIndex > 1) {
+            LOG.info("Rotated recording to '{}'", path);
+        }
+    }
+
+    private void closeCurrentFile() throws IOException {
+        if (this.fileOutputStream != null) {
+            if (this.chunkedWriter != null) {
+                // Writes the last chunk and the chunk table
+                this.chunkedWriter.close();
+            } else {
+                // Marks the end of the recording so that readers can tell a complete file from one that got cut off
+                this.encoder.writeEnd();
+                this.fileOutputStream.close();
+            }
+            LOG.debug("Wrote {} packets ({} bytes) to '{}'", this.filePacketCount, this.fileOutputStream.getCount(),
+                    this.writtenFiles.get(this.writtenFiles.size() - 1));
+            this.encoder = null;
+            this.chunkedWriter = null;
+            this.fileOutputStream = null;
+        }
+    }
+
+    private void closeQuietly() {
+        if (this.fileOutputStream != null) {
+            try {
+                this.fileOutputStream.close();
+            } catch (IOException e) {
+                // Already failed
+            }
+            this.fileOutputStream = null;
+            this.encoder = null;
+            this.chunkedWriter = null;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Settings for how VMC root, bone and blendshape values are compressed in the binary recording format, see
+ * {@link VmcSampleCodec}.
+ * <p>
+ * Lossless compression stores each value as the difference from the same value in the previous sample of the same bone
+ * or blendshape. Quantized compression first rounds positions and blendshape values to a fixed precision and packs
+ * rotations with the smallest-three method, which loses precision but is much smaller.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public final class VmcCodecSettings {
+    static final byte MODE_LOSSLESS = 0;
+    static final byte MODE_QUANTIZED = 1;
+
+    public static final VmcCodecSettings LOSSLESS = new VmcCodecSettings(MODE_LOSSLESS, 0, 0, 0);
+
+    // 16 bits per smallest-three component is accurate to within about 0.002 degrees
+    public static final int DEFAULT_ROTATION_BITS = 16;
+    public static final float DEFAULT_BLEND_PRECISION = 0.0001f;
+
+    private final byte mode;
+    private final float positionPrecision;
+    private final int rotationBits;
+    private final float blendPrecision;
+
+    private VmcCodecSettings(byte mode, float positionPrecision, int rotationBits, float blendPrecision) {
+        this.mode = mode;
+        this.positionPrecision = positionPrecision;
+        this.rotationBits = rotationBits;
+        this.blendPrecision = blendPrecision;
+    }
+
+    /**
+     * @param positionPrecision positions are rounded to a multiple of this, in metres
+     */
+    public static VmcCodecSettings quantized(float positionPrecision) {
+        return quantized(positionPrecision, DEFAULT_ROTATION_BITS, DEFAULT_BLEND_PRECISION);
+    }
+
+    /**
+     * @param positionPrecision positions are rounded to a multiple of this, in metres
+     * @param rotationBits      bits per stored rotation component, the largest component isn't stored
+     * @param blendPrecision    blendshape values are rounded to a multiple of this
+     */
+    public static VmcCodecSettings quantized(float positionPrecision, int rotationBits, float blendPrecision) {
+        if (!(positionPrecision > 0) || Float.isInfinite(positionPrecision)) {
+            throw new IllegalArgumentException("Position precision must be positive");
+        }
+        if (rotationBits < 4 || rotationBits > 30) {
+            throw new IllegalArgumentException("Rotation bits must be between 4 and 30");
+        }
+        if (!(blendPrecision > 0) || Float.isInfinite(blendPrecision)) {
+            throw new IllegalArgumentException("Blend precision must be positive");
+        }
+        return new VmcCodecSettings(MODE_QUANTIZED, positionPrecision, rotationBits, blendPrecision);
+    }
+
+    public boolean isLossless() {
+        return this.mode == MODE_LOSSLESS;
+    }
+
+    public float getPositionPrecision() {
+        return this.positionPrecision;
+    }
+
+    public int getRotationBits() {
+        return this.rotationBits;
+    }
+
+    public float getBlendPrecision() {
+        return this.blendPrecision;
+    }
+
+    void write(RecordBuffer buffer) {
+        buffer.putByte(this.mode);
+        if (this.mode == MODE_QUANTIZED) {
+            buffer.putInt(Float.floatToRawIntBits(this.positionPrecision));
+            buffer.putByte(this.rotationBits);
+            buffer.putInt(Float.floatToRawIntBits(this.blendPrecision));
+        }
+    }
+
+    static VmcCodecSettings read(ByteBuffer payload) throws StreamCorruptedException {
+        byte mode = payload.get();
+        switch (mode) {
+            case MODE_LOSSLESS:
+                return LOSSLESS;
+            case MODE_QUANTIZED:
+                float positionPrecision = payload.getFloat();
+                int rotationBits = payload.get();
+                float blendPrecision = payload.getFloat();
+                return quantized(positionPrecision, rotationBits, blendPrecision);
+            default:
+                throw new StreamCorruptedException("Unknown VMC codec mode " + mode);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (this.mode == MODE_LOSSLESS) {
+            return "VmcCodecSettings{lossless}";
+        }
+        return "VmcCodecSettings{" +
+                "positionPrecision=" + positionPrecision +
+                ", rotationBits=" + rotationBits +
+                ", blendPrecision=" + blendPrecision +
+                '}';
+    }
+}
@@ -0,0 +1,315 @@
+package uk.co.mysterymayhem.vmcplayback.osc.io;
+
+import uk.co.mysterymayhem.vmcplayback.osc.vmc.VmcUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compresses the arguments of VMC root, bone and blendshape messages by storing each sample relative to the previous
+ * sample of the same root, bone or blendshape, see {@link VmcCodecSettings}.
+ * <p>
+ * Each root, bone and blendshape is a channel, identified by its kind and the id of its name. The encoder and decoder
+ * both keep the last sample of every channel, so samples must be decoded in the order they were encoded. Calling
+ * {@link #reset()} forgets every channel so that the next sample of each is stored in full, the encoder does this at
+ * each keyframe record so that decoding can start from any keyframe.
+ * <p>
+ * Lossless encoding stores the difference between the bits of each float and the bits of the same float in the
+ * previous sample, as a zigzag varint. Values that change slowly have bits that change slowly, so the differences are
+ * small.
+ * <p>
+ * Quantized transforms start with a header byte, the low 2 bits are the index of the largest rotation component and
+ * bit 2 is set if the transform couldn't be quantized, in which case the 7 floats follow as they are. Otherwise, the
+ * three position components are zigzag varints of the change in quantized value and the rotation is packed with the
+ * smallest-three method: the largest component is dropped, made positive by negating the whole quaternion, and
+ * recomputed when decoding. The three remaining components are zigzag varints of the change in quantized value if
+ * the largest component was the same in the previous sample, or the quantized values themselves if it wasn't.
+ * <p>
+ * Quantized blendshape values are a varint of the zigzag change in quantized value shifted left by 1, or 1 followed
+ * by the float as it is if the value couldn't be quantized.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+class VmcSampleCodec {
+    static final int CHANNEL_NONE = -1;
+    static final int CHANNEL_ROOT = 0;
+    static final int CHANNEL_BONE = 1;
+    static final int CHANNEL_BLEND = 2;
+
+    private static final String TRANSFORM_TYPE_TAGS = "sfffffff";
+    private static final String BLEND_TYPE_TAGS = "sf";
+    private static final int TRANSFORM_VALUES = 7;
+    private static final int HEADER_RAW = 0b100;
+    // Anything larger is stored as is instead, so that quantized values and their differences always fit in an int
+    private static final double MAX_QUANTIZED = 1 << 29;
+
+    private final boolean lossless;
+    private final double positionPrecision;
+    private final double rotationScale;
+    private final int maxRotationComponent;
+    private final double blendPrecision;
+
+    // Last sample of each channel, indexed by channel kind and then by name id. Lossless channels keep float bits,
+    // quantized transform channels keep the 3 quantized position components, the largest rotation component index and
+    // the 3 quantized rotation components
+    private final int[][][] lastValues = new int[3][][];
+    private final boolean[][] hasLast = new boolean[3][];
+
+    VmcSampleCodec(VmcCodecSettings settings) {
+        this.lossless = settings.isLossless();
+        this.positionPrecision = settings.getPositionPrecision();
+        // The smallest three components of a unit quaternion are all within +-1/sqrt(2)
+        this.maxRotationComponent = (1 << (settings.getRotationBits() - 1)) - 1;
+        this.rotationScale = this.maxRotationComponent * Math.sqrt(2);
+        this.blendPrecision = settings.getBlendPrecision();
+        for (int kind = 0; kind < 3; kind++) {
+            this.lastValues[kind] = new int[0][];
+            this.hasLast[kind] = new boolean[0];
+        }
+    }
+
+    /**
+     * Get the channel kind of a message, only messages with the exact type tags VMC uses are compressed.
+     *
+     * @return the channel kind, or CHANNEL_NONE if messages with this address and type tags aren't compressed
+     */
+    static int getChannelKind(String address, String typeTags) {
+        switch (address) {
+            case VmcUtils.VMC_ROOT_ADDRESS:
+                return TRANSFORM_TYPE_TAGS.equals(typeTags) ? CHANNEL_ROOT : CHANNEL_NONE;
+            case VmcUtils.VMC_BONE_ADDRESS:
+                return TRANSFORM_TYPE_TAGS.equals(typeTags) ? CHANNEL_BONE : CHANNEL_NONE;
+            case VmcUtils.VMC_BLEND_VALUE_ADDRESS:
+                return BLEND_TYPE_TAGS.equals(typeTags) ? CHANNEL_BLEND : CHANNEL_NONE;
+            default:
+                return CHANNEL_NONE;
+        }
+    }
+
+    /**
+     * Forget the last sample of every channel.
+     */
+    void reset() {
+        for (boolean[] hasLast : this.hasLast) {
+            Arrays.fill(hasLast, false);
+        }
+    }
+
+    /**
+     * Encode the float arguments of a message, the name argument is written separately by the caller as a name id.
+     */
+    void encode(int channelKind, int nameId, List<Object> arguments, RecordBuffer buffer) {
+        int[] last = this.getLast(channelKind, nameId);
+        boolean hasLast = this.hasLast[channelKind][nameId];
+        boolean nowHasLast;
+        if (channelKind == CHANNEL_BLEND) {
+            float value = (Float) arguments.get(1);
+            nowHasLast = this.lossless
+                    ? encodeLossless(value, hasLast, last, 0, buffer)
+                    : this.encodeQuantizedBlend(value, hasLast, last, buffer);
+        } else if (this.lossless) {
+            for (int i = 0; i < TRANSFORM_VALUES; i++) {
+                encodeLossless((Float) arguments.get(i + 1), hasLast, last, i, buffer);
+            }
+            nowHasLast = true;
+        } else {
+            nowHasLast = this.encodeQuantizedTransform(arguments, hasLast, last, buffer);
+        }
+        this.hasLast[channelKind][nameId] = nowHasLast;
+    }
+
+    /**
+     * Decode the float arguments of a message.
+     *
+     * @param name name argument of the message, the first argument
+     * @return the message's arguments
+     */
+    List<Object> decode(int channelKind, int nameId, String name, ByteBuffer payload) {
+        int[] last = this.getLast(channelKind, nameId);
+        boolean hasLast = this.hasLast[channelKind][nameId];
+        boolean nowHasLast;
+        List<Object> arguments;
+        if (channelKind == CHANNEL_BLEND) {
+            arguments = new ArrayList<>(2);
+            arguments.add(name);
+            nowHasLast = this.lossless
+                    ? decodeLossless(payload, hasLast, last, 0, arguments)
+                    : this.decodeQuantizedBlend(payload, hasLast, last, arguments);
+        } else {
+            arguments = new ArrayList<>(TRANSFORM_VALUES + 1);
+            arguments.add(name);
+            if (this.lossless) {
+                for (int i = 0; i < TRANSFORM_VALUES; i++) {
+                    decodeLossless(payload, hasLast, last, i, arguments);
+                }
+                nowHasLast = true;
+            } else {
+                nowHasLast = this.decodeQuantizedTransform(payload, hasLast, last, arguments);
+            }
+        }
+        this.hasLast[channelKind][nameId] = nowHasLast;
+        return arguments;
+    }
+
+    private int[] getLast(int channelKind, int nameId) {
+        int[][] lastValues = this.lastValues[channelKind];
+        if (nameId >= lastValues.length) {
+            int newLength = Math.max(nameId + 1, lastValues.length * 2);
+            lastValues = Arrays.copyOf(lastValues, newLength);
+            this.lastValues[channelKind] = lastValues;
+            this.hasLast[channelKind] = Arrays.copyOf(this.hasLast[channelKind], newLength);
+        }
+        int[] last = lastValues[nameId];
+        if (last == null) {
+            last = new int[TRANSFORM_VALUES];
+            lastValues[nameId] = last;
+        }
+        return last;
+    }
+
+    private static boolean encodeLossless(float value, boolean hasLast, int[] last, int index, RecordBuffer buffer) {
+        int bits = Float.floatToRawIntBits(value);
+        // Wrapping int subtraction, so any pair of floats has a difference that gets back to the original bits
+        buffer.putZigZag(hasLast ? bits - last[index] : bits);
+        last[index] = bits;
+        return true;
+    }
+
+    private static boolean decodeLossless(ByteBuffer payload, boolean hasLast, int[] last, int index, List<Object> arguments) {
+        int bits = (int) BinaryRecordingDecoder.readZigZag(payload);
+        if (hasLast) {
+            bits += last[index];
+        }
+        last[index] = bits;
+        arguments.add(Float.intBitsToFloat(bits));
+        return true;
+    }
+
+    private boolean encodeQuantizedBlend(float value, boolean hasLast, int[] last, RecordBuffer buffer) {
+        double scaled = value / this.blendPrecision;
+        if (!(Math.abs(scaled) <= MAX_QUANTIZED)) {
+            buffer.putVarint(1);
+            buffer.putInt(Float.floatToRawIntBits(value));
+            return false;
+        }
+        int quantized = (int) Math.round(scaled);
+        long delta = hasLast ? quantized - last[0] : quantized;
+        buffer.putVarint(((delta << 1) ^ (delta >> 63)) << 1);
+        last[0] = quantized;
+        return true;
+    }
+
+    private boolean decodeQuantizedBlend(ByteBuffer payload, boolean hasLast, int[] last, List<Object> arguments) {
+        long varint = BinaryRecordingDecoder.readVarint(payload);
+        if ((varint & 1) != 0) {
+            arguments.add(payload.getFloat());
+            return false;
+        }
+        long zigZag = varint >>> 1;
+        int quantized = (int) ((zigZag >>> 1) ^ -(zigZag & 1));
+        if (hasLast) {
+            quantized += last[0];
+        }
+        last[0] = quantized;
+        arguments.add((float) (quantized * this.blendPrecision));
+        return true;
+    }
+
+    private boolean encodeQuantizedTransform(List<Object> arguments, boolean hasLast, int[] last, RecordBuffer buffer) {
+        double positionPrecision = this.positionPrecision;
+        double px = (Float) arguments.get(1) / positionPrecision;
+        double py = (Float) arguments.get(2) / positionPrecision;
+        double pz = (Float) arguments.get(3) / positionPrecision;
+        float qx = (Float) arguments.get(4);
+        float qy = (Float) arguments.get(5);
+        float qz = (Float) arguments.get(6);
+        float qw = (Float) arguments.get(7);
+        double norm = Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+
+        // The comparisons are also false for NaN
+        if (!(Math.abs(px) <= MAX_QUANTIZED && Math.abs(py) <= MAX_QUANTIZED && Math.abs(pz) <= MAX_QUANTIZED && norm > 0)
+                || Double.isInfinite(norm)) {
+            buffer.putByte(HEADER_RAW);
+            for (int i = 1; i <= TRANSFORM_VALUES; i++) {
+                buffer.putInt(Float.floatToRawIntBits((Float) arguments.get(i)));
+            }
+            return false;
+        }
+
+        double[] rotation = {qx / norm, qy / norm, qz / norm, qw / norm};
+        int largest = 0;
+        for (int i = 1; i < 4; i++) {
+            if (Math.abs(rotation[i]) > Math.abs(rotation[largest])) {
+                largest = i;
+            }
+        }
+        // q and -q are the same rotation, so the largest component can always be made positive
+        double sign = rotation[largest] < 0 ? -1 : 1;
+        int maxComponent = this.maxRotationComponent;
+
+        buffer.putByte(largest);
+        putQuantized((int) Math.round(px), hasLast, last, 0, buffer);
+        putQuantized((int) Math.round(py), hasLast, last, 1, buffer);
+        putQuantized((int) Math.round(pz), hasLast, last, 2, buffer);
+        boolean rotationHasLast = hasLast && last[3] == largest;
+        last[3] = largest;
+        int stored = 4;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                long component = Math.round(rotation[i] * sign * this.rotationScale);
+                int quantized = (int) Math.max(-maxComponent, Math.min(maxComponent, component));
+                putQuantized(quantized, rotationHasLast, last, stored++, buffer);
+            }
+        }
+        return true;
+    }
+
+    private boolean decodeQuantizedTransform(ByteBuffer payload, boolean hasLast, int[] last, List<Object> arguments) {
+        int header = payload.get();
+        if ((header & HEADER_RAW) != 0) {
+            for (int i = 0; i < TRANSFORM_VALUES; i++) {
+                arguments.add(payload.getFloat());
+            }
+            return false;
+        }
+        double positionPrecision = this.positionPrecision;
+        arguments.add((float) (getQuantized(payload, hasLast, last, 0) * positionPrecision));
+        arguments.add((float) (getQuantized(payload, hasLast, last, 1) * positionPrecision));
+        arguments.add((float) (getQuantized(payload, hasLast, last, 2) * positionPrecision));
+
+        int largest = header & 0b11;
+        boolean rotationHasLast = hasLast && last[3] == largest;
+        last[3] = largest;
+        double[] rotation = new double[4];
+        double sumOfSquares = 0;
+        int stored = 4;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                double component = getQuantized(payload, rotationHasLast, last, stored++) / this.rotationScale;
+                rotation[i] = component;
+                sumOfSquares += component * component;
+            }
+        }
+        rotation[largest] = Math.sqrt(Math.max(0, 1 - sumOfSquares));
+        for (double component : rotation) {
+            arguments.add((float) component);
+        }
+        return true;
+    }
+
+    private static void putQuantized(int quantized, boolean hasLast, int[] last, int index, RecordBuffer buffer) {
+        buffer.putZigZag(hasLast ? (long) quantized - last[index] : quantized);
+        last[index] = quantized;
+    }
+
+    private static int getQuantized(ByteBuffer payload, boolean hasLast, int[] last, int index) {
+        int quantized = (int) BinaryRecordingDecoder.readZigZag(payload);
+        if (hasLast) {
+            quantized += last[index];
+        }
+        last[index] = quantized;
+        return quantized;
+    }
+}
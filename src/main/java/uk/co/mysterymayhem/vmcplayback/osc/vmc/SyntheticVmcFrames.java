@@ -0,0 +1,187 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedBundle;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedBundlePacket;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacketData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes VMC frames that look like those sent by a face and body tracker, for load testing and benchmarks without a
+ * real tracker.
+ * <p>
+ * Each frame has, in order, {@code /VMC/Ext/OK}, {@code /VMC/Ext/T}, the root transform, a transform for every VRM
+ * humanoid bone, a value for every ARKit blendshape and {@code /VMC/Ext/Blend/Apply}. Bones rotate back and forth and
+ * blendshapes open and close at their own rates, so consecutive frames differ the way real tracking does.
+ * <p>
+ * Frames depend only on the seed and the time they're for, so the same seed always makes the same frames. Different
+ * seeds make different performers.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class SyntheticVmcFrames {
+    public static final List<String> HUMANOID_BONE_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "Hips", "LeftUpperLeg", "RightUpperLeg", "LeftLowerLeg", "RightLowerLeg", "LeftFoot", "RightFoot",
+            "Spine", "Chest", "UpperChest", "Neck", "Head", "LeftShoulder", "RightShoulder",
+            "LeftUpperArm", "RightUpperArm", "LeftLowerArm", "RightLowerArm", "LeftHand", "RightHand",
+            "LeftToes", "RightToes", "LeftEye", "RightEye", "Jaw",
+            "LeftThumbProximal", "LeftThumbIntermediate", "LeftThumbDistal",
+            "LeftIndexProximal", "LeftIndexIntermediate", "LeftIndexDistal",
+            "LeftMiddleProximal", "LeftMiddleIntermediate", "LeftMiddleDistal",
+            "LeftRingProximal", "LeftRingIntermediate", "LeftRingDistal",
+            "LeftLittleProximal", "LeftLittleIntermediate", "LeftLittleDistal",
+            "RightThumbProximal", "RightThumbIntermediate", "RightThumbDistal",
+            "RightIndexProximal", "RightIndexIntermediate", "RightIndexDistal",
+            "RightMiddleProximal", "RightMiddleIntermediate", "RightMiddleDistal",
+            "RightRingProximal", "RightRingIntermediate", "RightRingDistal",
+            "RightLittleProximal", "RightLittleIntermediate", "RightLittleDistal"));
+
+    public static final List<String> BLENDSHAPE_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "eyeBlinkLeft", "eyeLookDownLeft", "eyeLookInLeft", "eyeLookOutLeft", "eyeLookUpLeft", "eyeSquintLeft",
+            "eyeWideLeft", "eyeBlinkRight", "eyeLookDownRight", "eyeLookInRight", "eyeLookOutRight", "eyeLookUpRight",
+            "eyeSquintRight", "eyeWideRight", "jawForward", "jawLeft", "jawRight", "jawOpen", "mouthClose",
+            "mouthFunnel", "mouthPucker", "mouthLeft", "mouthRight", "mouthSmileLeft", "mouthSmileRight",
+            "mouthFrownLeft", "mouthFrownRight", "mouthDimpleLeft", "mouthDimpleRight", "mouthStretchLeft",
+            "mouthStretchRight", "mouthRollLower", "mouthRollUpper", "mouthShrugLower", "mouthShrugUpper",
+            "mouthPressLeft", "mouthPressRight", "mouthLowerDownLeft", "mouthLowerDownRight", "mouthUpperUpLeft",
+            "mouthUpperUpRight", "browDownLeft", "browDownRight", "browInnerUp", "browOuterUpLeft", "browOuterUpRight",
+            "cheekPuff", "cheekSquintLeft", "cheekSquintRight", "noseSneerLeft", "noseSneerRight", "tongueOut"));
+
+    // OSC time tag meaning "immediately", what trackers send
+    private static final long IMMEDIATE_NTP_TIME = 1;
+
+    private final int boneCount;
+    private final int blendshapeCount;
+    private final boolean timing;
+    // Per bone: rest position x, y, z, rotation axis x, y, z, swing amplitude in radians, frequency in Hz, phase
+    private final double[][] bones;
+    // Per blendshape: frequency in Hz, phase
+    private final double[][] blendshapes;
+    private final double rootX;
+    private final double rootZ;
+
+    /**
+     * Make frames with every humanoid bone and blendshape.
+     *
+     * @param seed seed that decides the motion, performers with different seeds move differently
+     */
+    public SyntheticVmcFrames(long seed) {
+        this(seed, HUMANOID_BONE_NAMES.size(), BLENDSHAPE_NAMES.size(), true);
+    }
+
+    /**
+     * @param seed            seed that decides the motion, performers with different seeds move differently
+     * @param boneCount       number of humanoid bones to send, from the first, at most {@link #HUMANOID_BONE_NAMES}
+     * @param blendshapeCount number of blendshapes to send, from the first, names beyond {@link #BLENDSHAPE_NAMES}
+     *                        are numbered
+     * @param timing          true to send {@code /VMC/Ext/OK} and {@code /VMC/Ext/T}
+     */
+    public SyntheticVmcFrames(long seed, int boneCount, int blendshapeCount, boolean timing) {
+        if (boneCount < 0 || boneCount > HUMANOID_BONE_NAMES.size()) {
+            throw new IllegalArgumentException("Bone count must be between 0 and " + HUMANOID_BONE_NAMES.size());
+        }
+        if (blendshapeCount < 0) {
+            throw new IllegalArgumentException("Blendshape count must not be negative");
+        }
+        this.boneCount = boneCount;
+        this.blendshapeCount = blendshapeCount;
+        this.timing = timing;
+        Random random = new Random(seed);
+        this.bones = new double[boneCount][];
+        for (int i = 0; i < boneCount; i++) {
+            double axisX = random.nextGaussian();
+            double axisY = random.nextGaussian();
+            double axisZ = random.nextGaussian();
+            double length = Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+            this.bones[i] = new double[]{
+                    (random.nextDouble() - 0.5) * 0.2, random.nextDouble() * 0.3, (random.nextDouble() - 0.5) * 0.05,
+                    axisX / length, axisY / length, axisZ / length,
+                    0.05 + random.nextDouble() * 0.5, 0.1 + random.nextDouble() * 1.5, random.nextDouble() * 2 * Math.PI};
+        }
+        this.blendshapes = new double[blendshapeCount][];
+        for (int i = 0; i < blendshapeCount; i++) {
+            this.blendshapes[i] = new double[]{0.05 + random.nextDouble() * 2, random.nextDouble() * 2 * Math.PI};
+        }
+        this.rootX = (random.nextDouble() - 0.5) * 2;
+        this.rootZ = (random.nextDouble() - 0.5) * 2;
+    }
+
+    /**
+     * @return the number of messages in each frame
+     */
+    public int getMessageCount() {
+        // Root and Blend/Apply are always sent
+        return (this.timing ? 2 : 0) + 1 + this.boneCount + this.blendshapeCount + 1;
+    }
+
+    /**
+     * @param timeSeconds time of the frame, decides the pose and the value of {@code /VMC/Ext/T}
+     * @return every message of the frame
+     */
+    public List<RecordedMessage> messages(double timeSeconds) {
+        List<RecordedMessage> messages = new ArrayList<>(this.getMessageCount());
+        if (this.timing) {
+            messages.add(message(VmcUtils.VMC_OK_ADDRESS, "i", 1));
+            messages.add(message(VmcPlayer.VMC_TIMING_ADDRESS, "f", (float) timeSeconds));
+        }
+        // Swaying slowly on the spot
+        double sway = Math.sin(timeSeconds * 0.5);
+        messages.add(transform(VmcUtils.VMC_ROOT_ADDRESS, "root",
+                this.rootX + sway * 0.05, 0, this.rootZ + Math.cos(timeSeconds * 0.3) * 0.05,
+                0, 1, 0, sway * 0.2));
+        for (int i = 0; i < this.boneCount; i++) {
+            double[] bone = this.bones[i];
+            double angle = bone[6] * Math.sin(2 * Math.PI * bone[7] * timeSeconds + bone[8]);
+            messages.add(transform(VmcUtils.VMC_BONE_ADDRESS, HUMANOID_BONE_NAMES.get(i),
+                    bone[0], bone[1], bone[2], bone[3], bone[4], bone[5], angle));
+        }
+        for (int i = 0; i < this.blendshapeCount; i++) {
+            double[] blendshape = this.blendshapes[i];
+            // Closed for half the time, like most real blendshapes
+            double value = Math.max(0, Math.sin(2 * Math.PI * blendshape[0] * timeSeconds + blendshape[1]));
+            String name = i < BLENDSHAPE_NAMES.size() ? BLENDSHAPE_NAMES.get(i) : "blendshape" + i;
+            messages.add(message(VmcUtils.VMC_BLEND_VALUE_ADDRESS, "sf", name, (float) value));
+        }
+        messages.add(message(VmcUtils.VMC_BLEND_APPLY_ADDRESS, ""));
+        return messages;
+    }
+
+    /**
+     * @param offsetTimeNanos offset time of the frame, which is also the time the pose is for
+     * @return the frame as a single bundle
+     */
+    public RecordedBundlePacket frame(long offsetTimeNanos) {
+        List<RecordedPacketData<?>> elements = new ArrayList<>(this.messages(offsetTimeNanos / 1e9));
+        return new RecordedBundlePacket(offsetTimeNanos, new RecordedBundle(IMMEDIATE_NTP_TIME, elements));
+    }
+
+    /**
+     * @param frameCount number of frames
+     * @param rateHz     frames per second
+     * @return consecutive frames starting at offset time 0
+     */
+    public List<RecordedPacket<?, ?>> frames(int frameCount, double rateHz) {
+        List<RecordedPacket<?, ?>> frames = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(this.frame(Math.round(i * 1e9 / rateHz)));
+        }
+        return frames;
+    }
+
+    private static RecordedMessage transform(String address, String name, double x, double y, double z,
+                                             double axisX, double axisY, double axisZ, double angle) {
+        double sin = Math.sin(angle / 2);
+        return message(address, "sfffffff", name, (float) x, (float) y, (float) z,
+                (float) (axisX * sin), (float) (axisY * sin), (float) (axisZ * sin), (float) Math.cos(angle / 2));
+    }
+
+    private static RecordedMessage message(String address, String argumentTypes, Object... arguments) {
+        return new RecordedMessage(address, new ArrayList<>(Arrays.asList(arguments)), argumentTypes);
+    }
+}
@@ -0,0 +1,460 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import uk.co.mysterymayhem.vmcplayback.osc.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compact, struct-of-arrays, in-memory store of recorded VMC packets.
+ * <p>
+ * Each recorded packet is a frame. Root, bone and blendshape messages, which make up almost all VMC traffic, aren't
+ * kept as RecordedMessages. Their names are replaced with small integer ids from a {@link VmcNameTable} and their
+ * values are stored in primitive float columns, see {@link SampleColumn}. Every frame records where its samples start
+ * in each column, so the columns are sparse, a frame only has samples for the bones and blendshapes that were actually
+ * sent in it.
+ * <p>
+ * VMC timing messages are stored in a float column too. Messages without arguments, such as
+ * {@code /VMC/Ext/Blend/Apply}, are shared between every frame that has them. Any other message is kept as it is. The
+ * kind of every element of every frame is kept in order, so converting a frame back to a RecordedPacket gives the same
+ * messages in the same order as the packet that was added. Packets that contain nested bundles are kept as they are
+ * too.
+ * <p>
+ * A bone sample takes 31 bytes, instead of well over 100 bytes as a RecordedMessage.
+ * <p>
+ * Not thread safe.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class VmcFrames implements Consumer<RecordedPacket<?, ?>> {
+
+    // Element kinds
+    public static final byte ELEMENT_ROOT = 0;
+    public static final byte ELEMENT_BONE = 1;
+    public static final byte ELEMENT_BLEND = 2;
+    public static final byte ELEMENT_OTHER = 3;
+    public static final byte ELEMENT_TIME = 4;
+
+    // Frame kinds
+    // A single message that wasn't in a bundle
+    public static final byte FRAME_MESSAGE = 0;
+    // A bundle of messages
+    public static final byte FRAME_BUNDLE = 1;
+    // Packet data that's kept as it is, as a single 'other' element
+    public static final byte FRAME_PACKET_DATA = 2;
+
+    // Position x, y, z and rotation quaternion x, y, z, w
+    public static final int TRANSFORM_STRIDE = 7;
+    public static final int BLEND_STRIDE = 1;
+
+    private static final String TRANSFORM_TYPE_TAGS = "sfffffff";
+    private static final String BLEND_TYPE_TAGS = "sf";
+    private static final String TIME_TYPE_TAGS = "f";
+    private static final int INITIAL_FRAME_CAPACITY = 1024;
+
+    private final VmcNameTable boneNames = new VmcNameTable();
+    private final VmcNameTable blendNames = new VmcNameTable();
+    private final SampleColumn roots = new SampleColumn(TRANSFORM_STRIDE);
+    private final SampleColumn bones = new SampleColumn(TRANSFORM_STRIDE);
+    private final SampleColumn blends = new SampleColumn(BLEND_STRIDE);
+    private final ArrayList<RecordedPacketData<?>> others = new ArrayList<>();
+    // Messages without arguments are all the same, so only one of each is kept
+    private final Map<String, RecordedMessage> noArgumentMessages = new HashMap<>();
+    private float[] times = new float[INITIAL_FRAME_CAPACITY];
+    private int timeCount = 0;
+
+    private int frameCount = 0;
+    private long[] offsetTimes = new long[INITIAL_FRAME_CAPACITY];
+    private long[] ntpTimes = new long[INITIAL_FRAME_CAPACITY];
+    private byte[] frameKinds = new byte[INITIAL_FRAME_CAPACITY];
+    // Start of each frame in each column, with an extra element for the end of the last frame
+    private int[] elementStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+    private int[] rootStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+    private int[] boneStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+    private int[] blendStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+    private int[] otherStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+    private int[] timeStarts = new int[INITIAL_FRAME_CAPACITY + 1];
+
+    private byte[] elementKinds = new byte[INITIAL_FRAME_CAPACITY * 16];
+    private int elementCount = 0;
+
+    public static VmcFrames fromRecordedPackets(List<RecordedPacket<?, ?>> recordedPackets) {
+        VmcFrames vmcFrames = new VmcFrames();
+        recordedPackets.forEach(vmcFrames);
+        vmcFrames.trimToSize();
+        return vmcFrames;
+    }
+
+    /**
+     * Add a packet as a new frame. Packets should be added in offset time order.
+     */
+    @Override
+    public void accept(RecordedPacket<?, ?> recordedPacket) {
+        this.ensureFrameCapacity(this.frameCount + 1);
+        RecordedPacketData<?> packetData = recordedPacket.getPacketData();
+        int frame = this.frameCount;
+        this.offsetTimes[frame] = recordedPacket.getOffsetTime();
+        if (packetData instanceof RecordedMessage) {
+            this.frameKinds[frame] = FRAME_MESSAGE;
+            this.addMessage((RecordedMessage) packetData);
+        } else if (packetData instanceof RecordedBundle && isFlat((RecordedBundle) packetData)) {
+            RecordedBundle recordedBundle = (RecordedBundle) packetData;
+            this.frameKinds[frame] = FRAME_BUNDLE;
+            this.ntpTimes[frame] = recordedBundle.getNtpTime();
+            for (RecordedPacketData<?> element : recordedBundle.getRecordedPacketData()) {
+                this.addMessage((RecordedMessage) element);
+            }
+        } else {
+            this.frameKinds[frame] = FRAME_PACKET_DATA;
+            this.addElement(ELEMENT_OTHER);
+            this.others.add(packetData);
+        }
+        this.frameCount++;
+        this.markFrameEnd(this.frameCount);
+    }
+
+    private static boolean isFlat(RecordedBundle recordedBundle) {
+        for (RecordedPacketData<?> element : recordedBundle.getRecordedPacketData()) {
+            if (!(element instanceof RecordedMessage)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addMessage(RecordedMessage recordedMessage) {
+        String address = recordedMessage.getAddress();
+        CharSequence typeTags = recordedMessage.getArgumentTypes();
+        List<Object> arguments = recordedMessage.getArguments();
+        switch (address) {
+            case VmcUtils.VMC_BONE_ADDRESS:
+                if (TRANSFORM_TYPE_TAGS.contentEquals(typeTags) && this.bones.add(this.boneNames, arguments)) {
+                    this.addElement(ELEMENT_BONE);
+                    return;
+                }
+                break;
+            case VmcUtils.VMC_ROOT_ADDRESS:
+                if (TRANSFORM_TYPE_TAGS.contentEquals(typeTags) && this.roots.add(this.boneNames, arguments)) {
+                    this.addElement(ELEMENT_ROOT);
+                    return;
+                }
+                break;
+            case VmcUtils.VMC_BLEND_VALUE_ADDRESS:
+                if (BLEND_TYPE_TAGS.contentEquals(typeTags) && this.blends.add(this.blendNames, arguments)) {
+                    this.addElement(ELEMENT_BLEND);
+                    return;
+                }
+                break;
+            case VmcPlayer.VMC_TIMING_ADDRESS:
+                if (TIME_TYPE_TAGS.contentEquals(typeTags) && arguments.size() == 1 && arguments.get(0) instanceof Float) {
+                    if (this.timeCount == this.times.length) {
+                        this.times = Arrays.copyOf(this.times, Math.max(this.timeCount * 2, 16));
+                    }
+                    this.times[this.timeCount++] = (Float) arguments.get(0);
+                    this.addElement(ELEMENT_TIME);
+                    return;
+                }
+                break;
+        }
+        if (arguments.isEmpty() && typeTags.length() == 0) {
+            RecordedMessage shared = this.noArgumentMessages.putIfAbsent(address, recordedMessage);
+            if (shared != null) {
+                recordedMessage = shared;
+            }
+        }
+        this.addElement(ELEMENT_OTHER);
+        this.others.add(recordedMessage);
+    }
+
+    private void addElement(byte elementKind) {
+        if (this.elementCount == this.elementKinds.length) {
+            this.elementKinds = Arrays.copyOf(this.elementKinds, Math.max(this.elementCount * 2, 16));
+        }
+        this.elementKinds[this.elementCount++] = elementKind;
+    }
+
+    private void markFrameEnd(int frameEnd) {
+        this.elementStarts[frameEnd] = this.elementCount;
+        this.rootStarts[frameEnd] = this.roots.size;
+        this.boneStarts[frameEnd] = this.bones.size;
+        this.blendStarts[frameEnd] = this.blends.size;
+        this.otherStarts[frameEnd] = this.others.size();
+        this.timeStarts[frameEnd] = this.timeCount;
+    }
+
+    private void ensureFrameCapacity(int capacity) {
+        if (capacity > this.offsetTimes.length) {
+            this.resizeFrames(Math.max(capacity, this.offsetTimes.length * 2));
+        }
+    }
+
+    private void resizeFrames(int capacity) {
+        this.offsetTimes = Arrays.copyOf(this.offsetTimes, capacity);
+        this.ntpTimes = Arrays.copyOf(this.ntpTimes, capacity);
+        this.frameKinds = Arrays.copyOf(this.frameKinds, capacity);
+        this.elementStarts = Arrays.copyOf(this.elementStarts, capacity + 1);
+        this.rootStarts = Arrays.copyOf(this.rootStarts, capacity + 1);
+        this.boneStarts = Arrays.copyOf(this.boneStarts, capacity + 1);
+        this.blendStarts = Arrays.copyOf(this.blendStarts, capacity + 1);
+        this.otherStarts = Arrays.copyOf(this.otherStarts, capacity + 1);
+        this.timeStarts = Arrays.copyOf(this.timeStarts, capacity + 1);
+    }
+
+    /**
+     * Release unused capacity, for once every frame has been added.
+     */
+    public void trimToSize() {
+        this.resizeFrames(this.frameCount);
+        this.elementKinds = Arrays.copyOf(this.elementKinds, this.elementCount);
+        this.roots.trimToSize();
+        this.bones.trimToSize();
+        this.blends.trimToSize();
+        this.others.trimToSize();
+        this.times = Arrays.copyOf(this.times, this.timeCount);
+    }
+
+    /**
+     * Convert a frame back into the packet that was added.
+     *
+     * @param frame index of the frame
+     * @return a new RecordedPacket equal to the packet the frame was created from
+     */
+    public RecordedPacket<?, ?> toRecordedPacket(int frame) {
+        long offsetTime = this.offsetTimes[frame];
+        byte frameKind = this.frameKinds[frame];
+        if (frameKind == FRAME_PACKET_DATA) {
+            RecordedPacketData<?> packetData = this.others.get(this.otherStarts[frame]);
+            if (packetData instanceof RecordedMessage) {
+                return new RecordedMessagePacket(offsetTime, (RecordedMessage) packetData);
+            } else {
+                return new RecordedBundlePacket(offsetTime, (RecordedBundle) packetData);
+            }
+        }
+
+        int elementStart = this.elementStarts[frame];
+        int elementEnd = this.elementStarts[frame + 1];
+        int root = this.rootStarts[frame];
+        int bone = this.boneStarts[frame];
+        int blend = this.blendStarts[frame];
+        int other = this.otherStarts[frame];
+        int time = this.timeStarts[frame];
+        List<RecordedPacketData<?>> messages = new ArrayList<>(elementEnd - elementStart);
+        for (int element = elementStart; element < elementEnd; element++) {
+            switch (this.elementKinds[element]) {
+                case ELEMENT_ROOT:
+                    messages.add(this.roots.toMessage(root++, VmcUtils.VMC_ROOT_ADDRESS, TRANSFORM_TYPE_TAGS, this.boneNames));
+                    break;
+                case ELEMENT_BONE:
+                    messages.add(this.bones.toMessage(bone++, VmcUtils.VMC_BONE_ADDRESS, TRANSFORM_TYPE_TAGS, this.boneNames));
+                    break;
+                case ELEMENT_BLEND:
+                    messages.add(this.blends.toMessage(blend++, VmcUtils.VMC_BLEND_VALUE_ADDRESS, BLEND_TYPE_TAGS, this.blendNames));
+                    break;
+                case ELEMENT_TIME:
+                    List<Object> arguments = new ArrayList<>(1);
+                    arguments.add(this.times[time++]);
+                    messages.add(new RecordedMessage(VmcPlayer.VMC_TIMING_ADDRESS, arguments, TIME_TYPE_TAGS));
+                    break;
+                default:
+                    messages.add(this.others.get(other++));
+                    break;
+            }
+        }
+        if (frameKind == FRAME_MESSAGE) {
+            return new RecordedMessagePacket(offsetTime, (RecordedMessage) messages.get(0));
+        } else {
+            return new RecordedBundlePacket(offsetTime, new RecordedBundle(this.ntpTimes[frame], messages));
+        }
+    }
+
+    public List<RecordedPacket<?, ?>> toRecordedPackets() {
+        List<RecordedPacket<?, ?>> recordedPackets = new ArrayList<>(this.frameCount);
+        for (int frame = 0; frame < this.frameCount; frame++) {
+            recordedPackets.add(this.toRecordedPacket(frame));
+        }
+        return recordedPackets;
+    }
+
+    /**
+     * Create a cursor that converts frames back into packets as it goes.
+     */
+    public PacketCursor cursor() {
+        return new PacketCursor() {
+            private int frame = 0;
+
+            @Override
+            public RecordedPacket<?, ?> next() {
+                if (this.frame < VmcFrames.this.frameCount) {
+                    return VmcFrames.this.toRecordedPacket(this.frame++);
+                }
+                return null;
+            }
+
+            @Override
+            public void rewind() {
+                this.frame = 0;
+            }
+        };
+    }
+
+    /**
+     * @return approximate heap used by the frames, excluding 'other' messages and names
+     */
+    public long estimateSizeBytes() {
+        long frameBytes = (long) this.offsetTimes.length * (8 + 8 + 1 + 4 * 6);
+        return frameBytes + this.elementKinds.length + (long) this.times.length * 4 + this.roots.estimateSizeBytes() + this.bones.estimateSizeBytes()
+                + this.blends.estimateSizeBytes();
+    }
+
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    public long getOffsetTime(int frame) {
+        return this.offsetTimes[frame];
+    }
+
+    /**
+     * @return the last offset time, or 0 if there are no frames
+     */
+    public long getLastOffsetTime() {
+        return this.frameCount == 0 ? 0 : this.offsetTimes[this.frameCount - 1];
+    }
+
+    public long getNtpTime(int frame) {
+        return this.ntpTimes[frame];
+    }
+
+    public byte getFrameKind(int frame) {
+        return this.frameKinds[frame];
+    }
+
+    public VmcNameTable getBoneNames() {
+        return this.boneNames;
+    }
+
+    public VmcNameTable getBlendNames() {
+        return this.blendNames;
+    }
+
+    public SampleColumn getRoots() {
+        return this.roots;
+    }
+
+    public SampleColumn getBones() {
+        return this.bones;
+    }
+
+    public SampleColumn getBlends() {
+        return this.blends;
+    }
+
+    /**
+     * @return index of the first root sample of a frame, the frame's samples end at the start of the next frame
+     */
+    public int getRootStart(int frame) {
+        return this.rootStarts[frame];
+    }
+
+    /**
+     * @return index of the first bone sample of a frame, the frame's samples end at the start of the next frame
+     */
+    public int getBoneStart(int frame) {
+        return this.boneStarts[frame];
+    }
+
+    /**
+     * @return index of the first blendshape sample of a frame, the frame's samples end at the start of the next frame
+     */
+    public int getBlendStart(int frame) {
+        return this.blendStarts[frame];
+    }
+
+    /**
+     * A column of samples, each being a name id and a fixed number of float values.
+     */
+    public static final class SampleColumn {
+        private final int stride;
+        // Unsigned ids
+        private short[] ids = new short[256];
+        private float[] values;
+        private int size = 0;
+
+        SampleColumn(int stride) {
+            this.stride = stride;
+            this.values = new float[256 * stride];
+        }
+
+        /**
+         * Add a sample from the arguments of a message, a name followed by stride floats.
+         *
+         * @return false if the arguments weren't the expected types or the name table is full
+         */
+        boolean add(VmcNameTable nameTable, List<Object> arguments) {
+            int stride = this.stride;
+            if (arguments.size() != stride + 1 || !(arguments.get(0) instanceof String)) {
+                return false;
+            }
+            for (int i = 1; i <= stride; i++) {
+                if (!(arguments.get(i) instanceof Float)) {
+                    return false;
+                }
+            }
+            int id = nameTable.getOrAdd((String) arguments.get(0));
+            if (id == VmcNameTable.NO_ID) {
+                return false;
+            }
+            if (this.size == this.ids.length) {
+                int capacity = Math.max(this.size * 2, 16);
+                this.ids = Arrays.copyOf(this.ids, capacity);
+                this.values = Arrays.copyOf(this.values, capacity * stride);
+            }
+            this.ids[this.size] = (short) id;
+            int valueStart = this.size * stride;
+            for (int i = 0; i < stride; i++) {
+                this.values[valueStart + i] = (Float) arguments.get(i + 1);
+            }
+            this.size++;
+            return true;
+        }
+
+        RecordedMessage toMessage(int sample, String address, String typeTags, VmcNameTable nameTable) {
+            List<Object> arguments = new ArrayList<>(this.stride + 1);
+            arguments.add(nameTable.getName(this.getId(sample)));
+            int valueStart = sample * this.stride;
+            for (int i = 0; i < this.stride; i++) {
+                arguments.add(this.values[valueStart + i]);
+            }
+            return new RecordedMessage(address, arguments, typeTags);
+        }
+
+        void trimToSize() {
+            this.ids = Arrays.copyOf(this.ids, this.size);
+            this.values = Arrays.copyOf(this.values, this.size * this.stride);
+        }
+
+        long estimateSizeBytes() {
+            return (long) this.ids.length * 2 + (long) this.values.length * 4;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int getStride() {
+            return this.stride;
+        }
+
+        public int getId(int sample) {
+            return this.ids[sample] & 0xFFFF;
+        }
+
+        public float getValue(int sample, int component) {
+            return this.values[sample * this.stride + component];
+        }
+    }
+}
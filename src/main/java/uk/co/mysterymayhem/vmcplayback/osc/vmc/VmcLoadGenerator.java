@@ -0,0 +1,161 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import uk.co.mysterymayhem.vmcplayback.osc.OscPlayer;
+import uk.co.mysterymayhem.vmcplayback.osc.PlaybackTarget;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessagePacket;
+import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends synthetic VMC traffic, see {@link SyntheticVmcFrames}, at a chosen rate, for testing how much a receiver, such
+ * as an {@link uk.co.mysterymayhem.vmcplayback.osc.OscRecorder}, can keep up with.
+ * <p>
+ * Each performer sends a frame at the chosen rate, with performers spread evenly between each other's frames like
+ * separate trackers would be. A frame is sent either as one bundle or as one datagram per message.
+ * <p>
+ * So that generating frames doesn't limit the rate, about a second of frames is generated and encoded when starting
+ * and then looped, see {@link OscPlayer}. Sending is timed and measured the same as playback.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class VmcLoadGenerator {
+    // Roughly how much is generated up front and looped
+    private static final long LOOP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<PlaybackTarget> targets;
+    private final List<SyntheticVmcFrames> performers;
+    private final boolean bundled;
+    private OscPlayer player;
+    private double rateHz;
+    private long startNanos;
+    private long startPacketCount;
+    private long stopNanos;
+    private long stopPacketCount;
+
+    /**
+     * @param targets         targets to send to
+     * @param performerCount  number of performers, each moves differently
+     * @param boneCount       number of humanoid bones in each frame, see {@link SyntheticVmcFrames}
+     * @param blendshapeCount number of blendshapes in each frame
+     * @param bundled         true to send each frame as a bundle, false to send each message as its own datagram
+     */
+    public VmcLoadGenerator(List<PlaybackTarget> targets, int performerCount, int boneCount, int blendshapeCount, boolean bundled) {
+        if (performerCount < 1) {
+            throw new IllegalArgumentException("There must be at least one performer");
+        }
+        this.targets = targets;
+        this.performers = new ArrayList<>(performerCount);
+        for (int i = 0; i < performerCount; i++) {
+            this.performers.add(new SyntheticVmcFrames(i, boneCount, blendshapeCount, true));
+        }
+        this.bundled = bundled;
+    }
+
+    /**
+     * Start sending, the generator can be started again at a different rate after being stopped.
+     *
+     * @param rateHz frames per second sent by each performer
+     */
+    public void start(double rateHz) throws IOException {
+        if (this.player != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (!(rateHz > 0)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        long frameNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rateHz));
+        // A whole number of frames, so frames stay evenly spaced when looping
+        long loopNanos = frameNanos * Math.max(1, Math.round(LOOP_NANOS / (double) frameNanos));
+        this.player = new OscPlayer(this.targets, this.loop(frameNanos, loopNanos), loopNanos, true);
+        this.rateHz = rateHz;
+        this.startPacketCount = this.getSentPacketCount();
+        this.startNanos = System.nanoTime();
+        this.player.start();
+    }
+
+    /**
+     * Stop sending, waiting for the packet currently being sent.
+     */
+    public void stop() {
+        if (this.player == null) {
+            throw new IllegalStateException("Not started");
+        }
+        this.player.stop();
+        this.player = null;
+        this.stopNanos = System.nanoTime();
+        this.stopPacketCount = this.getSentPacketCount();
+    }
+
+    /**
+     * @return the number of messages each performer sends per frame
+     */
+    public int getMessagesPerFrame() {
+        return this.performers.get(0).getMessageCount();
+    }
+
+    /**
+     * @return the number of messages sent per second by every performer together at the given rate
+     */
+    public double getMessageRate(double rateHz) {
+        return rateHz * this.performers.size() * this.getMessagesPerFrame();
+    }
+
+    /**
+     * @return the number of datagrams sent to the first target so far, across every time the generator was started
+     */
+    public long getSentPacketCount() {
+        return this.targets.get(0).getPacketCount();
+    }
+
+    /**
+     * @return the number of messages sent to the first target so far
+     */
+    public long getSentMessageCount() {
+        return this.bundled ? this.getSentPacketCount() * this.getMessagesPerFrame() : this.getSentPacketCount();
+    }
+
+    /**
+     * @return messages per second actually sent since the generator was last started, until it was stopped
+     */
+    public double getAchievedMessageRate() {
+        boolean running = this.player != null;
+        long elapsedNanos = (running ? System.nanoTime() : this.stopNanos) - this.startNanos;
+        long packets = (running ? this.getSentPacketCount() : this.stopPacketCount) - this.startPacketCount;
+        long messages = this.bundled ? packets * this.getMessagesPerFrame() : packets;
+        return elapsedNanos <= 0 ? 0 : messages * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return the rate the generator was last started at
+     */
+    public double getRate() {
+        return this.rateHz;
+    }
+
+    private List<RecordedPacket<?, ?>> loop(long frameNanos, long loopNanos) {
+        int performerCount = this.performers.size();
+        List<RecordedPacket<?, ?>> packets = new ArrayList<>();
+        for (int p = 0; p < performerCount; p++) {
+            SyntheticVmcFrames performer = this.performers.get(p);
+            // Spread evenly between each other's frames
+            long firstOffset = frameNanos * p / performerCount;
+            for (long offsetTime = firstOffset; offsetTime < loopNanos; offsetTime += frameNanos) {
+                if (this.bundled) {
+                    packets.add(performer.frame(offsetTime));
+                } else {
+                    for (RecordedMessage message : performer.messages(offsetTime / 1e9)) {
+                        packets.add(new RecordedMessagePacket(offsetTime, message));
+                    }
+                }
+            }
+        }
+        // In offset time order, stable so that each frame's messages stay in order
+        packets.sort((a, b) -> Long.compare(a.getOffsetTime(), b.getOffsetTime()));
+        return packets;
+    }
+}
@@ -0,0 +1,56 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns small integer ids to names, such as VMC bone and blendshape names, in the order they're first seen.
+ * <p>
+ * Ids fit in an unsigned short so that they can be stored in short[] columns, see {@link VmcFrames}.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class VmcNameTable {
+    public static final int MAX_SIZE = 1 << 16;
+    public static final int NO_ID = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Get the id of a name, assigning it a new id if it doesn't have one yet.
+     *
+     * @param name name to get the id of
+     * @return the name's id, or NO_ID if the name is new and the table is full
+     */
+    public int getOrAdd(String name) {
+        Integer id = this.ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (this.names.size() >= MAX_SIZE) {
+            return NO_ID;
+        }
+        int newId = this.names.size();
+        this.ids.put(name, newId);
+        this.names.add(name);
+        return newId;
+    }
+
+    /**
+     * @return the id of a name, or NO_ID if it doesn't have one
+     */
+    public int getId(String name) {
+        return this.ids.getOrDefault(name, NO_ID);
+    }
+
+    public String getName(int id) {
+        return this.names.get(id);
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+}
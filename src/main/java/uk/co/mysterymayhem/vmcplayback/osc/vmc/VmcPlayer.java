@@ -1,11 +1,15 @@
 package uk.co.mysterymayhem.vmcplayback.osc.vmc;
 
+import uk.co.mysterymayhem.vmcplayback.osc.OscInternTable;
 import uk.co.mysterymayhem.vmcplayback.osc.OscPlayer;
+import uk.co.mysterymayhem.vmcplayback.osc.PacketCursor;
+import uk.co.mysterymayhem.vmcplayback.osc.PlaybackTarget;
 import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
 import uk.co.mysterymayhem.vmcplayback.osc.RecordedPacket;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -14,14 +18,19 @@ import java.util.stream.Collectors;
  * OscPlayer that replaces input VMC timing messages with its own VMC timing messages that continue to increment over
  * time.
  * <p>
+ * When pre-encoded, the recorded timing messages are encoded as they are and their time argument is overwritten in the
+ * encoded bytes just before each one is sent instead, so that replacing the timing doesn't need the timing messages to
+ * be serialized again every time.
+ * <p>
  * Created by Mysteryem on 06/08/2021.
  */
 public class VmcPlayer extends OscPlayer {
     public static final String VMC_TIMING_ADDRESS = "/VMC/Ext/T";
+    private static final int VMC_TIMING_ADDRESS_ID = OscInternTable.shared().getOrAdd(VMC_TIMING_ADDRESS);
 
     private static final Function<RecordedMessage, RecordedMessage> TIMING_MESSAGE_MAPPER =
             recordedMessage -> {
-                if (recordedMessage.getAddress().equals(VMC_TIMING_ADDRESS)) {
+                if (VmcUtils.hasAddress(recordedMessage, VMC_TIMING_ADDRESS_ID, VMC_TIMING_ADDRESS)) {
                     return VmcTimingMessage.SINGLETON;
                 } else {
                     return recordedMessage;
@@ -44,7 +53,46 @@ public class VmcPlayer extends OscPlayer {
         super(socketAddress, replaceTimingMessages(recordedMessages));
     }
 
-    private static List<RecordedPacket<?, ?>> replaceTimingMessages(List<RecordedPacket<?, ?>> inputMessages) {
+    /**
+     * @param socketAddress    address to send to
+     * @param recordedMessages packets to play back
+     * @param preEncode        true to serialize every packet to OSC bytes up front instead of every time it's sent
+     */
+    public VmcPlayer(SocketAddress socketAddress, List<RecordedPacket<?, ?>> recordedMessages, boolean preEncode) throws IOException {
+        this(Collections.singletonList(new PlaybackTarget(socketAddress)), recordedMessages, preEncode);
+    }
+
+    /**
+     * @param targets          targets to send to
+     * @param recordedMessages packets to play back
+     * @param preEncode        true to serialize every packet to OSC bytes up front instead of every time it's sent
+     */
+    public VmcPlayer(List<PlaybackTarget> targets, List<RecordedPacket<?, ?>> recordedMessages, boolean preEncode) throws IOException {
+        super(targets, preEncode ? recordedMessages : replaceTimingMessages(recordedMessages), preEncode);
+        if (preEncode) {
+            this.patchFloatArgument(VMC_TIMING_ADDRESS, VmcTimingOSCMessage.SINGLETON::currentElapsedTime);
+        }
+    }
+
+    public VmcPlayer(SocketAddress socketAddress, PacketCursor packetCursor, long repeatPeriodNanos) throws IOException {
+        this(Collections.singletonList(new PlaybackTarget(socketAddress)), packetCursor, repeatPeriodNanos);
+    }
+
+    public VmcPlayer(List<PlaybackTarget> targets, PacketCursor packetCursor, long repeatPeriodNanos) throws IOException {
+        super(targets, packetCursor.mapMessages(TIMING_MESSAGE_MAPPER), repeatPeriodNanos);
+    }
+
+    /**
+     * @param targets      targets to send to
+     * @param packetCursor packets to play back, looped at the offset time of the last packet, see
+     *                     {@link OscPlayer#OscPlayer(List, PacketCursor)}
+     */
+    public VmcPlayer(List<PlaybackTarget> targets, PacketCursor packetCursor) throws IOException {
+        super(targets, packetCursor.mapMessages(TIMING_MESSAGE_MAPPER));
+    }
+
+    // Package-private for benchmarks
+    static List<RecordedPacket<?, ?>> replaceTimingMessages(List<RecordedPacket<?, ?>> inputMessages) {
         return inputMessages.stream()
                 .map(recordedPacket -> recordedPacket.mapMessages(TIMING_MESSAGE_MAPPER))
                 .collect(Collectors.toList());
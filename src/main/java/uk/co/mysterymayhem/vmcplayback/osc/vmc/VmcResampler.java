@@ -0,0 +1,369 @@
+package uk.co.mysterymayhem.vmcplayback.osc.vmc;
+
+import uk.co.mysterymayhem.vmcplayback.osc.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cursor that re-times the packets of another cursor onto a fixed rate, one packet per tick.
+ * <p>
+ * Root, bone and tracker transforms and blendshape values are state. Each is keyed by its {@link MessageKey}, its
+ * address and its first string argument, e.g. the bone or blendshape name. The packet for a tick has the latest message
+ * for every key seen since the previous tick, in the order the keys were first seen, so when downsampling, the frames
+ * between two ticks are merged into one and older values of the same bone or blendshape are dropped. When no state
+ * arrived since the previous tick, which happens when upsampling, the keys of the previous tick are sent again.
+ * <p>
+ * State is interpolated to the time of the tick, between the latest sample at or before the tick and the next sample
+ * after it, linearly for positions and blendshape values and with slerp for rotations. Samples that are further apart
+ * than {@link #MAX_INTERPOLATION_GAP_NANOS} aren't interpolated.
+ * <p>
+ * Every other message, such as {@code /VMC/Ext/Blend/Apply}, {@code /VMC/Ext/Key} or {@code /VMC/Ext/Con}, is an event
+ * rather than state, so it's neither merged nor repeated. It's sent once, unchanged, in the first tick at or after its
+ * offset time.
+ * <p>
+ * Ticks start from the offset time of the first packet. The last packet is sent at the offset time of the last source
+ * packet, so the resampled packets cover the same time range.
+ * <p>
+ * Created by Mysteryem on 18/10/2026.
+ */
+public class VmcResampler implements PacketCursor {
+
+    public static final long MAX_INTERPOLATION_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    // How a message is interpolated
+    private static final int NOT_INTERPOLATED = 0;
+    private static final int TRANSFORM = 1;
+    private static final int BLEND = 2;
+
+    private static final String TRANSFORM_TYPE_TAGS = "sfffffff";
+    private static final String BLEND_TYPE_TAGS = "sf";
+    private static final int VMC_ROOT_ADDRESS_ID = OscInternTable.shared().getOrAdd(VmcUtils.VMC_ROOT_ADDRESS);
+    private static final int VMC_BONE_ADDRESS_ID = OscInternTable.shared().getOrAdd(VmcUtils.VMC_BONE_ADDRESS);
+    private static final int VMC_TRA_ADDRESS_ID = OscInternTable.shared().getOrAdd(VmcUtils.VMC_TRA_ADDRESS);
+    private static final int VMC_BLEND_VALUE_ADDRESS_ID = OscInternTable.shared().getOrAdd(VmcUtils.VMC_BLEND_VALUE_ADDRESS);
+
+    private final PacketCursor source;
+    private final long periodNanos;
+
+    // Source packets read ahead of the current tick, for interpolating towards
+    private final ArrayDeque<Frame> lookahead = new ArrayDeque<>();
+    // Latest message and its offset time for every key seen so far
+    private final Map<MessageKey, Sample> latest = new HashMap<>();
+    private boolean sourceFinished;
+    private long firstTick;
+    private long previousTick;
+    private long tickCount;
+    // State keys of the previous tick, sent again if no state arrives before the next tick
+    private Collection<MessageKey> previousKeys;
+    private long lastSourceOffsetTime;
+    // Kind of the latest source packet, to match when there's only one message to send
+    private boolean latestWasBundle;
+    private long latestNtpTime;
+
+    /**
+     * @param source cursor to resample, in offset time order
+     * @param rateHz number of packets per second to resample to
+     */
+    public VmcResampler(PacketCursor source, double rateHz) {
+        if (!(rateHz > 0) || Double.isInfinite(rateHz)) {
+            throw new IllegalArgumentException("Rate must be positive, but was " + rateHz);
+        }
+        this.source = source;
+        this.periodNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rateHz));
+        this.reset();
+    }
+
+    /**
+     * Resample a list of packets.
+     *
+     * @param sortedPackets packets in offset time order
+     * @param rateHz        number of packets per second to resample to
+     * @return the resampled packets
+     */
+    public static List<RecordedPacket<?, ?>> resample(List<RecordedPacket<?, ?>> sortedPackets, double rateHz) {
+        VmcResampler resampler = new VmcResampler(PacketCursor.of(sortedPackets), rateHz);
+        List<RecordedPacket<?, ?>> resampled = new ArrayList<>();
+        RecordedPacket<?, ?> next;
+        while ((next = resampler.next()) != null) {
+            resampled.add(next);
+        }
+        return resampled;
+    }
+
+    private void reset() {
+        this.lookahead.clear();
+        this.latest.clear();
+        this.sourceFinished = false;
+        this.tickCount = 0;
+        this.previousTick = Long.MIN_VALUE;
+        this.previousKeys = null;
+        this.latestWasBundle = false;
+        this.latestNtpTime = 0;
+    }
+
+    @Override
+    public void rewind() {
+        this.source.rewind();
+        this.reset();
+    }
+
+    @Override
+    public RecordedPacket<?, ?> next() {
+        if (this.tickCount == 0) {
+            if (!this.readAhead()) {
+                return null;
+            }
+            this.firstTick = this.lookahead.peekFirst().offsetTime;
+        }
+        while (true) {
+            long tick = this.firstTick + this.tickCount * this.periodNanos;
+            this.fillLookahead(tick + MAX_INTERPOLATION_GAP_NANOS);
+            if (this.sourceFinished) {
+                long lastOffsetTime = this.lookahead.isEmpty() ? this.lastSourceOffsetTime : this.lookahead.peekLast().offsetTime;
+                if (this.previousTick >= lastOffsetTime) {
+                    return null;
+                }
+                tick = Math.min(tick, lastOffsetTime);
+            }
+
+            // Merge every source packet up to this tick, keeping the latest message of each state key and every event,
+            // in the order they were first seen
+            Set<MessageKey> windowKeys = new LinkedHashSet<>();
+            List<Object> window = new ArrayList<>();
+            while (!this.lookahead.isEmpty() && this.lookahead.peekFirst().offsetTime <= tick) {
+                Frame frame = this.lookahead.pollFirst();
+                for (Object entry : frame.entries) {
+                    if (entry instanceof MessageKey) {
+                        MessageKey key = (MessageKey) entry;
+                        if (windowKeys.add(key)) {
+                            window.add(key);
+                        }
+                        this.latest.put(key, new Sample(frame.offsetTime, frame.states.get(key)));
+                    } else {
+                        window.add(entry);
+                    }
+                }
+                this.latestWasBundle = frame.bundle;
+                this.latestNtpTime = frame.ntpTime;
+            }
+            if (windowKeys.isEmpty()) {
+                if (this.previousKeys != null) {
+                    window.addAll(0, this.previousKeys);
+                }
+            } else {
+                this.previousKeys = windowKeys;
+            }
+            this.previousTick = tick;
+            this.tickCount++;
+            if (window.isEmpty()) {
+                // No state has been seen yet and no events are due
+                continue;
+            }
+
+            List<RecordedPacketData<?>> messages = new ArrayList<>(window.size());
+            for (Object entry : window) {
+                messages.add(entry instanceof MessageKey ? this.valueAt((MessageKey) entry, tick) : (RecordedMessage) entry);
+            }
+            if (messages.size() == 1 && !this.latestWasBundle) {
+                return new RecordedMessagePacket(tick, (RecordedMessage) messages.get(0));
+            }
+            return new RecordedBundlePacket(tick, new RecordedBundle(this.latestNtpTime, messages));
+        }
+    }
+
+    /**
+     * @return the message for a key, interpolated to the tick when possible
+     */
+    private RecordedMessage valueAt(MessageKey key, long tick) {
+        Sample previous = this.latest.get(key);
+        RecordedMessage message = previous.message;
+        int kind = interpolationKind(message);
+        if (kind == NOT_INTERPOLATED || previous.offsetTime >= tick) {
+            return message;
+        }
+        for (Frame frame : this.lookahead) {
+            long gap = frame.offsetTime - previous.offsetTime;
+            if (gap > MAX_INTERPOLATION_GAP_NANOS) {
+                break;
+            }
+            RecordedMessage next = frame.states.get(key);
+            if (next != null) {
+                if (interpolationKind(next) != kind) {
+                    return message;
+                }
+                float t = (float) ((tick - previous.offsetTime) / (double) gap);
+                return interpolate(message, next, t, kind);
+            }
+        }
+        return message;
+    }
+
+    private static boolean isState(RecordedMessage message) {
+        return VmcUtils.hasAddress(message, VMC_BONE_ADDRESS_ID, VmcUtils.VMC_BONE_ADDRESS)
+                || VmcUtils.hasAddress(message, VMC_ROOT_ADDRESS_ID, VmcUtils.VMC_ROOT_ADDRESS)
+                || VmcUtils.hasAddress(message, VMC_TRA_ADDRESS_ID, VmcUtils.VMC_TRA_ADDRESS)
+                || VmcUtils.hasAddress(message, VMC_BLEND_VALUE_ADDRESS_ID, VmcUtils.VMC_BLEND_VALUE_ADDRESS);
+    }
+
+    private static int interpolationKind(RecordedMessage message) {
+        if (VmcUtils.hasAddress(message, VMC_BONE_ADDRESS_ID, VmcUtils.VMC_BONE_ADDRESS)
+                || VmcUtils.hasAddress(message, VMC_ROOT_ADDRESS_ID, VmcUtils.VMC_ROOT_ADDRESS)
+                || VmcUtils.hasAddress(message, VMC_TRA_ADDRESS_ID, VmcUtils.VMC_TRA_ADDRESS)) {
+            return TRANSFORM_TYPE_TAGS.contentEquals(message.getArgumentTypes()) && message.getArguments().size() == 8 ? TRANSFORM : NOT_INTERPOLATED;
+        }
+        if (VmcUtils.hasAddress(message, VMC_BLEND_VALUE_ADDRESS_ID, VmcUtils.VMC_BLEND_VALUE_ADDRESS)) {
+            return BLEND_TYPE_TAGS.contentEquals(message.getArgumentTypes()) && message.getArguments().size() == 2 ? BLEND : NOT_INTERPOLATED;
+        }
+        return NOT_INTERPOLATED;
+    }
+
+    private static RecordedMessage interpolate(RecordedMessage from, RecordedMessage to, float t, int kind) {
+        List<Object> fromArguments = from.getArguments();
+        List<Object> toArguments = to.getArguments();
+        List<Object> arguments = new ArrayList<>(fromArguments.size());
+        arguments.add(fromArguments.get(0));
+        if (kind == BLEND) {
+            arguments.add(lerp((Float) fromArguments.get(1), (Float) toArguments.get(1), t));
+        } else {
+            for (int i = 1; i <= 3; i++) {
+                arguments.add(lerp((Float) fromArguments.get(i), (Float) toArguments.get(i), t));
+            }
+            float[] rotation = slerp(
+                    (Float) fromArguments.get(4), (Float) fromArguments.get(5), (Float) fromArguments.get(6), (Float) fromArguments.get(7),
+                    (Float) toArguments.get(4), (Float) toArguments.get(5), (Float) toArguments.get(6), (Float) toArguments.get(7),
+                    t);
+            for (float component : rotation) {
+                arguments.add(component);
+            }
+        }
+        return new RecordedMessage(from.getAddress(), arguments, from.getArgumentTypes());
+    }
+
+    private static float lerp(float from, float to, float t) {
+        return from + (to - from) * t;
+    }
+
+    /**
+     * Spherical linear interpolation between two quaternions, taking the shortest path.
+     *
+     * @return x, y, z and w of the interpolated quaternion
+     */
+    static float[] slerp(float ax, float ay, float az, float aw, float bx, float by, float bz, float bw, float t) {
+        double dot = (double) ax * bx + (double) ay * by + (double) az * bz + (double) aw * bw;
+        if (dot < 0) {
+            // q and -q are the same rotation, negate one so that the shorter way round is taken
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+            dot = -dot;
+        }
+        double fromWeight;
+        double toWeight;
+        if (dot > 0.9995) {
+            // Nearly the same rotation, sin(theta) is too close to zero, so interpolate linearly and normalize
+            fromWeight = 1 - t;
+            toWeight = t;
+        } else {
+            double theta = Math.acos(dot);
+            double sinTheta = Math.sin(theta);
+            fromWeight = Math.sin((1 - t) * theta) / sinTheta;
+            toWeight = Math.sin(t * theta) / sinTheta;
+        }
+        double x = fromWeight * ax + toWeight * bx;
+        double y = fromWeight * ay + toWeight * by;
+        double z = fromWeight * az + toWeight * bz;
+        double w = fromWeight * aw + toWeight * bw;
+        double length = Math.sqrt(x * x + y * y + z * z + w * w);
+        if (!(length > 0)) {
+            // Not a valid rotation to begin with
+            return new float[]{ax, ay, az, aw};
+        }
+        return new float[]{(float) (x / length), (float) (y / length), (float) (z / length), (float) (w / length)};
+    }
+
+    /**
+     * Read source packets into the lookahead until one is past the given offset time.
+     */
+    private void fillLookahead(long offsetTime) {
+        while (!this.sourceFinished && (this.lookahead.isEmpty() || this.lookahead.peekLast().offsetTime <= offsetTime)) {
+            this.readAhead();
+        }
+    }
+
+    /**
+     * Read one source packet into the lookahead.
+     *
+     * @return false if the source has no more packets
+     */
+    private boolean readAhead() {
+        if (this.sourceFinished) {
+            return false;
+        }
+        RecordedPacket<?, ?> recordedPacket = this.source.next();
+        if (recordedPacket == null) {
+            this.sourceFinished = true;
+            return false;
+        }
+        this.lookahead.addLast(new Frame(recordedPacket));
+        this.lastSourceOffsetTime = recordedPacket.getOffsetTime();
+        return true;
+    }
+
+    /**
+     * A source packet, with its state messages keyed by address and name.
+     */
+    private static final class Frame {
+        final long offsetTime;
+        final boolean bundle;
+        final long ntpTime;
+        final Map<MessageKey, RecordedMessage> states = new HashMap<>();
+        // The key of each state message and every other message, in order
+        final List<Object> entries = new ArrayList<>();
+
+        Frame(RecordedPacket<?, ?> recordedPacket) {
+            this.offsetTime = recordedPacket.getOffsetTime();
+            RecordedPacketData<?> packetData = recordedPacket.getPacketData();
+            this.bundle = packetData instanceof RecordedBundle;
+            this.ntpTime = this.bundle ? ((RecordedBundle) packetData).getNtpTime() : 0;
+            this.add(packetData);
+        }
+
+        private void add(RecordedPacketData<?> packetData) {
+            if (packetData instanceof RecordedMessage) {
+                RecordedMessage message = (RecordedMessage) packetData;
+                if (!isState(message)) {
+                    this.entries.add(message);
+                } else {
+                    MessageKey key = MessageKey.of(message);
+                    if (this.states.put(key, message) == null) {
+                        this.entries.add(key);
+                    }
+                }
+            } else {
+                // Nested bundles are flattened
+                for (RecordedPacketData<?> element : ((RecordedBundle) packetData).getRecordedPacketData()) {
+                    this.add(element);
+                }
+            }
+        }
+    }
+
+    private static final class Sample {
+        final long offsetTime;
+        final RecordedMessage message;
+
+        Sample(long offsetTime, RecordedMessage message) {
+            this.offsetTime = offsetTime;
+            this.message = message;
+        }
+    }
+}
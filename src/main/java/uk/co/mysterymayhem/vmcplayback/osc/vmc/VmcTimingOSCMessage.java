@@ -29,7 +29,7 @@ public final class VmcTimingOSCMessage extends OSCMessage {
         return Collections.singletonList(currentElapsedTime());
     }
 
-    private float currentElapsedTime() {
+    float currentElapsedTime() {
         // Nanoseconds to seconds as float
         return (System.nanoTime() - this.startTimeNano) / 1.0E09f;
     }
@@ -1,7 +1,10 @@
 package uk.co.mysterymayhem.vmcplayback.osc.vmc;
 
+import uk.co.mysterymayhem.vmcplayback.osc.AddressFilter;
+import uk.co.mysterymayhem.vmcplayback.osc.OscInternTable;
 import uk.co.mysterymayhem.vmcplayback.osc.RecordedMessage;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -20,27 +23,49 @@ public class VmcUtils {
     public static final String VMC_BONE_ADDRESS = "/VMC/Ext/Bone/Pos";
     // Tracking? position/rotation
     public static final String VMC_TRA_ADDRESS = "/VMC/Ext/Tra/Pos";
+    // Blendshape value
+    public static final String VMC_BLEND_VALUE_ADDRESS = "/VMC/Ext/Blend/Val";
+    // Apply the blendshape values sent since the last apply
+    public static final String VMC_BLEND_APPLY_ADDRESS = "/VMC/Ext/Blend/Apply";
+    // Whether a model is loaded
+    public static final String VMC_OK_ADDRESS = "/VMC/Ext/OK";
 
     public static final String LEFT_EYE_BONE_NAME = "LeftEye";
     public static final String RIGHT_EYE_BONE_NAME = "RightEye";
 
+    // Ids in the shared intern table, so that filters can compare address ids instead of calling String.equals
+    private static final int VMC_ROOT_ADDRESS_ID = OscInternTable.shared().getOrAdd(VMC_ROOT_ADDRESS);
+    private static final int VMC_BONE_ADDRESS_ID = OscInternTable.shared().getOrAdd(VMC_BONE_ADDRESS);
+    private static final int VMC_TRA_ADDRESS_ID = OscInternTable.shared().getOrAdd(VMC_TRA_ADDRESS);
+    // The shared table's instances of the eye bone names. Every RecordedMessage interns its string arguments, so an eye
+    // bone name argument is one of these instances unless the name couldn't be interned because the table was full
+    private static final String INTERNED_LEFT_EYE_BONE_NAME = OscInternTable.shared().intern(LEFT_EYE_BONE_NAME);
+    private static final String INTERNED_RIGHT_EYE_BONE_NAME = OscInternTable.shared().intern(RIGHT_EYE_BONE_NAME);
+    private static final boolean EYE_BONE_NAMES_INTERNED =
+            OscInternTable.shared().getId(LEFT_EYE_BONE_NAME) != OscInternTable.NO_ID
+                    && OscInternTable.shared().getId(RIGHT_EYE_BONE_NAME) != OscInternTable.NO_ID;
+
     public static final Predicate<RecordedMessage> FILTER_OUT_BODY_AND_HEAD_MOVEMENT = rm -> {
-        String address = rm.getAddress();
-        switch (address) {
-            case VMC_BONE_ADDRESS:
-                List<Object> arguments = rm.getArguments();
-                if (arguments.size() >= 1) {
-                    Object arg0 = arguments.get(0);
-                    return LEFT_EYE_BONE_NAME.equals(arg0) || RIGHT_EYE_BONE_NAME.equals(arg0);
-                }
-            case VMC_ROOT_ADDRESS:
-            case VMC_TRA_ADDRESS:
-                return false;
-            default:
-                return true;
+        if (hasAddress(rm, VMC_BONE_ADDRESS_ID, VMC_BONE_ADDRESS)) {
+            return isEyeBone(rm);
         }
+        return !hasAddress(rm, VMC_ROOT_ADDRESS_ID, VMC_ROOT_ADDRESS) && !hasAddress(rm, VMC_TRA_ADDRESS_ID, VMC_TRA_ADDRESS);
     };
 
+    /**
+     * Check the address of a message, by id when the address has been interned.
+     *
+     * @param addressId id of the address in the shared {@link OscInternTable}
+     * @param address   the address, compared with equals only if the message's address couldn't be interned
+     */
+    public static boolean hasAddress(RecordedMessage recordedMessage, int addressId, String address) {
+        int messageAddressId = recordedMessage.getAddressId();
+        if (messageAddressId != OscInternTable.NO_ID) {
+            return messageAddressId == addressId;
+        }
+        return address.equals(recordedMessage.getAddress());
+    }
+
     public static boolean isVmc(RecordedMessage recordedMessage) {
         return isVmc(recordedMessage.getAddress());
     }
@@ -57,44 +82,47 @@ public class VmcUtils {
      * @param filterBodyAndHeadTracking true if VMC messages for bone movement (excluding eyes) should be filtered out
      * @return A predicate matching the chosen options, or null if no filtering is required
      */
-    // If we make many more filters, swap to using a method that returns a FilterBuilder instance, for now, it's easier
-    // to have this method, with an argument per filter, that does all the building
-    public static Predicate<RecordedMessage> buildMessageFilter(boolean allowAllOsc, boolean filterBodyAndHeadTracking) {
-        FilterBuilder filterBuilder = new FilterBuilder();
-        if (!allowAllOsc) {
-            filterBuilder.vmcOnly();
-        }
-        if (filterBodyAndHeadTracking) {
-            filterBuilder.filterBodyAndHeadTracking();
-        }
-        return filterBuilder.build();
+    public static AddressFilter buildMessageFilter(boolean allowAllOsc, boolean filterBodyAndHeadTracking) {
+        return buildMessageFilter(allowAllOsc, filterBodyAndHeadTracking, Collections.emptyList(), Collections.emptyList());
     }
 
-    public static class FilterBuilder {
-        private Predicate<RecordedMessage> filter = null;
-
-        FilterBuilder() {
-        }
-
-        private FilterBuilder vmcOnly() {
-            return this.and(VmcUtils::isVmc);
+    /**
+     * Build a message filter, compiled so that most messages can be rejected before they're parsed, see
+     * {@link AddressFilter}.
+     *
+     * @param allowAllOsc               true if all OSC messages are allowed, false if only VMC messages are allowed,
+     *                                  ignored if there are include patterns
+     * @param filterBodyAndHeadTracking true if VMC messages for bone movement (excluding eyes) should be filtered out
+     * @param includePatterns           address patterns to allow, if not empty, only matching messages are allowed
+     * @param excludePatterns           address patterns to filter out
+     * @return A filter matching the chosen options, or null if no filtering is required
+     */
+    public static AddressFilter buildMessageFilter(boolean allowAllOsc, boolean filterBodyAndHeadTracking, List<String> includePatterns, List<String> excludePatterns) {
+        AddressFilter.Builder builder = AddressFilter.builder();
+        if (!includePatterns.isEmpty()) {
+            includePatterns.forEach(builder::include);
+        } else if (!allowAllOsc) {
+            builder.include(VMC_ADDRESS_PREFIX + "*");
         }
-
-        private FilterBuilder filterBodyAndHeadTracking() {
-            return this.and(FILTER_OUT_BODY_AND_HEAD_MOVEMENT);
+        if (filterBodyAndHeadTracking) {
+            builder.exclude(VMC_ROOT_ADDRESS)
+                    .exclude(VMC_TRA_ADDRESS)
+                    .checkArguments(VMC_BONE_ADDRESS, VmcUtils::isEyeBone);
         }
+        excludePatterns.forEach(builder::exclude);
+        return builder.build();
+    }
 
-        private FilterBuilder and(Predicate<RecordedMessage> predicate) {
-            if (filter == null) {
-                filter = predicate;
-            } else {
-                filter = filter.and(predicate);
-            }
-            return this;
+    private static boolean isEyeBone(RecordedMessage boneMessage) {
+        List<Object> arguments = boneMessage.getArguments();
+        if (arguments.isEmpty()) {
+            return false;
         }
-
-        Predicate<RecordedMessage> build() {
-            return this.filter;
+        Object arg0 = arguments.get(0);
+        if (arg0 == INTERNED_LEFT_EYE_BONE_NAME || arg0 == INTERNED_RIGHT_EYE_BONE_NAME) {
+            return true;
         }
+        // Only a different instance when the names couldn't be interned
+        return !EYE_BONE_NAMES_INTERNED && (LEFT_EYE_BONE_NAME.equals(arg0) || RIGHT_EYE_BONE_NAME.equals(arg0));
     }
 }